@@ -0,0 +1,99 @@
+package com.example.ratelimitdemo.benchmark;
+
+import com.example.ratelimitdemo.service.BucketType;
+import com.example.ratelimitdemo.service.EvictionPolicy;
+import com.example.ratelimitdemo.service.MonotonicClock;
+import com.example.ratelimitdemo.service.RateLimitAlgorithm;
+import com.example.ratelimitdemo.service.RateLimitDecision;
+import com.example.ratelimitdemo.service.RateLimitWindow;
+import com.example.ratelimitdemo.service.RateLimiterService;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decision latency and state size of the {@link RateLimitAlgorithm}s behind the same short + minute policy.
+ * <p>
+ * Run with {@code -prof gc} for allocation rates; the algorithms themselves allocate nothing, so what shows is the
+ * {@link RateLimitDecision} every call returns. {@link #stateSize} reports the heap retained per key with the key
+ * String, map node and window group included, so differences between algorithms are the bucket objects alone.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AlgorithmBenchmark {
+
+    private static final int KEYS = 200_000;
+
+    @Param({"TOKEN_BUCKET", "GCRA", "SLIDING_WINDOW"})
+    public RateLimitAlgorithm algorithm;
+
+    @Param({"ATOMIC"})
+    public BucketType bucketType;
+
+    private RateLimiterService service;
+    private List<RateLimitWindow> windows;
+
+    @Setup
+    public void setUp() {
+        BenchmarkLogging.quiet();
+        service = newService();
+        // every decision is a grant; the capacity fits the packed atomic and sliding window states, so no fallback
+        windows = List.of(
+                new RateLimitWindow("Short", 60_000, 1e9, algorithm),
+                new RateLimitWindow("Minute", 50_000, 1e9, algorithm));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public RateLimitDecision decision() {
+        return service.tryConsume("user:test1", windows);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Threads(4)
+    public RateLimitDecision decisionContended() {
+        return service.tryConsume("user:test1", windows);
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class StateSize {
+        public long bytesPerKey;
+    }
+
+    // aux counters add up across iterations, so measure once
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    public int stateSize(StateSize size) {
+        long before = Heap.used();
+        RateLimiterService filled = newService();
+        List<RateLimitWindow> policy = List.of(
+                RateLimitWindow.perWindow("Short", 5, 5, algorithm),
+                RateLimitWindow.perWindow("Minute", 10, 60, algorithm));
+        for (int i = 0; i < KEYS; i++) {
+            filled.tryConsume("user" + i + ":test1", policy);
+        }
+        size.bytesPerKey = (Heap.used() - before) / KEYS;
+        return filled.getBucketCount();
+    }
+
+    private RateLimiterService newService() {
+        return new RateLimiterService(bucketType, 0, EvictionPolicy.LEAST_RECENTLY_USED, 3600, MonotonicClock.system());
+    }
+}
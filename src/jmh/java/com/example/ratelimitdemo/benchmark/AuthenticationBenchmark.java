@@ -0,0 +1,52 @@
+package com.example.ratelimitdemo.benchmark;
+
+import com.example.ratelimitdemo.config.CachingAuthenticationProvider;
+import com.example.ratelimitdemo.service.FailedLoginService;
+import com.example.ratelimitdemo.service.MonotonicClock;
+import com.example.ratelimitdemo.service.VerifiedCredentialCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests per second the authentication provider sustains for a client repeating valid Basic credentials, with the
+ * application's BCrypt encoder, with and without the {@link VerifiedCredentialCache}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AuthenticationBenchmark {
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    private CachingAuthenticationProvider provider;
+
+    @Setup
+    public void setUp() {
+        BenchmarkLogging.off();
+        PasswordEncoder encoder = new BCryptPasswordEncoder();
+        InMemoryUserDetailsManager users = new InMemoryUserDetailsManager();
+        users.createUser(User.withUsername("user").password(encoder.encode("password")).roles("USER").build());
+        VerifiedCredentialCache cache = new VerifiedCredentialCache(cached, 10_000, 300, MonotonicClock.system());
+        provider = new CachingAuthenticationProvider(users, encoder, cache, new FailedLoginService(5, 15));
+    }
+
+    @Benchmark
+    public Authentication authenticate() {
+        return provider.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("user", "password"));
+    }
+}
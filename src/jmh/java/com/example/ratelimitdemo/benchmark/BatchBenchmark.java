@@ -0,0 +1,81 @@
+package com.example.ratelimitdemo.benchmark;
+
+import com.example.ratelimitdemo.service.BucketType;
+import com.example.ratelimitdemo.service.EvictionPolicy;
+import com.example.ratelimitdemo.service.MonotonicClock;
+import com.example.ratelimitdemo.service.RateLimiterService;
+import com.example.ratelimitdemo.service.StoreType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time per batch of {@link #batchSize} decisions over a pool of warm keys, deciding them with one
+ * {@link RateLimiterService#tryConsumeBatch} call against a loop of {@link RateLimiterService#tryConsume}.
+ * Divide by the batch size for the cost per decision.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BatchBenchmark {
+
+    private static final int POOL = 4096;
+    private static final int CAPACITY = 10_000;
+    private static final double REFILL_PER_SECOND = 1_000_000_000.0;
+
+    @Param({"1", "16", "256"})
+    public int batchSize;
+
+    @Param({"MAP", "PRIMITIVE"})
+    public StoreType storeType;
+
+    private RateLimiterService service;
+    private String[][] batches;
+    private long[] admitted;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        BenchmarkLogging.quiet();
+        service = new RateLimiterService(BucketType.ATOMIC, storeType, 0, EvictionPolicy.LEAST_RECENTLY_USED, 3600,
+                MonotonicClock.system());
+        batches = new String[POOL / batchSize][batchSize];
+        for (int i = 0; i < POOL; i++) {
+            String key = "user" + i + ":test1";
+            batches[i / batchSize][i % batchSize] = key;
+            service.tryConsume(key, CAPACITY, REFILL_PER_SECOND);
+        }
+        admitted = new long[(batchSize + 63) >>> 6];
+    }
+
+    @Benchmark
+    public int batch() {
+        String[] keys = nextBatch();
+        Arrays.fill(admitted, 0L);
+        return service.tryConsumeBatch(keys, null, keys.length, CAPACITY, REFILL_PER_SECOND, admitted);
+    }
+
+    @Benchmark
+    public int loop() {
+        String[] keys = nextBatch();
+        int granted = 0;
+        for (String key : keys) {
+            if (service.tryConsume(key, CAPACITY, REFILL_PER_SECOND)) granted++;
+        }
+        return granted;
+    }
+
+    private String[] nextBatch() {
+        String[] keys = batches[next];
+        next = next + 1 == batches.length ? 0 : next + 1;
+        return keys;
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.ratelimitdemo.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Benchmarks run without Spring, so logback would fall back to DEBUG on the console; raise the application
+ * loggers to INFO to measure the code rather than the appender.
+ */
+final class BenchmarkLogging {
+
+    private BenchmarkLogging() {
+    }
+
+    static void quiet() {
+        ((Logger) LoggerFactory.getLogger("com.example.ratelimitdemo")).setLevel(Level.INFO);
+    }
+
+    // for code that logs a warning per call, e.g. every failed login, which would otherwise print on every call
+    static void off() {
+        ((Logger) LoggerFactory.getLogger("com.example.ratelimitdemo")).setLevel(Level.OFF);
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.ratelimitdemo.benchmark;
+
+import com.example.ratelimitdemo.service.BucketType;
+import com.example.ratelimitdemo.service.RateLimiterService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link RateLimiterService#tryConsume} when every thread hits the same key, comparing the
+ * synchronized bucket with the lock-free one. The refill rate keeps the bucket from running dry so the
+ * benchmark measures the grant path rather than rejections.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BucketContentionBenchmark {
+
+    private static final String KEY = "service-account:test1:short";
+    private static final int CAPACITY = 10_000;
+    private static final double REFILL_PER_SECOND = 1_000_000_000.0;
+
+    @Param({"SYNCHRONIZED", "ATOMIC"})
+    public BucketType bucketType;
+
+    private RateLimiterService service;
+
+    @Setup
+    public void setUp() {
+        BenchmarkLogging.quiet();
+        service = new RateLimiterService(bucketType);
+        service.tryConsume(KEY, CAPACITY, REFILL_PER_SECOND);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean threads1() {
+        return service.tryConsume(KEY, CAPACITY, REFILL_PER_SECOND);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean threads8() {
+        return service.tryConsume(KEY, CAPACITY, REFILL_PER_SECOND);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public boolean threads64() {
+        return service.tryConsume(KEY, CAPACITY, REFILL_PER_SECOND);
+    }
+}
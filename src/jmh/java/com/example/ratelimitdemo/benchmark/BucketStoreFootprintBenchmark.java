@@ -0,0 +1,103 @@
+package com.example.ratelimitdemo.benchmark;
+
+import com.example.ratelimitdemo.service.BucketType;
+import com.example.ratelimitdemo.service.EvictionPolicy;
+import com.example.ratelimitdemo.service.MonotonicClock;
+import com.example.ratelimitdemo.service.RateLimiterService;
+import com.example.ratelimitdemo.service.StoreType;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap retained per bucket by the map store ({@code ConcurrentHashMap<String, TokenBucket>}) against the primitive
+ * store, and decision throughput once either holds {@link #keys} live buckets.
+ * <p>
+ * {@link #footprint} fills a fresh service with one drained bucket per key and reports the heap growth divided by
+ * the key count as {@code bytesPerBucket}; its time score includes the forced GCs and is not meaningful. Run with
+ * a heap large enough for the map store and without {@code -wi}/{@code -i}, which would override the single
+ * measurement, e.g. {@code -Djmh.args="BucketStoreFootprintBenchmark.footprint -f 1 -jvmArgs -Xmx4g"}.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BucketStoreFootprintBenchmark {
+
+    private static final int CAPACITY = 5;
+    private static final double REFILL_PER_SECOND = 1.0;
+
+    @Param({"MAP", "PRIMITIVE"})
+    public StoreType storeType;
+
+    @Param({"1000000"})
+    public int keys;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Footprint {
+        public long bytesPerBucket;
+    }
+
+    // only highCardinality uses this, so footprint starts from an empty heap
+    @State(Scope.Thread)
+    public static class Populated {
+        RateLimiterService service;
+        String[] keyNames;
+        int next;
+
+        @Setup(Level.Trial)
+        public void fill(BucketStoreFootprintBenchmark benchmark) {
+            service = benchmark.newService();
+            keyNames = new String[benchmark.keys];
+            for (int i = 0; i < keyNames.length; i++) {
+                keyNames[i] = "user" + i + ":test1:short";
+                service.tryConsume(keyNames[i], CAPACITY, REFILL_PER_SECOND);
+            }
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        BenchmarkLogging.quiet();
+    }
+
+    // aux counters add up across iterations, so measure once
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    public int footprint(Footprint footprint) {
+        long before = Heap.used();
+        RateLimiterService service = newService();
+        for (int i = 0; i < keys; i++) {
+            service.tryConsume("user" + i + ":test1:short", CAPACITY, REFILL_PER_SECOND);
+        }
+        long after = Heap.used();
+        footprint.bytesPerBucket = (after - before) / keys;
+        // keeps the service reachable until after the measurement
+        return service.getBucketCount();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public boolean highCardinality(Populated populated) {
+        int i = populated.next;
+        populated.next = i + 1 == populated.keyNames.length ? 0 : i + 1;
+        return populated.service.tryConsume(populated.keyNames[i], CAPACITY, REFILL_PER_SECOND);
+    }
+
+    private RateLimiterService newService() {
+        return new RateLimiterService(BucketType.SYNCHRONIZED, storeType, 0, EvictionPolicy.LEAST_RECENTLY_USED,
+                3600, MonotonicClock.system());
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.ratelimitdemo.benchmark;
+
+import com.example.ratelimitdemo.service.BucketType;
+import com.example.ratelimitdemo.service.ClockMode;
+import com.example.ratelimitdemo.service.EvictionPolicy;
+import com.example.ratelimitdemo.service.MonotonicClock;
+import com.example.ratelimitdemo.service.PreciseClock;
+import com.example.ratelimitdemo.service.RateLimiterService;
+import com.example.ratelimitdemo.service.TickerClock;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-read and per-decision cost of the clock modes, with {@code Instant.now()} as the old baseline.
+ * {@link #tickerLag} reports how far ticker readings trail the precise clock (accuracy of the cached mode).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ClockBenchmark {
+
+    @Param({"PRECISE", "TICKER"})
+    public ClockMode mode;
+
+    private MonotonicClock clock;
+    private final PreciseClock precise = new PreciseClock();
+    private RateLimiterService service;
+
+    @Setup
+    public void setUp() {
+        BenchmarkLogging.quiet();
+        clock = mode == ClockMode.TICKER ? new TickerClock(1) : new PreciseClock();
+        service = new RateLimiterService(BucketType.ATOMIC, 0, EvictionPolicy.LEAST_RECENTLY_USED, 60, clock);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (clock instanceof TickerClock) {
+            ((TickerClock) clock).close();
+        }
+    }
+
+    @Benchmark
+    public long instantNowBaseline() {
+        return Instant.now().toEpochMilli();
+    }
+
+    @Benchmark
+    public long read() {
+        return clock.currentTimeNanos();
+    }
+
+    @Benchmark
+    public boolean decision() {
+        return service.tryConsume("user:test1:short", 10_000, 1_000_000.0);
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Lag {
+        public long lagNanos;
+        public long samples;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            lagNanos = 0;
+            samples = 0;
+        }
+
+        public double meanLagMicros() {
+            return samples == 0 ? 0.0 : lagNanos / 1000.0 / samples;
+        }
+    }
+
+    @Benchmark
+    public void tickerLag(Lag lag) {
+        lag.lagNanos += precise.currentTimeNanos() - clock.currentTimeNanos();
+        lag.samples++;
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.ratelimitdemo.benchmark;
+
+import com.example.ratelimitdemo.service.BlockStatus;
+import com.example.ratelimitdemo.service.DecisionLog;
+import com.example.ratelimitdemo.service.FailedLoginService;
+import com.example.ratelimitdemo.service.MonotonicClock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the brute-force checks run on every authenticated request ({@link FailedLoginService#blockStatus},
+ * as used by the pre-auth filter, and {@link FailedLoginService#isUserBlocked} with
+ * {@link FailedLoginService#isIpBlocked}) and of {@link FailedLoginService#recordFailed}, on one contended
+ * user/IP pair and across a large set of them. Every pair has one failure recorded in setup, so the checks hit
+ * existing entries; with many pairs, one in a hundred is locked. {@code lockFilterBits} 0 turns off the bloom
+ * filter that lets blockStatus skip the lookups for keys that are not locked. Logging is off: recordFailed warns on
+ * every call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FailedLoginServiceBenchmark {
+
+    @Param({"SINGLE", "HIGH_CARDINALITY"})
+    public KeyDistribution keys;
+
+    @Param({"0", "1048576"})
+    public int lockFilterBits;
+
+    private FailedLoginService service;
+    private String[] users;
+    private String[] ips;
+
+    @Setup
+    public void setUp() {
+        BenchmarkLogging.off();
+        service = new FailedLoginService(5, 15, 15, MonotonicClock.system(), DecisionLog.disabled(),
+                false, 0, 0, 0, false, 0, 0, 0, lockFilterBits);
+        users = new String[keys.keys];
+        ips = new String[keys.keys];
+        for (int i = 0; i < keys.keys; i++) {
+            users[i] = "user" + i;
+            ips[i] = "10." + ((i >>> 16) & 0xFF) + "." + ((i >>> 8) & 0xFF) + "." + (i & 0xFF);
+            service.recordFailed(users[i], ips[i]);
+        }
+        for (int i = 0; keys.keys > 1 && i < keys.keys; i += 100) {
+            for (int n = 1; n < 5; n++) {
+                service.recordFailed(users[i], ips[i]);
+            }
+        }
+    }
+
+    @Benchmark
+    public BlockStatus blockStatus(KeyCursor cursor) {
+        int i = cursor.next(keys.keys);
+        return service.blockStatus(users[i], ips[i]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public BlockStatus blockStatusThreads4(KeyCursor cursor) {
+        int i = cursor.next(keys.keys);
+        return service.blockStatus(users[i], ips[i]);
+    }
+
+    @Benchmark
+    public boolean isBlocked(KeyCursor cursor) {
+        int i = cursor.next(keys.keys);
+        return service.isUserBlocked(users[i]) | service.isIpBlocked(ips[i]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean isBlockedThreads4(KeyCursor cursor) {
+        int i = cursor.next(keys.keys);
+        return service.isUserBlocked(users[i]) | service.isIpBlocked(ips[i]);
+    }
+
+    @Benchmark
+    public void recordFailed(KeyCursor cursor) {
+        int i = cursor.next(keys.keys);
+        service.recordFailed(users[i], ips[i]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordFailedThreads4(KeyCursor cursor) {
+        int i = cursor.next(keys.keys);
+        service.recordFailed(users[i], ips[i]);
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.ratelimitdemo.benchmark;
+
+/**
+ * Heap occupancy after forced collections, for footprint benchmarks that report bytes retained per key.
+ */
+final class Heap {
+
+    private Heap() {
+    }
+
+    static long used() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
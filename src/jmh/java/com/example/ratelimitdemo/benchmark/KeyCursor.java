@@ -0,0 +1,29 @@
+package com.example.ratelimitdemo.benchmark;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Per-thread position in a power-of-two key set. An odd stride visits every key once per lap without walking
+ * neighbouring keys, and each thread starts at a random offset so threads do not move in lock-step.
+ */
+@State(Scope.Thread)
+public class KeyCursor {
+
+    private static final int STRIDE = 0x9E3779B1;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        next = ThreadLocalRandom.current().nextInt();
+    }
+
+    int next(int keys) {
+        next += STRIDE;
+        return next & (keys - 1);
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.ratelimitdemo.benchmark;
+
+/**
+ * How many distinct keys a benchmark spreads its calls over: {@link #SINGLE} puts every thread on one key to
+ * measure contention, {@link #HIGH_CARDINALITY} walks a large key set to measure lookups that miss the CPU caches.
+ */
+public enum KeyDistribution {
+    SINGLE(1),
+    HIGH_CARDINALITY(1 << 17);
+
+    final int keys;
+
+    KeyDistribution(int keys) {
+        this.keys = keys;
+    }
+}
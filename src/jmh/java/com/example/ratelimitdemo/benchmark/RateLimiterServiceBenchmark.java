@@ -0,0 +1,82 @@
+package com.example.ratelimitdemo.benchmark;
+
+import com.example.ratelimitdemo.service.BucketType;
+import com.example.ratelimitdemo.service.EvictionPolicy;
+import com.example.ratelimitdemo.service.MonotonicClock;
+import com.example.ratelimitdemo.service.RateLimiterService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the two-bucket {@link RateLimiterService#tryConsumeComposite} decision and the
+ * {@link RateLimiterService#getBucketInfo} read behind the rate-limit headers, on one contended key and across a
+ * large key set. Run with {@code -prof gc} for allocation per call. Every bucket is created in setup and refills
+ * far faster than it is drained, so the benchmarks measure the grant path of existing buckets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RateLimiterServiceBenchmark {
+
+    // fits the packed atomic bucket, so ATOMIC does not fall back to the synchronized one
+    private static final int CAPACITY = 60_000;
+    private static final double REFILL_PER_SECOND = 1_000_000_000.0;
+
+    @Param({"SINGLE", "HIGH_CARDINALITY"})
+    public KeyDistribution keys;
+
+    @Param({"SYNCHRONIZED", "ATOMIC"})
+    public BucketType bucketType;
+
+    private RateLimiterService service;
+    private String[] shortKeys;
+    private String[] minuteKeys;
+
+    @Setup
+    public void setUp() {
+        BenchmarkLogging.quiet();
+        service = new RateLimiterService(bucketType, 0, EvictionPolicy.LEAST_RECENTLY_USED, 3600, MonotonicClock.system());
+        shortKeys = new String[keys.keys];
+        minuteKeys = new String[keys.keys];
+        for (int i = 0; i < keys.keys; i++) {
+            shortKeys[i] = "user" + i + ":test1:short";
+            minuteKeys[i] = "user" + i + ":test1:minute";
+            service.tryConsumeComposite(shortKeys[i], CAPACITY, REFILL_PER_SECOND, minuteKeys[i], CAPACITY, REFILL_PER_SECOND);
+        }
+    }
+
+    @Benchmark
+    public boolean tryConsumeComposite(KeyCursor cursor) {
+        return consume(cursor.next(keys.keys));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean tryConsumeCompositeThreads4(KeyCursor cursor) {
+        return consume(cursor.next(keys.keys));
+    }
+
+    @Benchmark
+    public RateLimiterService.BucketInfo getBucketInfo(KeyCursor cursor) {
+        return service.getBucketInfo(shortKeys[cursor.next(keys.keys)], CAPACITY, REFILL_PER_SECOND);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public RateLimiterService.BucketInfo getBucketInfoThreads4(KeyCursor cursor) {
+        return service.getBucketInfo(shortKeys[cursor.next(keys.keys)], CAPACITY, REFILL_PER_SECOND);
+    }
+
+    private boolean consume(int key) {
+        return service.tryConsumeComposite(shortKeys[key], CAPACITY, REFILL_PER_SECOND, minuteKeys[key], CAPACITY, REFILL_PER_SECOND);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.ratelimitdemo.benchmark;
+
+import com.example.ratelimitdemo.RateLimitDemoApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a rejected request end to end: the application on an embedded Tomcat with the pre-authentication address
+ * limit set to zero, so every request is answered 429 by {@code IpRateLimitFilter}, and an HTTP client on loopback
+ * sending valid Basic credentials. Measures what the server spends on traffic it turns away, including any error
+ * dispatch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RejectedRequestBenchmark {
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private HttpRequest request;
+
+    @Setup
+    public void setUp() {
+        BenchmarkLogging.off();
+        context = SpringApplication.run(RateLimitDemoApplication.class,
+                "--server.port=0",
+                "--ratelimit.preauth.ip.capacity=0",
+                "--decisionlog.enabled=false",
+                "--logging.level.root=OFF",
+                "--logging.level.com.example.ratelimitdemo=OFF");
+        int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/test1"))
+                .header("Authorization", "Basic " + Base64.getEncoder().encodeToString("user:password".getBytes(StandardCharsets.UTF_8)))
+                .GET()
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int rejected() throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 429) {
+            throw new IllegalStateException("expected 429, got " + response.statusCode());
+        }
+        return response.body().length;
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.ratelimitdemo.benchmark;
+
+import com.example.ratelimitdemo.config.PreAuthFilter;
+import com.example.ratelimitdemo.config.RateLimitInterceptor;
+import com.example.ratelimitdemo.controller.DemoController;
+import com.example.ratelimitdemo.service.FailedLoginService;
+import com.example.ratelimitdemo.service.RateLimiterService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.method.HandlerMethod;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the application's own per-request work on a rate-limited route: {@link PreAuthFilter} decoding the
+ * Basic credentials and checking the lockouts, then {@link RateLimitInterceptor#preHandle} deciding both windows
+ * and writing the headers. Spring Security's filters and the password check are left out, so the numbers are what
+ * this code adds to each request. Each thread reuses one mock request; the limits refill far faster than they are
+ * drained, so every request is allowed. {@link #bypass} is a request to a handler without {@code @RateLimited}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RequestPathBenchmark {
+
+    private static final int CAPACITY = 1_000_000_000;
+
+    @Param({"SINGLE", "HIGH_CARDINALITY"})
+    public KeyDistribution keys;
+
+    private PreAuthFilter filter;
+    private RateLimitInterceptor interceptor;
+    private HandlerMethod limitedHandler;
+    private HandlerMethod unlimitedHandler;
+    private String[] authorizations;
+    private String[] remoteAddrs;
+    private Authentication[] authentications;
+
+    @Setup
+    public void setUp() {
+        BenchmarkLogging.quiet();
+        filter = new PreAuthFilter(new FailedLoginService(5, 15));
+        interceptor = new RateLimitInterceptor(new RateLimiterService());
+        ReflectionTestUtils.setField(interceptor, "cfgShortCapacity", CAPACITY);
+        ReflectionTestUtils.setField(interceptor, "cfgShortWindowSeconds", 1);
+        ReflectionTestUtils.setField(interceptor, "cfgMinuteCapacity", CAPACITY);
+        ReflectionTestUtils.setField(interceptor, "cfgMinuteWindowSeconds", 1);
+        ReflectionTestUtils.setField(interceptor, "cfgRoutes", "");
+        DemoController controller = new DemoController();
+        try {
+            limitedHandler = new HandlerMethod(controller, "test1", Authentication.class);
+            unlimitedHandler = new HandlerMethod(controller, "test2", Authentication.class);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+
+        authorizations = new String[keys.keys];
+        remoteAddrs = new String[keys.keys];
+        authentications = new Authentication[keys.keys];
+        for (int i = 0; i < keys.keys; i++) {
+            String user = "user" + i;
+            authorizations[i] = "Basic " + Base64.getEncoder().encodeToString((user + ":password").getBytes(StandardCharsets.UTF_8));
+            remoteAddrs[i] = "10." + ((i >>> 16) & 0xFF) + "." + ((i >>> 8) & 0xFF) + "." + (i & 0xFF);
+            authentications[i] = UsernamePasswordAuthenticationToken.authenticated(user, null, null);
+        }
+    }
+
+    /**
+     * This thread's request: one mock, wrapped so each call can present another key's credentials and address
+     * without a request object per key.
+     */
+    @State(Scope.Thread)
+    public static class Requests {
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        final MockHttpServletRequest unlimited = new MockHttpServletRequest("GET", "/api/test2");
+        KeyedRequest request;
+        FilterChain chain;
+        boolean allowed;
+
+        @Setup
+        public void setUp(RequestPathBenchmark benchmark) {
+            request = new KeyedRequest(new MockHttpServletRequest("GET", "/api/test1"), benchmark);
+            chain = (req, res) -> {
+                try {
+                    allowed = benchmark.interceptor.preHandle((HttpServletRequest) req, (HttpServletResponse) res, benchmark.limitedHandler);
+                } catch (Exception e) {
+                    throw new ServletException(e);
+                }
+            };
+        }
+    }
+
+    static final class KeyedRequest extends HttpServletRequestWrapper {
+        private final RequestPathBenchmark benchmark;
+        int key;
+
+        KeyedRequest(HttpServletRequest request, RequestPathBenchmark benchmark) {
+            super(request);
+            this.benchmark = benchmark;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return "Authorization".equalsIgnoreCase(name) ? benchmark.authorizations[key] : super.getHeader(name);
+        }
+
+        @Override
+        public String getRemoteAddr() {
+            return benchmark.remoteAddrs[key];
+        }
+    }
+
+    @Benchmark
+    public boolean request(KeyCursor cursor, Requests requests) throws ServletException, IOException {
+        return handle(cursor, requests);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean requestThreads4(KeyCursor cursor, Requests requests) throws ServletException, IOException {
+        return handle(cursor, requests);
+    }
+
+    @Benchmark
+    public boolean bypass(Requests requests) throws Exception {
+        return interceptor.preHandle(requests.unlimited, requests.response, unlimitedHandler);
+    }
+
+    private boolean handle(KeyCursor cursor, Requests requests) throws ServletException, IOException {
+        int i = cursor.next(keys.keys);
+        // what BasicAuthenticationFilter leaves behind for the interceptor
+        SecurityContextHolder.getContext().setAuthentication(authentications[i]);
+        requests.allowed = false;
+        requests.request.key = i;
+        filter.doFilter(requests.request, requests.response, requests.chain);
+        return requests.allowed;
+    }
+}
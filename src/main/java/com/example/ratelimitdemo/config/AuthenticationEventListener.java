@@ -1,9 +1,10 @@
 package com.example.ratelimitdemo.config;
 
+import com.example.ratelimitdemo.service.AuthEventProcessor;
 import com.example.ratelimitdemo.service.FailedLoginService;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationListener;
+import org.springframework.security.authentication.event.AbstractAuthenticationEvent;
 import org.springframework.security.authentication.event.AbstractAuthenticationFailureEvent;
 import org.springframework.security.authentication.event.AuthenticationSuccessEvent;
 import org.springframework.stereotype.Component;
@@ -13,30 +14,35 @@ import org.springframework.web.context.request.ServletRequestAttributes;
 
 import jakarta.servlet.http.HttpServletRequest;
 
+/**
+ * Hands login outcomes to the {@link AuthEventProcessor}. Subscribed to authentication events only, so other
+ * application events never reach it; the work on the request thread is resolving the client address and queuing
+ * the outcome. Failures are summarized by the {@code DecisionLog} rather than logged one by one.
+ */
 @Component
-public class AuthenticationEventListener implements ApplicationListener<org.springframework.context.ApplicationEvent> {
-    private static final Logger log = LoggerFactory.getLogger(AuthenticationEventListener.class);
+public class AuthenticationEventListener implements ApplicationListener<AbstractAuthenticationEvent> {
 
-    private final FailedLoginService failedLoginService;
+    private final AuthEventProcessor authEventProcessor;
+    private final ClientIpResolver clientIpResolver;
 
     public AuthenticationEventListener(FailedLoginService failedLoginService) {
-        this.failedLoginService = failedLoginService;
+        this(AuthEventProcessor.direct(failedLoginService), new ClientIpResolver());
+    }
+
+    @Autowired
+    public AuthenticationEventListener(AuthEventProcessor authEventProcessor, ClientIpResolver clientIpResolver) {
+        this.authEventProcessor = authEventProcessor;
+        this.clientIpResolver = clientIpResolver;
     }
 
     @Override
-    public void onApplicationEvent(org.springframework.context.ApplicationEvent event) {
-        if (event instanceof AuthenticationSuccessEvent) {
-            AuthenticationSuccessEvent ase = (AuthenticationSuccessEvent) event;
-            String username = ase.getAuthentication() != null ? ase.getAuthentication().getName() : null;
-            String ip = resolveIp();
-            failedLoginService.recordSuccess(username, ip);
-            log.info("Authentication success for user={} ip={}", username, ip);
-        } else if (event instanceof AbstractAuthenticationFailureEvent) {
-            AbstractAuthenticationFailureEvent afe = (AbstractAuthenticationFailureEvent) event;
-            String username = afe.getAuthentication() != null ? String.valueOf(afe.getAuthentication().getPrincipal()) : null;
-            String ip = resolveIp();
-            failedLoginService.recordFailed(username, ip);
-            log.warn("Authentication failure for principal={} ip={} exception={}", username, ip, afe.getException().getMessage());
+    public void onApplicationEvent(AbstractAuthenticationEvent event) {
+        if (event instanceof AbstractAuthenticationFailureEvent) {
+            String username = event.getAuthentication() != null ? String.valueOf(event.getAuthentication().getPrincipal()) : null;
+            authEventProcessor.failed(username, resolveIp());
+        } else if (event instanceof AuthenticationSuccessEvent) {
+            String username = event.getAuthentication() != null ? event.getAuthentication().getName() : null;
+            authEventProcessor.succeeded(username, resolveIp());
         }
     }
 
@@ -44,11 +50,8 @@ public class AuthenticationEventListener implements ApplicationListener<org.spri
         RequestAttributes reqAttrs = RequestContextHolder.getRequestAttributes();
         if (reqAttrs instanceof ServletRequestAttributes) {
             HttpServletRequest req = ((ServletRequestAttributes) reqAttrs).getRequest();
-            String xf = req.getHeader("X-Forwarded-For");
-            if (xf != null && !xf.isEmpty()) return xf.split(",")[0].trim();
-            return req.getRemoteAddr();
+            return clientIpResolver.resolve(req);
         }
         return "unknown";
     }
 }
-
@@ -0,0 +1,87 @@
+package com.example.ratelimitdemo.config;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads the username out of an {@code Authorization: Basic} header without decoding the rest of it. The Base64 is
+ * decoded one group of four characters at a time into a per-thread buffer and decoding stops at the first colon,
+ * so the password never becomes a byte array or a string; only the username is allocated. Up to the colon, the
+ * same input is accepted as by {@link java.util.Base64#getDecoder()}.
+ */
+final class BasicAuthUsername {
+
+    static final String PREFIX = "Basic ";
+
+    // usernames longer than this decode into a one-off array
+    private static final int BUFFER_SIZE = 256;
+    private static final ThreadLocal<byte[]> BUFFERS = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+    private static final byte[] DECODE = new byte[128];
+
+    static {
+        Arrays.fill(DECODE, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODE[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    private BasicAuthUsername() {
+    }
+
+    /**
+     * The username of a Basic {@code header}: the decoded text before the first colon, or all of it if there is no
+     * colon. Null if the header is not Basic or is not valid Base64 before the colon.
+     */
+    static String extract(String header) {
+        if (header == null || !header.startsWith(PREFIX)) {
+            return null;
+        }
+        byte[] buffer = BUFFERS.get();
+        int length = 0;
+        int end = header.length();
+        int i = PREFIX.length();
+        while (i < end) {
+            int bits = 0;
+            int chars = 0;
+            for (; chars < 4 && i < end; chars++, i++) {
+                char c = header.charAt(i);
+                int value = c < DECODE.length ? DECODE[c] : -1;
+                if (value < 0) break;
+                bits = bits << 6 | value;
+            }
+            if (chars < 2) {
+                return null; // a group needs at least two characters; anything else here is not Base64
+            }
+            bits <<= 6 * (4 - chars);
+            for (int b = 0, bytes = chars - 1; b < bytes; b++) {
+                int value = (bits >>> (16 - 8 * b)) & 0xFF;
+                if (value == ':') {
+                    return new String(buffer, 0, length, StandardCharsets.UTF_8);
+                }
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, 2 * length);
+                }
+                buffer[length++] = (byte) value;
+            }
+            if (chars < 4) {
+                // a short group ends the data: either at the end of the header or followed by its exact padding
+                if (i < end && !isPadding(header, i, 4 - chars)) {
+                    return null;
+                }
+                break;
+            }
+        }
+        return new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isPadding(String header, int from, int count) {
+        if (header.length() - from != count) {
+            return false;
+        }
+        for (int i = from; i < header.length(); i++) {
+            if (header.charAt(i) != '=') return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.ratelimitdemo.config;
+
+import com.example.ratelimitdemo.service.FailedLoginService;
+import com.example.ratelimitdemo.service.VerifiedCredentialCache;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * {@link DaoAuthenticationProvider} that skips the password encoder for credentials the
+ * {@link VerifiedCredentialCache} verified recently. A locked user is always checked in full and dropped from the
+ * cache, so a lock cannot be outlived by a cached login.
+ */
+public class CachingAuthenticationProvider extends DaoAuthenticationProvider {
+
+    private final VerifiedCredentialCache cache;
+    private final FailedLoginService failedLoginService;
+
+    public CachingAuthenticationProvider(UserDetailsService userDetailsService, PasswordEncoder passwordEncoder,
+                                         VerifiedCredentialCache cache, FailedLoginService failedLoginService) {
+        super(passwordEncoder);
+        setUserDetailsService(userDetailsService);
+        this.cache = cache;
+        this.failedLoginService = failedLoginService;
+    }
+
+    @Override
+    protected void additionalAuthenticationChecks(UserDetails userDetails, UsernamePasswordAuthenticationToken authentication)
+            throws AuthenticationException {
+        String username = userDetails.getUsername();
+        Object credentials = authentication.getCredentials();
+        String password = credentials != null ? credentials.toString() : null;
+        if (failedLoginService.isUserBlocked(username)) {
+            cache.invalidate(username);
+        } else if (cache.isVerified(username, password, userDetails.getPassword())) {
+            return;
+        }
+        super.additionalAuthenticationChecks(userDetails, authentication);
+        cache.put(username, password, userDetails.getPassword());
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.ratelimitdemo.config;
+
+import com.example.ratelimitdemo.service.IpAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * The client address of a request, for the lockout and limiter keys. {@code X-Forwarded-For} is believed only as
+ * far as trusted proxies vouch for it: starting from the connection's address, the header is read from right to
+ * left while the address at hand is a trusted proxy, and the first address that is not is the client. A client
+ * can put anything at the left of the header, but never to the right of what its first trusted proxy appended.
+ * <p>
+ * The result is the address in canonical form, so that {@code ::ffff:10.0.0.1} and {@code 10.0.0.1}, or the
+ * spellings of one IPv6 address, are one key; an address that does not parse is kept as written. It is resolved
+ * once per request and kept as a request attribute.
+ */
+@Component
+public class ClientIpResolver {
+    private static final Logger log = LoggerFactory.getLogger(ClientIpResolver.class);
+
+    /** Loopback and private networks, as Tomcat's {@code RemoteIpValve} trusts by default. */
+    public static final String DEFAULT_TRUSTED_PROXIES =
+            "127.0.0.0/8,10.0.0.0/8,172.16.0.0/12,192.168.0.0/16,::1/128,fc00::/7";
+
+    static final String ATTRIBUTE = ClientIpResolver.class.getName() + ".clientIp";
+    static final String FORWARDED_FOR = "X-Forwarded-For";
+
+    private final IpAddress[] networks;
+    private final int[] prefixLengths;
+
+    public ClientIpResolver() {
+        this(DEFAULT_TRUSTED_PROXIES);
+    }
+
+    @Autowired
+    public ClientIpResolver(@Value("${ratelimit.trustedProxies:" + DEFAULT_TRUSTED_PROXIES + "}") String trustedProxies) {
+        String[] entries = trustedProxies == null || trustedProxies.isBlank() ? new String[0] : trustedProxies.split(",");
+        this.networks = new IpAddress[entries.length];
+        this.prefixLengths = new int[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            String entry = entries[i].trim();
+            int slash = entry.indexOf('/');
+            IpAddress network = IpAddress.parse(entry, 0, slash < 0 ? entry.length() : slash);
+            if (network == null) {
+                throw new IllegalArgumentException("Invalid trusted proxy network: " + entry);
+            }
+            int length = network.getBitLength();
+            if (slash >= 0) {
+                try {
+                    length = Integer.parseInt(entry.substring(slash + 1));
+                } catch (NumberFormatException e) {
+                    length = -1;
+                }
+                if (length < 0 || length > network.getBitLength()) {
+                    throw new IllegalArgumentException("Invalid trusted proxy prefix length: " + entry);
+                }
+            }
+            networks[i] = network;
+            prefixLengths[i] = length;
+        }
+        log.info("ClientIpResolver initialized with trustedProxies={}", trustedProxies);
+    }
+
+    /**
+     * The client address of {@code request}, or its remote address as reported if that is not an IP literal.
+     */
+    public String resolve(HttpServletRequest request) {
+        Object cached = request.getAttribute(ATTRIBUTE);
+        if (cached instanceof String) {
+            return (String) cached;
+        }
+        String ip = resolveUncached(request);
+        if (ip != null) {
+            request.setAttribute(ATTRIBUTE, ip);
+        }
+        return ip;
+    }
+
+    /**
+     * Whether {@code address} lies in one of the trusted proxy networks.
+     */
+    public boolean isTrusted(IpAddress address) {
+        for (int i = 0; i < networks.length; i++) {
+            if (address.isInNetwork(networks[i], prefixLengths[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String resolveUncached(HttpServletRequest request) {
+        String remote = request.getRemoteAddr();
+        IpAddress peer = IpAddress.parse(remote);
+        if (peer == null) {
+            return remote;
+        }
+        String header = request.getHeader(FORWARDED_FOR);
+        if (header == null || !isTrusted(peer)) {
+            return peer.toString();
+        }
+        IpAddress client = peer;
+        int end = header.length();
+        while (end > 0) {
+            int comma = header.lastIndexOf(',', end - 1);
+            int from = comma + 1;
+            int to = end;
+            end = comma < 0 ? 0 : comma;
+            while (from < to && header.charAt(from) == ' ') from++;
+            while (to > from && header.charAt(to - 1) == ' ') to--;
+            if (from == to) {
+                continue; // empty hop, e.g. a stray comma
+            }
+            IpAddress hop = IpAddress.parse(header, from, to);
+            if (hop == null) {
+                // a trusted proxy reported something other than an address; it is all there is to go on
+                return header.substring(from, to);
+            }
+            client = hop;
+            if (!isTrusted(hop)) {
+                break;
+            }
+        }
+        return client.toString();
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.ratelimitdemo.config;
+
+import com.example.ratelimitdemo.service.ClockMode;
+import com.example.ratelimitdemo.service.MonotonicClock;
+import com.example.ratelimitdemo.service.PreciseClock;
+import com.example.ratelimitdemo.service.TickerClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ClockConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(ClockConfig.class);
+
+    // TickerClock is AutoCloseable, so Spring stops its thread on shutdown
+    @Bean
+    MonotonicClock limiterClock(@Value("${ratelimit.clock.mode:precise}") ClockMode mode,
+                                @Value("${ratelimit.clock.tickMillis:1}") int tickMillis) {
+        log.info("Creating {} limiter clock", mode);
+        return mode == ClockMode.TICKER ? new TickerClock(tickMillis) : new PreciseClock();
+    }
+}
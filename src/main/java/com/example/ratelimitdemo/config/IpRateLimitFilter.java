@@ -0,0 +1,108 @@
+package com.example.ratelimitdemo.config;
+
+import com.example.ratelimitdemo.service.IpAddress;
+import com.example.ratelimitdemo.service.RateLimitDecision;
+import com.example.ratelimitdemo.service.RateLimitWindow;
+import com.example.ratelimitdemo.service.RateLimiterService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits requests per client address and per subnet (/24 for IPv4, /64 for IPv6) before Spring Security parses
+ * credentials or checks a password, so a flood of requests is shed for the price of a bucket lookup. Runs ahead of
+ * {@link PreAuthFilter}; the per-user limits of {@link RateLimitInterceptor} still apply to what gets through.
+ * <p>
+ * The address is the client's as {@link ClientIpResolver} finds it, so it is the one the lockouts see and only
+ * trusted proxies can vouch for a forwarded address. Subnets are keyed by network, so every spelling of an
+ * address, IPv4-mapped ones included, lands in the same bucket.
+ */
+@Component
+public class IpRateLimitFilter extends OncePerRequestFilter {
+    private static final Logger log = LoggerFactory.getLogger(IpRateLimitFilter.class);
+
+    private static final int IPV4_SUBNET_LENGTH = 24;
+    private static final int IPV6_SUBNET_LENGTH = 64;
+
+    private final RateLimiterService rateLimiterService;
+    private final ClientIpResolver clientIpResolver;
+    private final boolean enabled;
+    private final List<RateLimitWindow> ipWindows;
+    private final List<RateLimitWindow> subnetWindows;
+
+    private final LongAdder deniedByIp = new LongAdder();
+    private final LongAdder deniedBySubnet = new LongAdder();
+
+    public IpRateLimitFilter(RateLimiterService rateLimiterService, boolean enabled, int ipCapacity, int ipWindowSeconds,
+                             int subnetCapacity, int subnetWindowSeconds) {
+        this(rateLimiterService, new ClientIpResolver(), enabled, ipCapacity, ipWindowSeconds, subnetCapacity, subnetWindowSeconds);
+    }
+
+    @Autowired
+    public IpRateLimitFilter(RateLimiterService rateLimiterService,
+                             ClientIpResolver clientIpResolver,
+                             @Value("${ratelimit.preauth.enabled:true}") boolean enabled,
+                             @Value("${ratelimit.preauth.ip.capacity:100}") int ipCapacity,
+                             @Value("${ratelimit.preauth.ip.windowSeconds:10}") int ipWindowSeconds,
+                             @Value("${ratelimit.preauth.subnet.capacity:1000}") int subnetCapacity,
+                             @Value("${ratelimit.preauth.subnet.windowSeconds:10}") int subnetWindowSeconds) {
+        this.rateLimiterService = rateLimiterService;
+        this.clientIpResolver = clientIpResolver;
+        this.enabled = enabled;
+        this.ipWindows = List.of(RateLimitWindow.perWindow("Ip", ipCapacity, ipWindowSeconds));
+        this.subnetWindows = List.of(RateLimitWindow.perWindow("Subnet", subnetCapacity, subnetWindowSeconds));
+        log.info("IpRateLimitFilter initialized with enabled={} ip={}/{}s subnet={}/{}s",
+                enabled, ipCapacity, ipWindowSeconds, subnetCapacity, subnetWindowSeconds);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        String ip = enabled ? clientIpResolver.resolve(request) : null;
+        if (ip != null) {
+            RateLimitDecision decision = rateLimiterService.tryConsume("ip:" + ip, ipWindows);
+            if (!decision.isAllowed()) {
+                deniedByIp.increment();
+                reject(response, decision);
+                return;
+            }
+            IpAddress address = IpAddress.parse(ip);
+            if (address != null) {
+                String subnet = address.toPrefixString(address.isIpv4() ? IPV4_SUBNET_LENGTH : IPV6_SUBNET_LENGTH);
+                decision = rateLimiterService.tryConsume("subnet:" + subnet, subnetWindows);
+                if (!decision.isAllowed()) {
+                    deniedBySubnet.increment();
+                    reject(response, decision);
+                    return;
+                }
+            }
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    private static void reject(HttpServletResponse response, RateLimitDecision decision) throws IOException {
+        int retry = decision.getRetryAfterSeconds();
+        if (retry > 0 && retry < Integer.MAX_VALUE) {
+            response.setIntHeader("Retry-After", retry);
+        }
+        RejectionWriter.TOO_MANY_REQUESTS.write(response);
+    }
+
+    public long getDeniedByIpCount() {
+        return deniedByIp.sum();
+    }
+
+    public long getDeniedBySubnetCount() {
+        return deniedBySubnet.sum();
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.ratelimitdemo.config;
+
+import com.example.ratelimitdemo.service.AuthEventProcessor;
+import com.example.ratelimitdemo.service.FailedLoginService;
+import com.example.ratelimitdemo.service.RateLimiterService;
+import com.example.ratelimitdemo.service.TrafficShaper;
+import com.example.ratelimitdemo.service.VerifiedCredentialCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exposes the counters the limiter, shaper, brute-force and credential cache services already keep as meters.
+ * Every meter reads a getter when the registry is scraped, so none of them adds work to a request. Per-request
+ * meters (decisions by endpoint and window, decision latency) are recorded by {@link RateLimitInterceptor}.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    MeterBinder rateLimiterMetrics(RateLimiterService limiter, IpRateLimitFilter ipRateLimitFilter) {
+        return registry -> {
+            Gauge.builder("ratelimit.buckets", limiter, RateLimiterService::getBucketCount)
+                    .description("Buckets held by the rate limiter")
+                    .register(registry);
+            FunctionCounter.builder("ratelimit.evictions", limiter, RateLimiterService::getIdleEvictionCount)
+                    .description("Buckets removed from the store")
+                    .tag("reason", "idle")
+                    .register(registry);
+            FunctionCounter.builder("ratelimit.evictions", limiter, RateLimiterService::getCapacityEvictionCount)
+                    .description("Buckets removed from the store")
+                    .tag("reason", "capacity")
+                    .register(registry);
+            FunctionCounter.builder("ratelimit.untracked.keys", limiter, RateLimiterService::getUntrackedKeyCount)
+                    .description("Keys decided without a bucket because the store was full")
+                    .register(registry);
+            FunctionCounter.builder("ratelimit.preauth.denied", ipRateLimitFilter, IpRateLimitFilter::getDeniedByIpCount)
+                    .description("Requests rejected before authentication by the per-address or per-subnet limit")
+                    .tag("scope", "ip")
+                    .register(registry);
+            FunctionCounter.builder("ratelimit.preauth.denied", ipRateLimitFilter, IpRateLimitFilter::getDeniedBySubnetCount)
+                    .description("Requests rejected before authentication by the per-address or per-subnet limit")
+                    .tag("scope", "subnet")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    MeterBinder trafficShaperMetrics(TrafficShaper shaper) {
+        return registry -> {
+            Gauge.builder("ratelimit.shaping.queued", shaper, TrafficShaper::getQueuedCount)
+                    .description("Requests waiting for their permits")
+                    .register(registry);
+            FunctionCounter.builder("ratelimit.shaping.parked", shaper, TrafficShaper::getParkedCount)
+                    .register(registry);
+            FunctionCounter.builder("ratelimit.shaping.released", shaper, TrafficShaper::getReleasedCount)
+                    .register(registry);
+            FunctionCounter.builder("ratelimit.shaping.abandoned", shaper, TrafficShaper::getAbandonedCount)
+                    .description("Requests whose client went away while they waited")
+                    .register(registry);
+            FunctionCounter.builder("ratelimit.shaping.rejected", shaper, TrafficShaper::getQueueFullCount)
+                    .tag("reason", "queue-full")
+                    .register(registry);
+            FunctionCounter.builder("ratelimit.shaping.rejected", shaper, TrafficShaper::getWaitTooLongCount)
+                    .tag("reason", "wait-too-long")
+                    .register(registry);
+            FunctionTimer.builder("ratelimit.shaping.wait", shaper,
+                            s -> s.getReleasedCount() + s.getAbandonedCount(), TrafficShaper::getTotalWaitNanos, TimeUnit.NANOSECONDS)
+                    .description("Time requests spent waiting for their permits")
+                    .register(registry);
+            TimeGauge.builder("ratelimit.shaping.wait.max", shaper, TimeUnit.NANOSECONDS, TrafficShaper::getMaxWaitNanos)
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    MeterBinder bruteForceMetrics(FailedLoginService failedLoginService, PreAuthFilter preAuthFilter) {
+        return registry -> {
+            Gauge.builder("bruteforce.tracked", failedLoginService, FailedLoginService::getTrackedUserCount)
+                    .description("Users and IPs with failed logins on record")
+                    .tag("scope", "user")
+                    .register(registry);
+            Gauge.builder("bruteforce.tracked", failedLoginService, FailedLoginService::getTrackedIpCount)
+                    .description("Users and IPs with failed logins on record")
+                    .tag("scope", "ip")
+                    .register(registry);
+            Gauge.builder("bruteforce.tracked", failedLoginService, FailedLoginService::getTrackedSubnetCount)
+                    .description("Users and IPs with failed logins on record")
+                    .tag("scope", "subnet")
+                    .register(registry);
+            FunctionCounter.builder("bruteforce.sketch.promotions", failedLoginService, FailedLoginService::getIpSketchPromotionCount)
+                    .description("IPs moved from the failure sketch to exact tracking")
+                    .register(registry);
+            FunctionCounter.builder("bruteforce.locks", failedLoginService, FailedLoginService::getUserLockCount)
+                    .tag("scope", "user")
+                    .register(registry);
+            FunctionCounter.builder("bruteforce.locks", failedLoginService, FailedLoginService::getIpLockCount)
+                    .tag("scope", "ip")
+                    .register(registry);
+            FunctionCounter.builder("bruteforce.locks", failedLoginService, FailedLoginService::getSubnetLockCount)
+                    .tag("scope", "subnet")
+                    .register(registry);
+            FunctionCounter.builder("bruteforce.unlocks", failedLoginService, FailedLoginService::getUserUnlockCount)
+                    .description("Locks cleared early by a successful login")
+                    .tag("scope", "user")
+                    .register(registry);
+            FunctionCounter.builder("bruteforce.unlocks", failedLoginService, FailedLoginService::getIpUnlockCount)
+                    .description("Locks cleared early by a successful login")
+                    .tag("scope", "ip")
+                    .register(registry);
+            FunctionCounter.builder("bruteforce.blocked.requests", preAuthFilter, PreAuthFilter::getBlockedByUserCount)
+                    .description("Requests rejected because the user or IP is locked")
+                    .tag("reason", "user")
+                    .register(registry);
+            FunctionCounter.builder("bruteforce.blocked.requests", preAuthFilter, PreAuthFilter::getBlockedByIpCount)
+                    .description("Requests rejected because the user or IP is locked")
+                    .tag("reason", "ip")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    MeterBinder authEventMetrics(AuthEventProcessor processor) {
+        return registry -> {
+            FunctionCounter.builder("bruteforce.events", processor, AuthEventProcessor::getQueuedCount)
+                    .description("Login outcomes by where they were applied")
+                    .tag("path", "queued")
+                    .register(registry);
+            FunctionCounter.builder("bruteforce.events", processor, AuthEventProcessor::getInlineCount)
+                    .description("Login outcomes by where they were applied")
+                    .tag("path", "inline")
+                    .register(registry);
+            FunctionCounter.builder("bruteforce.events.coalesced", processor, AuthEventProcessor::getCoalescedCount)
+                    .description("Failures merged into another failure's update")
+                    .register(registry);
+            FunctionTimer.builder("bruteforce.events.lag", processor,
+                            AuthEventProcessor::getAppliedCount, AuthEventProcessor::getTotalLagNanos, TimeUnit.NANOSECONDS)
+                    .description("Time login outcomes spent queued before lockouts saw them")
+                    .register(registry);
+            TimeGauge.builder("bruteforce.events.lag.max", processor, TimeUnit.NANOSECONDS, AuthEventProcessor::getMaxLagNanos)
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    MeterBinder credentialCacheMetrics(VerifiedCredentialCache credentialCache) {
+        return registry -> {
+            Gauge.builder("credentialcache.size", credentialCache, VerifiedCredentialCache::getSize)
+                    .description("Users with recently verified credentials")
+                    .register(registry);
+            FunctionCounter.builder("credentialcache.lookups", credentialCache, VerifiedCredentialCache::getHitCount)
+                    .description("Password checks answered by the credential cache or left to the password encoder")
+                    .tag("result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("credentialcache.lookups", credentialCache, VerifiedCredentialCache::getMissCount)
+                    .description("Password checks answered by the credential cache or left to the password encoder")
+                    .tag("result", "miss")
+                    .register(registry);
+        };
+    }
+}
@@ -1,8 +1,12 @@
 package com.example.ratelimitdemo.config;
 
+import com.example.ratelimitdemo.service.BlockStatus;
+import com.example.ratelimitdemo.service.DecisionEvent;
+import com.example.ratelimitdemo.service.DecisionLog;
 import com.example.ratelimitdemo.service.FailedLoginService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -12,22 +16,37 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.Base64;
+import java.util.concurrent.atomic.LongAdder;
 
 @Component
 public class PreAuthFilter extends OncePerRequestFilter {
     private static final Logger log = LoggerFactory.getLogger(PreAuthFilter.class);
 
     private final FailedLoginService failedLoginService;
+    private final DecisionLog decisionLog;
+    private final ClientIpResolver clientIpResolver;
+
+    private final LongAdder blockedByUser = new LongAdder();
+    private final LongAdder blockedByIp = new LongAdder();
 
     private static final DateTimeFormatter ISO = DateTimeFormatter.ISO_OFFSET_DATE_TIME.withZone(ZoneId.systemDefault());
 
     public PreAuthFilter(FailedLoginService failedLoginService) {
+        this(failedLoginService, DecisionLog.disabled());
+    }
+
+    public PreAuthFilter(FailedLoginService failedLoginService, DecisionLog decisionLog) {
+        this(failedLoginService, decisionLog, new ClientIpResolver());
+    }
+
+    @Autowired
+    public PreAuthFilter(FailedLoginService failedLoginService, DecisionLog decisionLog, ClientIpResolver clientIpResolver) {
         this.failedLoginService = failedLoginService;
+        this.decisionLog = decisionLog;
+        this.clientIpResolver = clientIpResolver;
     }
 
     @Override
@@ -35,21 +54,19 @@ public class PreAuthFilter extends OncePerRequestFilter {
         String auth = request.getHeader("Authorization");
         String ip = resolveIp(request);
 
-        if (StringUtils.hasText(auth) && auth.startsWith("Basic ")) {
-            String base64 = auth.substring(6);
-            try {
-                String decoded = new String(Base64.getDecoder().decode(base64), StandardCharsets.UTF_8);
-                int idx = decoded.indexOf(':');
-                String username = idx > 0 ? decoded.substring(0, idx) : decoded;
-
-                boolean userBlocked = failedLoginService.isUserBlocked(username);
-                boolean ipBlocked = failedLoginService.isIpBlocked(ip);
+        if (StringUtils.hasText(auth) && auth.startsWith(BasicAuthUsername.PREFIX)) {
+            String username = BasicAuthUsername.extract(auth);
+            if (username == null) {
+                log.debug("Failed to decode Basic auth header");
+            } else {
+                BlockStatus status = failedLoginService.blockStatus(username, ip);
 
-                if (userBlocked || ipBlocked) {
-                    int remaining = failedLoginService.remainingAttemptsForUser(username);
+                if (status.isBlocked()) {
+                    boolean userBlocked = status.isUserBlocked();
+                    int remaining = status.getRemainingAttempts();
 
-                    long remainingSeconds = userBlocked ? failedLoginService.getUserLockRemainingSeconds(username) : failedLoginService.getIpLockRemainingSeconds(ip);
-                    long unlockEpoch = userBlocked ? failedLoginService.getUserUnlockEpochMillis(username) : failedLoginService.getIpUnlockEpochMillis(ip);
+                    long remainingSeconds = status.getLockRemainingSeconds();
+                    long unlockEpoch = status.getUnlockEpochMillis();
                     String unlockTimeIso = unlockEpoch > 0 ? ISO.format(Instant.ofEpochMilli(unlockEpoch)) : "";
 
                     response.setHeader("X-Auth-Blocked-User", String.valueOf(username));
@@ -60,23 +77,31 @@ public class PreAuthFilter extends OncePerRequestFilter {
 
                     int retry = (remainingSeconds > 0 && remainingSeconds < Integer.MAX_VALUE) ? (int) remainingSeconds : 60;
                     response.setHeader("Retry-After", String.valueOf(retry));
-                    log.warn("Blocking request for blocked username={} ip={} userBlocked={} ipBlocked={} remainingSeconds={} unlock={}", username, ip, userBlocked, ipBlocked, remainingSeconds, unlockTimeIso);
-                    response.sendError(429, "Too Many Failed Login Attempts");
+                    if (userBlocked) {
+                        blockedByUser.increment();
+                        decisionLog.record(DecisionEvent.BLOCKED_USER, username);
+                    } else {
+                        blockedByIp.increment();
+                        decisionLog.record(DecisionEvent.BLOCKED_IP, ip);
+                    }
+                    RejectionWriter.TOO_MANY_FAILED_LOGINS.write(response);
                     return;
                 }
-            } catch (IllegalArgumentException e) {
-                log.debug("Failed to decode Basic auth header", e);
             }
         }
 
         filterChain.doFilter(request, response);
     }
 
+    public long getBlockedByUserCount() {
+        return blockedByUser.sum();
+    }
+
+    public long getBlockedByIpCount() {
+        return blockedByIp.sum();
+    }
+
     private String resolveIp(HttpServletRequest request) {
-        String xf = request.getHeader("X-Forwarded-For");
-        if (StringUtils.hasText(xf)) {
-            return xf.split(",")[0].trim();
-        }
-        return request.getRemoteAddr();
+        return clientIpResolver.resolve(request);
     }
 }
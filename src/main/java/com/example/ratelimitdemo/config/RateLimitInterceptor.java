@@ -1,23 +1,62 @@
 package com.example.ratelimitdemo.config;
 
+import com.example.ratelimitdemo.service.RateLimitAlgorithm;
+import com.example.ratelimitdemo.service.RateLimitDecision;
+import com.example.ratelimitdemo.service.RateLimitWindow;
 import com.example.ratelimitdemo.service.RateLimiterService;
+import com.example.ratelimitdemo.service.TrafficShaper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.AnnotatedElementUtils;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
 
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class RateLimitInterceptor implements HandlerInterceptor {
 
     private static final Logger log = LoggerFactory.getLogger(RateLimitInterceptor.class);
 
+    // set on a shaped request when it leaves the queue, read back when it is dispatched again
+    static final String SHAPED_DECISION_ATTRIBUTE = RateLimitInterceptor.class.getName() + ".SHAPED_DECISION";
+
+    // the shaper decides when a parked request ends; the servlet timeout only catches a lost release
+    private static final long ASYNC_TIMEOUT_MARGIN_MILLIS = 5_000L;
+
+    // stands in for DemoController's @RateLimited handlers when the interceptor is built outside Spring
+    static final String DEFAULT_ROUTES = "/api/test1; /api/test3";
+
     private final RateLimiterService rateLimiterService;
+    private final TrafficShaper trafficShaper;
+    private final MeterRegistry meterRegistry;
+    private final ClientIpResolver clientIpResolver;
 
     @Value("${ratelimit.short.capacity:5}")
     private int cfgShortCapacity;
@@ -31,62 +70,542 @@ public class RateLimitInterceptor implements HandlerInterceptor {
     @Value("${ratelimit.minute.windowSeconds:60}")
     private int cfgMinuteWindowSeconds;
 
+    @Value("${ratelimit.short.algorithm:${ratelimit.algorithm:token-bucket}}")
+    private RateLimitAlgorithm cfgShortAlgorithm;
+
+    @Value("${ratelimit.minute.algorithm:${ratelimit.algorithm:token-bucket}}")
+    private RateLimitAlgorithm cfgMinuteAlgorithm;
+
+    // tokens a request takes from every window; initialized for interceptors built outside Spring
+    @Value("${ratelimit.cost.default:1}")
+    private int cfgDefaultCost = 1;
+
+    @Value("${ratelimit.costs:}")
+    private String cfgCosts;
+
+    @Value("${ratelimit.routes:}")
+    private String cfgRoutes;
+
+    private volatile Policies policies;
+
     public RateLimitInterceptor(RateLimiterService rateLimiterService) {
+        this(rateLimiterService, null);
+    }
+
+    public RateLimitInterceptor(RateLimiterService rateLimiterService, TrafficShaper trafficShaper) {
+        this(rateLimiterService, trafficShaper, new SimpleMeterRegistry());
+    }
+
+    public RateLimitInterceptor(RateLimiterService rateLimiterService, TrafficShaper trafficShaper, MeterRegistry meterRegistry) {
+        this(rateLimiterService, trafficShaper, meterRegistry, new ClientIpResolver());
+    }
+
+    @Autowired
+    public RateLimitInterceptor(RateLimiterService rateLimiterService, TrafficShaper trafficShaper, MeterRegistry meterRegistry,
+                                ClientIpResolver clientIpResolver) {
         this.rateLimiterService = rateLimiterService;
-        log.info("RateLimitInterceptor created");
+        this.trafficShaper = trafficShaper;
+        this.meterRegistry = meterRegistry;
+        this.clientIpResolver = clientIpResolver;
+        log.info("RateLimitInterceptor created with shaping={}", trafficShaper != null && trafficShaper.isEnabled());
     }
 
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
-        String path = request.getRequestURI();
-        log.debug("preHandle path={}", path);
-        // apply limiter only to test1 and test3
-        if (!"/api/test1".equals(path) && !"/api/test3".equals(path)) {
-            log.trace("Bypassing rate limiter for path={}", path);
-            return true;
+        Policies policies = policies();
+        // an identity lookup for handler methods; path routes only for handlers without @RateLimited
+        Route route = handler instanceof HandlerMethod ? policies.forHandler(((HandlerMethod) handler).getMethod()) : null;
+        if (route == null) {
+            route = policies.routes.match(request.getMethod(), request.getRequestURI());
+            if (route == null) {
+                log.trace("Bypassing rate limiter for handler={}", handler);
+                return true;
+            }
         }
 
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String user = (auth != null && auth.getName() != null) ? auth.getName() : "anonymous";
-        String keyBase = user + ":" + path.substring(path.lastIndexOf('/') + 1);
+        String key = route.key(request, clientIpResolver);
+        int cost = route.cost;
+        Windows windows = route.windows;
+        RouteMeters meters = route.meters;
+        RateLimitDecision decision;
+        Object shaped = request.getAttribute(SHAPED_DECISION_ATTRIBUTE);
+        if (shaped instanceof RateLimitDecision) {
+            // dispatched again after waiting in the shaping queue for the permits it reserved
+            request.removeAttribute(SHAPED_DECISION_ATTRIBUTE);
+            decision = (RateLimitDecision) shaped;
+        } else {
+            long start = System.nanoTime();
+            decision = rateLimiterService.tryConsume(key, windows.windows, cost);
+            meters.decisionTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (!decision.isAllowed() && shape(request, key, windows, cost, decision)) {
+                return false;
+            }
+        }
 
-        double shortRefill = ((double) cfgShortCapacity) / Math.max(1, cfgShortWindowSeconds);
-        double minuteRefill = ((double) cfgMinuteCapacity) / Math.max(1, cfgMinuteWindowSeconds);
+        // headers come from the same snapshot as the decision
+        for (int i = 0; i < decision.getWindowCount(); i++) {
+            response.setIntHeader(windows.limitHeaders[i], decision.getWindow(i).getCapacity());
+            response.setIntHeader(windows.remainingHeaders[i], decision.getRemaining(i));
+            response.setIntHeader(windows.retryAfterHeaders[i], decision.getRetryAfterSeconds(i));
+        }
 
-        String shortKey = keyBase + ":short";
-        String minuteKey = keyBase + ":minute";
+        meters.record(decision, cost);
+        if (!decision.isAllowed()) {
+            int retry = decision.getRetryAfterSeconds();
+            if (retry > 0 && retry < Integer.MAX_VALUE) {
+                response.setIntHeader("Retry-After", retry);
+            }
+            RejectionWriter.TOO_MANY_REQUESTS.write(response);
+            return false;
+        }
 
-        log.debug("Applying composite rate limit for user={} shortKey={} minuteKey={} (short cap={}, shortWindow={}, minute cap={}, minuteWindow={})",
-                user, shortKey, minuteKey, cfgShortCapacity, cfgShortWindowSeconds, cfgMinuteCapacity, cfgMinuteWindowSeconds);
+        return true;
+    }
 
-        boolean allowed = rateLimiterService.tryConsumeComposite(shortKey, cfgShortCapacity, shortRefill,
-                minuteKey, cfgMinuteCapacity, minuteRefill);
+    /**
+     * Parks a denied request in the traffic shaper as an async request, so no container thread waits with it. Its
+     * permits are reserved up front; once they are covered the request is dispatched again and {@link #preHandle}
+     * lets it through with the shaper's decision, without deciding it again. If the async request ends first,
+     * because the client went away or it failed, the slot is abandoned and the release does nothing. Returns false
+     * when the request is to be rejected now.
+     */
+    private boolean shape(HttpServletRequest request, String key, Windows windows, int cost, RateLimitDecision denied) {
+        if (trafficShaper == null || !request.isAsyncSupported()) {
+            return false;
+        }
+        TrafficShaper.Slot slot = trafficShaper.acquire(key, windows.windows, cost, denied);
+        if (slot == null) {
+            return false;
+        }
+        AsyncContext async;
+        try {
+            async = request.startAsync();
+        } catch (IllegalStateException e) {
+            log.warn("Cannot park request for key={}, rejecting instead", key, e);
+            slot.cancel();
+            return false;
+        }
+        async.setTimeout(trafficShaper.getMaxWaitMillis() + ASYNC_TIMEOUT_MARGIN_MILLIS);
+        async.addListener(new AbandonOnEnd(slot));
+        slot.park(decision -> {
+            request.setAttribute(SHAPED_DECISION_ATTRIBUTE, decision);
+            try {
+                async.dispatch();
+            } catch (IllegalStateException e) {
+                // the request ended between the slot's last check and now
+                log.debug("Shaped request for key={} ended before its release", key);
+            }
+        });
+        log.debug("Shaping request for key={} waitNanos={}", key, denied.getWaitNanos());
+        return true;
+    }
 
-        // fetch bucket snapshots for headers
-        RateLimiterService.BucketInfo shortInfo = rateLimiterService.getBucketInfo(shortKey, cfgShortCapacity, shortRefill);
-        RateLimiterService.BucketInfo minuteInfo = rateLimiterService.getBucketInfo(minuteKey, cfgMinuteCapacity, minuteRefill);
+    /**
+     * Resolves the policies of every mapped handler method once the context is up, so requests only read the cache
+     * and a misconfigured {@link RateLimited} fails the startup.
+     */
+    @EventListener
+    public void onContextRefreshed(ContextRefreshedEvent event) {
+        Policies p = policies();
+        int limited = 0;
+        for (RequestMappingHandlerMapping mapping : event.getApplicationContext().getBeansOfType(RequestMappingHandlerMapping.class).values()) {
+            for (HandlerMethod handler : mapping.getHandlerMethods().values()) {
+                if (p.forHandler(handler.getMethod()) != null) {
+                    limited++;
+                }
+            }
+        }
+        log.info("RateLimitInterceptor resolved {} rate-limited handler methods", limited);
+    }
 
-        // set headers on current response if available
-        response.setHeader("X-RateLimit-Short-Limit", String.valueOf(shortInfo.getCapacity()));
-        response.setHeader("X-RateLimit-Short-Remaining", String.valueOf(shortInfo.getRemaining()));
-        response.setHeader("X-RateLimit-Short-Retry-After", String.valueOf(shortInfo.getRetryAfterSeconds()));
+    // Built on first use so the @Value fields are populated; header names and meters are set up once per route.
+    private Policies policies() {
+        Policies p = policies;
+        if (p == null) {
+            Windows defaults = new Windows(List.of(
+                    RateLimitWindow.perWindow("Short", cfgShortCapacity, cfgShortWindowSeconds, algorithm(cfgShortAlgorithm)),
+                    RateLimitWindow.perWindow("Minute", cfgMinuteCapacity, cfgMinuteWindowSeconds, algorithm(cfgMinuteAlgorithm))));
+            Map<String, Integer> costs = parseCosts(cfgCosts);
+            RouteMatcher<Route> routes = parseRoutes(cfgRoutes != null ? cfgRoutes : DEFAULT_ROUTES, defaults, costs, cfgDefaultCost, meterRegistry);
+            log.info("RateLimitInterceptor compiled {} routes", routes.size());
+            p = new Policies(routes, defaults, costs, cfgDefaultCost, meterRegistry);
+            policies = p;
+        }
+        return p;
+    }
 
-        response.setHeader("X-RateLimit-Minute-Limit", String.valueOf(minuteInfo.getCapacity()));
-        response.setHeader("X-RateLimit-Minute-Remaining", String.valueOf(minuteInfo.getRemaining()));
-        response.setHeader("X-RateLimit-Minute-Retry-After", String.valueOf(minuteInfo.getRetryAfterSeconds()));
+    // unset when the interceptor is built outside Spring
+    private static RateLimitAlgorithm algorithm(RateLimitAlgorithm configured) {
+        return configured != null ? configured : RateLimitAlgorithm.TOKEN_BUCKET;
+    }
 
-        if (!allowed) {
-            int retry = Math.max(shortInfo.getRetryAfterSeconds(), minuteInfo.getRetryAfterSeconds());
-            if (retry > 0 && retry < Integer.MAX_VALUE) {
-                response.setHeader("Retry-After", String.valueOf(retry));
+    /**
+     * Parses {@code ratelimit.costs}, comma separated {@code path=cost} pairs such as {@code /api/test3=5}.
+     */
+    static Map<String, Integer> parseCosts(String costs) {
+        Map<String, Integer> parsed = new HashMap<>();
+        if (costs == null || costs.isBlank()) {
+            return parsed;
+        }
+        for (String entry : costs.split(",")) {
+            int eq = entry.lastIndexOf('=');
+            String path = eq > 0 ? entry.substring(0, eq).trim() : "";
+            int cost;
+            try {
+                cost = Integer.parseInt(entry.substring(eq + 1).trim());
+            } catch (NumberFormatException e) {
+                cost = -1;
             }
-            log.warn("Blocking request for user={} path={} shortRemaining={} minuteRemaining={} retryAfter={}",
-                    user, path, shortInfo.getRemaining(), minuteInfo.getRemaining(), retry);
-            response.sendError(429, "Too Many Requests");
-            return false;
+            if (path.isEmpty() || cost < 0) {
+                throw new IllegalArgumentException("ratelimit.costs entries must be path=cost with cost >= 0: '" + entry.trim() + "'");
+            }
+            parsed.put(path, cost);
         }
+        return parsed;
+    }
 
-        log.debug("Request allowed for user={} path={} shortRemaining={} minuteRemaining={}", user, path, shortInfo.getRemaining(), minuteInfo.getRemaining());
-        return true;
+    /**
+     * Parses {@code ratelimit.routes}, semicolon separated route policies such as
+     * {@code GET,POST /api/orders/* id=orders key=user+ip cost=2 windows=Short:5/5,Minute:100/60/gcra}: optional
+     * methods, a pattern for {@link RouteMatcher}, then options. {@code id} names the route in limiter keys and
+     * defaults to the pattern's last literal segment, so routes sharing an id share buckets; {@code key} is
+     * {@code user} (default), {@code ip} or {@code user+ip}; {@code cost} defaults to the pattern's
+     * {@code ratelimit.costs} entry, then to {@code defaultCost}; {@code windows} lists
+     * {@code name:capacity/windowSeconds[/algorithm]} and defaults to the short and minute windows.
+     */
+    static RouteMatcher<Route> parseRoutes(String routes, Windows defaults, Map<String, Integer> costs, int defaultCost,
+                                           MeterRegistry registry) {
+        RouteMatcher<Route> matcher = new RouteMatcher<>();
+        if (routes == null || routes.isBlank()) {
+            return matcher;
+        }
+        for (String entry : routes.split(";")) {
+            String[] tokens = entry.trim().split("\\s+");
+            if (tokens[0].isEmpty()) {
+                continue;
+            }
+            int t = 0;
+            String[] methods = null;
+            if (!tokens[0].startsWith("/")) {
+                methods = tokens[t++].toUpperCase(Locale.ROOT).split(",");
+            }
+            if (t == tokens.length) {
+                throw new IllegalArgumentException("ratelimit.routes entry has no pattern: '" + entry.trim() + "'");
+            }
+            String pattern = tokens[t++];
+            String source = "ratelimit.routes entry '" + entry.trim() + "'";
+            String id = defaultId(pattern);
+            KeyBy keyBy = KeyBy.USER;
+            Integer cost = costs.get(pattern);
+            Windows windows = defaults;
+            for (; t < tokens.length; t++) {
+                int eq = tokens[t].indexOf('=');
+                String name = eq > 0 ? tokens[t].substring(0, eq) : "";
+                String value = tokens[t].substring(eq + 1);
+                switch (name) {
+                    case "id":
+                        id = value;
+                        break;
+                    case "key":
+                        keyBy = KeyBy.parse(value, source);
+                        break;
+                    case "cost":
+                        cost = parseCount(value, "cost", source);
+                        break;
+                    case "windows":
+                        windows = new Windows(parseWindows(value, source));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("option must be id, key, cost or windows: '"
+                                + tokens[t] + "' in " + source);
+                }
+            }
+            if (id.isEmpty()) {
+                throw new IllegalArgumentException("route needs an id: " + source);
+            }
+            Route route = new Route(id, keyBy, cost != null ? cost : defaultCost, windows,
+                    new RouteMeters(registry, pattern, windows.windows));
+            matcher.add(pattern, methods, route);
+        }
+        return matcher;
+    }
+
+    // the last literal segment, e.g. test1 for /api/test1 and orders for /api/orders/**
+    private static String defaultId(String pattern) {
+        String[] segments = pattern.split("/");
+        for (int i = segments.length - 1; i >= 0; i--) {
+            if (!segments[i].isEmpty() && segments[i].indexOf('*') < 0) {
+                return segments[i];
+            }
+        }
+        return "";
+    }
+
+    private static List<RateLimitWindow> parseWindows(String windows, String source) {
+        List<RateLimitWindow> parsed = new ArrayList<>();
+        for (String window : windows.split(",")) {
+            int colon = window.indexOf(':');
+            String[] parts = window.substring(colon + 1).split("/");
+            if (colon <= 0 || parts.length < 2 || parts.length > 3) {
+                throw new IllegalArgumentException("windows must be name:capacity/windowSeconds[/algorithm]: '"
+                        + window + "' in " + source);
+            }
+            RateLimitAlgorithm algorithm = RateLimitAlgorithm.TOKEN_BUCKET;
+            if (parts.length == 3) {
+                try {
+                    algorithm = RateLimitAlgorithm.valueOf(parts[2].toUpperCase(Locale.ROOT).replace('-', '_'));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("window has an unknown algorithm: '"
+                            + window + "' in " + source);
+                }
+            }
+            parsed.add(RateLimitWindow.perWindow(window.substring(0, colon), parseCount(parts[0], "capacity", source),
+                    parseCount(parts[1], "windowSeconds", source), algorithm));
+        }
+        return List.copyOf(parsed);
+    }
+
+    private static int parseCount(String value, String name, String source) {
+        int count;
+        try {
+            count = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            count = -1;
+        }
+        if (count < 0) {
+            throw new IllegalArgumentException(name + " must be an integer >= 0: '" + value
+                    + "' in " + source);
+        }
+        return count;
+    }
+
+    /**
+     * What a route's limiter keys are built from. IP keys use the client address as {@link ClientIpResolver} finds
+     * it, the same one the lockouts and pre-authentication limits see.
+     */
+    private enum KeyBy {
+        USER, IP, USER_IP;
+
+        static KeyBy parse(String value, String source) {
+            switch (value) {
+                case "user": return USER;
+                case "ip": return IP;
+                case "user+ip": return USER_IP;
+                default:
+                    throw new IllegalArgumentException("key must be user, ip or user+ip: '"
+                            + value + "' in " + source);
+            }
+        }
+    }
+
+    /**
+     * The compiled path routes and the policies of the handler methods resolved so far.
+     */
+    private static final class Policies {
+        // cached for handler methods without @RateLimited
+        private static final Route NONE = new Route("", KeyBy.USER, 0, null, null);
+
+        final RouteMatcher<Route> routes;
+        private final Windows defaults;
+        private final Map<String, Integer> costs;
+        private final int defaultCost;
+        private final MeterRegistry registry;
+        // Copy-on-write and keyed by Method identity: handler methods are few and resolved at startup, so requests
+        // only read. The handler mapping hands out a new HandlerMethod per request, but the same Method.
+        private volatile Map<Method, Route> handlers = new IdentityHashMap<>();
+
+        Policies(RouteMatcher<Route> routes, Windows defaults, Map<String, Integer> costs, int defaultCost, MeterRegistry registry) {
+            this.routes = routes;
+            this.defaults = defaults;
+            this.costs = costs;
+            this.defaultCost = defaultCost;
+            this.registry = registry;
+        }
+
+        /**
+         * Returns the policy of a {@link RateLimited} handler method, or null.
+         */
+        Route forHandler(Method method) {
+            Route route = handlers.get(method);
+            if (route == null) {
+                route = resolve(method);
+            }
+            return route != NONE ? route : null;
+        }
+
+        private synchronized Route resolve(Method method) {
+            Route route = handlers.get(method);
+            if (route == null) {
+                route = compile(method);
+                Map<Method, Route> copy = new IdentityHashMap<>(handlers);
+                copy.put(method, route);
+                handlers = copy;
+            }
+            return route;
+        }
+
+        private Route compile(Method method) {
+            RateLimited limited = AnnotatedElementUtils.findMergedAnnotation(method, RateLimited.class);
+            if (limited == null) {
+                limited = AnnotatedElementUtils.findMergedAnnotation(method.getDeclaringClass(), RateLimited.class);
+            }
+            if (limited == null) {
+                return NONE;
+            }
+            String source = "@RateLimited on " + method.getDeclaringClass().getSimpleName() + "." + method.getName();
+            String endpoint = endpoint(method);
+            Integer cost = limited.cost() >= 0 ? Integer.valueOf(limited.cost()) : costs.get(endpoint);
+            Windows windows = limited.windows().isEmpty() ? defaults : new Windows(parseWindows(limited.windows(), source));
+            String id = limited.id().isEmpty() ? method.getName() : limited.id();
+            return new Route(id, KeyBy.parse(limited.key(), source), cost != null ? cost : defaultCost, windows,
+                    new RouteMeters(registry, endpoint, windows.windows));
+        }
+
+        // the mapped path, e.g. /api/test1, which tags the meters and looks up ratelimit.costs
+        private static String endpoint(Method method) {
+            String endpoint = firstPath(AnnotatedElementUtils.findMergedAnnotation(method.getDeclaringClass(), RequestMapping.class))
+                    + firstPath(AnnotatedElementUtils.findMergedAnnotation(method, RequestMapping.class));
+            return endpoint.isEmpty() ? "/" : endpoint;
+        }
+
+        private static String firstPath(RequestMapping mapping) {
+            return mapping != null && mapping.path().length > 0 ? mapping.path()[0] : "";
+        }
+    }
+
+    /**
+     * A compiled route policy: everything {@link #preHandle} needs once the handler or path has matched.
+     */
+    static final class Route {
+        final String id;
+        final KeyBy keyBy;
+        final int cost;
+        final Windows windows;
+        final RouteMeters meters;
+
+        Route(String id, KeyBy keyBy, int cost, Windows windows, RouteMeters meters) {
+            this.id = id;
+            this.keyBy = keyBy;
+            this.cost = cost;
+            this.windows = windows;
+            this.meters = meters;
+        }
+
+        String key(HttpServletRequest request, ClientIpResolver clientIpResolver) {
+            switch (keyBy) {
+                case IP:
+                    return "@" + clientIpResolver.resolve(request) + ":" + id;
+                case USER_IP:
+                    return user() + "@" + clientIpResolver.resolve(request) + ":" + id;
+                default:
+                    return user() + ":" + id;
+            }
+        }
+
+        private static String user() {
+            Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+            return (auth != null && auth.getName() != null) ? auth.getName() : "anonymous";
+        }
+    }
+
+    static final class Windows {
+        final List<RateLimitWindow> windows;
+        final String[] limitHeaders;
+        final String[] remainingHeaders;
+        final String[] retryAfterHeaders;
+
+        Windows(List<RateLimitWindow> windows) {
+            this.windows = windows;
+            this.limitHeaders = new String[windows.size()];
+            this.remainingHeaders = new String[windows.size()];
+            this.retryAfterHeaders = new String[windows.size()];
+            for (int i = 0; i < windows.size(); i++) {
+                String prefix = "X-RateLimit-" + windows.get(i).getName();
+                limitHeaders[i] = prefix + "-Limit";
+                remainingHeaders[i] = prefix + "-Remaining";
+                retryAfterHeaders[i] = prefix + "-Retry-After";
+            }
+        }
+    }
+
+    /**
+     * Meters of one limited route, registered once so recording a decision is a field read and an add.
+     */
+    static final class RouteMeters {
+        final Counter allowed;
+        final Counter denied;
+        // by window, counting the windows that lacked tokens when a request was denied
+        final Counter[] windowDenials;
+        final Timer decisionTime;
+
+        RouteMeters(MeterRegistry registry, String path, List<RateLimitWindow> windows) {
+            allowed = Counter.builder("ratelimit.requests")
+                    .description("Rate-limited requests by outcome")
+                    .tags("endpoint", path, "outcome", "allowed")
+                    .register(registry);
+            denied = Counter.builder("ratelimit.requests")
+                    .description("Rate-limited requests by outcome")
+                    .tags("endpoint", path, "outcome", "denied")
+                    .register(registry);
+            windowDenials = new Counter[windows.size()];
+            for (int i = 0; i < windowDenials.length; i++) {
+                windowDenials[i] = Counter.builder("ratelimit.window.denials")
+                        .description("Denied requests by the window that lacked tokens")
+                        .tags("endpoint", path, "window", windows.get(i).getName())
+                        .register(registry);
+            }
+            decisionTime = Timer.builder("ratelimit.decision")
+                    .description("Time to take the rate-limit decision")
+                    .tag("endpoint", path)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofNanos(100))
+                    .maximumExpectedValue(Duration.ofMillis(10))
+                    .register(registry);
+        }
+
+        void record(RateLimitDecision decision, int cost) {
+            if (decision.isAllowed()) {
+                allowed.increment();
+                return;
+            }
+            denied.increment();
+            for (int i = 0; i < windowDenials.length; i++) {
+                if (decision.getRemaining(i) < cost) {
+                    windowDenials[i].increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Abandons a parked request's slot once its async request ends without the shaper, so a late release does not
+     * dispatch a finished request. After a normal release it fires too, when abandoning no longer matters.
+     */
+    static final class AbandonOnEnd implements AsyncListener {
+        private final TrafficShaper.Slot slot;
+
+        AbandonOnEnd(TrafficShaper.Slot slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            slot.abandon();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            slot.abandon();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            slot.abandon();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // a parked request is not started again
+        }
     }
 }
@@ -0,0 +1,33 @@
+package com.example.ratelimitdemo.config;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Rate-limits a handler method, or every handler method of a controller, through {@link RateLimitInterceptor}. The
+ * attributes take the same values as the options of a {@code ratelimit.routes} entry; a method's annotation wins
+ * over its class's and over any route matching the request path.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface RateLimited {
+
+    /** Names the handler in limiter keys; defaults to the method name. Handlers sharing an id share buckets. */
+    String id() default "";
+
+    /** What the limiter keys are built from: {@code user}, {@code ip} or {@code user+ip}. */
+    String key() default "user";
+
+    /**
+     * Tokens a request takes from every window; negative for the endpoint's {@code ratelimit.costs} entry, then
+     * {@code ratelimit.cost.default}.
+     */
+    int cost() default -1;
+
+    /** Comma separated {@code name:capacity/windowSeconds[/algorithm]}; empty for the short and minute windows. */
+    String windows() default "";
+}
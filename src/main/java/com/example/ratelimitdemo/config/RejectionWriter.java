@@ -0,0 +1,34 @@
+package com.example.ratelimitdemo.config;
+
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Answers a rejected request with a fixed 429 response written and committed in place. Unlike
+ * {@link HttpServletResponse#sendError}, this does not dispatch to {@code /error}: no second pass through the
+ * security chain (which, for a request rejected before authentication, turned the 429 into a 401) and no error
+ * body rendered per request. Headers such as {@code Retry-After} must be set before {@link #write}.
+ */
+final class RejectionWriter {
+
+    static final RejectionWriter TOO_MANY_REQUESTS = new RejectionWriter("Too Many Requests");
+    static final RejectionWriter TOO_MANY_FAILED_LOGINS = new RejectionWriter("Too Many Failed Login Attempts");
+
+    private static final int STATUS = 429;
+    private static final String CONTENT_TYPE = "application/json";
+
+    private final byte[] body;
+
+    private RejectionWriter(String message) {
+        this.body = ("{\"status\":" + STATUS + ",\"error\":\"" + message + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    void write(HttpServletResponse response) throws IOException {
+        response.setStatus(STATUS);
+        response.setContentType(CONTENT_TYPE);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+        response.flushBuffer();
+    }
+}
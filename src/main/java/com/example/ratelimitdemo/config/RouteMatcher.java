@@ -0,0 +1,232 @@
+package com.example.ratelimitdemo.config;
+
+/**
+ * Maps an HTTP method and request path to the value of the route that matches it, using a trie with one node per
+ * path segment. Patterns are absolute paths whose segments are literals, {@code *} for exactly one segment, or a
+ * final {@code **} for any number of remaining segments, including none.
+ * <p>
+ * Literal children are kept in an open-addressed table keyed by the segment's {@link String#hashCode}, which
+ * matching computes over the request path in place, so a lookup costs one pass over the path and allocates
+ * nothing, however many routes there are. A literal segment wins over {@code *}, which wins over {@code **}; when
+ * the more specific branch matches no route further down, matching backtracks to the next one. A route without
+ * methods applies to every method a more specific route of the same pattern does not name.
+ * <p>
+ * Built once by {@link #add} and read-only afterwards; publish it safely, e.g. through a volatile field.
+ */
+final class RouteMatcher<T> {
+
+    static final String[] METHODS = {"GET", "HEAD", "POST", "PUT", "PATCH", "DELETE", "OPTIONS", "TRACE"};
+
+    // index 0 holds the value for any method
+    private static final int SLOTS = METHODS.length + 1;
+
+    private final Node<T> root = new Node<>();
+    private int size;
+
+    /**
+     * Adds a route for {@code methods} (none for every method). Throws {@link IllegalArgumentException} for a
+     * malformed pattern, an unknown method or a pattern and method another route already covers.
+     */
+    void add(String pattern, String[] methods, T value) {
+        if (pattern == null || !pattern.startsWith("/")) {
+            throw new IllegalArgumentException("route pattern must start with '/': " + pattern);
+        }
+        String[] segments = pattern.substring(1).split("/", -1);
+        Node<T> node = root;
+        boolean rest = false;
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if ("**".equals(segment)) {
+                if (i != segments.length - 1) {
+                    throw new IllegalArgumentException("'**' must be the last segment of a route pattern: " + pattern);
+                }
+                rest = true;
+            } else if ("*".equals(segment)) {
+                if (node.any == null) {
+                    node.any = new Node<>();
+                }
+                node = node.any;
+            } else if (segment.indexOf('*') >= 0) {
+                throw new IllegalArgumentException("'*' must be a whole segment of a route pattern: " + pattern);
+            } else {
+                node = node.childOrAdd(segment);
+            }
+        }
+        Object[] slots = rest ? node.restSlots() : node.slots();
+        if (methods == null || methods.length == 0) {
+            put(slots, 0, pattern, "*", value);
+        } else {
+            for (String method : methods) {
+                int index = methodIndex(method);
+                if (index < 0) {
+                    throw new IllegalArgumentException("unknown HTTP method '" + method + "' in route " + pattern);
+                }
+                put(slots, index, pattern, method, value);
+            }
+        }
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the value of the most specific route matching {@code method} and {@code path}, or null.
+     */
+    T match(String method, String path) {
+        if (path == null || path.isEmpty() || path.charAt(0) != '/') {
+            return null;
+        }
+        return match(root, path, 0, methodIndex(method));
+    }
+
+    private T match(Node<T> node, String path, int from, int method) {
+        if (from == path.length()) {
+            T value = node.value(node.slots, method);
+            return value != null ? value : node.value(node.restSlots, method);
+        }
+        int start = from + 1;
+        int end = path.indexOf('/', start);
+        if (end < 0) {
+            end = path.length();
+        }
+        Node<T> literal = node.child(path, start, end);
+        if (literal != null) {
+            T value = match(literal, path, end, method);
+            if (value != null) {
+                return value;
+            }
+        }
+        if (node.any != null) {
+            T value = match(node.any, path, end, method);
+            if (value != null) {
+                return value;
+            }
+        }
+        return node.value(node.restSlots, method);
+    }
+
+    // 1-based index into the method slots, or -1 for a method without a slot
+    static int methodIndex(String method) {
+        if (method == null) {
+            return -1;
+        }
+        switch (method) {
+            case "GET": return 1;
+            case "HEAD": return 2;
+            case "POST": return 3;
+            case "PUT": return 4;
+            case "PATCH": return 5;
+            case "DELETE": return 6;
+            case "OPTIONS": return 7;
+            case "TRACE": return 8;
+            default: return -1;
+        }
+    }
+
+    private static void put(Object[] slots, int index, String pattern, String method, Object value) {
+        if (slots[index] != null) {
+            throw new IllegalArgumentException("duplicate route for " + method + " " + pattern);
+        }
+        slots[index] = value;
+    }
+
+    // String.hashCode over path[start, end)
+    private static int hash(String path, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + path.charAt(i);
+        }
+        return h;
+    }
+
+    private static int spread(int h) {
+        return (h ^ (h >>> 16)) * 0x9E3779B1;
+    }
+
+    private static final class Node<T> {
+        String[] segments = new String[2];
+        @SuppressWarnings("unchecked")
+        Node<T>[] children = new Node[2];
+        int childCount;
+        Node<T> any;
+        Object[] slots;
+        Object[] restSlots;
+
+        Node<T> child(String path, int start, int end) {
+            if (childCount == 0) {
+                return null;
+            }
+            int length = end - start;
+            int mask = segments.length - 1;
+            for (int i = spread(hash(path, start, end)) & mask; ; i = (i + 1) & mask) {
+                String segment = segments[i];
+                if (segment == null) {
+                    return null;
+                }
+                if (segment.length() == length && path.regionMatches(start, segment, 0, length)) {
+                    return children[i];
+                }
+            }
+        }
+
+        Node<T> childOrAdd(String segment) {
+            Node<T> existing = child(segment, 0, segment.length());
+            if (existing != null) {
+                return existing;
+            }
+            // keep the table at most half full so probes stay short and always reach an empty slot
+            if ((childCount + 1) * 2 > segments.length) {
+                String[] oldSegments = segments;
+                Node<T>[] oldChildren = children;
+                segments = new String[oldSegments.length * 2];
+                @SuppressWarnings("unchecked")
+                Node<T>[] grown = new Node[oldSegments.length * 2];
+                children = grown;
+                for (int i = 0; i < oldSegments.length; i++) {
+                    if (oldSegments[i] != null) {
+                        insert(oldSegments[i], oldChildren[i]);
+                    }
+                }
+            }
+            Node<T> node = new Node<>();
+            insert(segment, node);
+            childCount++;
+            return node;
+        }
+
+        private void insert(String segment, Node<T> node) {
+            int mask = segments.length - 1;
+            int i = spread(segment.hashCode()) & mask;
+            while (segments[i] != null) {
+                i = (i + 1) & mask;
+            }
+            segments[i] = segment;
+            children[i] = node;
+        }
+
+        Object[] slots() {
+            if (slots == null) {
+                slots = new Object[SLOTS];
+            }
+            return slots;
+        }
+
+        Object[] restSlots() {
+            if (restSlots == null) {
+                restSlots = new Object[SLOTS];
+            }
+            return restSlots;
+        }
+
+        @SuppressWarnings("unchecked")
+        T value(Object[] values, int method) {
+            if (values == null) {
+                return null;
+            }
+            Object value = method > 0 ? values[method] : null;
+            return (T) (value != null ? value : values[0]);
+        }
+    }
+}
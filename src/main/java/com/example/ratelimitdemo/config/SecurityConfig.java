@@ -1,9 +1,14 @@
 package com.example.ratelimitdemo.config;
 
+import com.example.ratelimitdemo.service.FailedLoginService;
+import com.example.ratelimitdemo.service.VerifiedCredentialCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.AuthenticationEventPublisher;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.ProviderManager;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.core.userdetails.User;
@@ -47,9 +52,24 @@ public class SecurityConfig {
         return new BCryptPasswordEncoder();
     }
 
+    // HTTP Basic authenticates with this manager alone: a bad password is checked once, not again by a parent
+    // manager, and the events that AuthenticationEventListener counts are still published
+    private static AuthenticationManager authenticationManager(UserDetailsService users, PasswordEncoder passwordEncoder,
+                                                               VerifiedCredentialCache credentialCache, FailedLoginService failedLoginService,
+                                                               AuthenticationEventPublisher eventPublisher) {
+        ProviderManager manager = new ProviderManager(
+                new CachingAuthenticationProvider(users, passwordEncoder, credentialCache, failedLoginService));
+        manager.setAuthenticationEventPublisher(eventPublisher);
+        return manager;
+    }
+
     @Bean
-    SecurityFilterChain securityFilterChain(HttpSecurity http, PreAuthFilter preAuthFilter) throws Exception {
+    SecurityFilterChain securityFilterChain(HttpSecurity http, PreAuthFilter preAuthFilter, IpRateLimitFilter ipRateLimitFilter,
+                                            UserDetailsService users, PasswordEncoder passwordEncoder,
+                                            VerifiedCredentialCache credentialCache, FailedLoginService failedLoginService,
+                                            AuthenticationEventPublisher eventPublisher) throws Exception {
         http
+                .authenticationManager(authenticationManager(users, passwordEncoder, credentialCache, failedLoginService, eventPublisher))
                 .csrf(csrf -> csrf.disable())
                 .authorizeHttpRequests(auth -> auth
                         .anyRequest().authenticated()
@@ -57,7 +77,9 @@ public class SecurityConfig {
                 .httpBasic(withDefaults());
 
         http.addFilterBefore(preAuthFilter, BasicAuthenticationFilter.class);
-        log.info("SecurityFilterChain configured with PreAuthFilter");
+        // sheds floods per address before PreAuthFilter decodes credentials
+        http.addFilterBefore(ipRateLimitFilter, PreAuthFilter.class);
+        log.info("SecurityFilterChain configured with IpRateLimitFilter and PreAuthFilter");
         return http.build();
     }
 }
@@ -1,5 +1,6 @@
 package com.example.ratelimitdemo.controller;
 
+import com.example.ratelimitdemo.config.RateLimited;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.ResponseEntity;
@@ -14,6 +15,7 @@ public class DemoController {
 
     private static final Logger log = LoggerFactory.getLogger(DemoController.class);
 
+    @RateLimited
     @GetMapping("/test1")
     public ResponseEntity<String> test1(Authentication authentication) {
         String user = authentication != null ? authentication.getName() : "anonymous";
@@ -32,6 +34,7 @@ public class DemoController {
         return resp;
     }
 
+    @RateLimited
     @GetMapping("/test3")
     public ResponseEntity<String> test3(Authentication authentication) {
         String user = authentication != null ? authentication.getName() : "anonymous";
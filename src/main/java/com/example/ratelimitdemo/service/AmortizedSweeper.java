@@ -0,0 +1,108 @@
+package com.example.ratelimitdemo.service;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Expires entries of a concurrent map a few at a time instead of scanning the whole map.
+ * <p>
+ * A cursor over the map survives between calls; each sweep advances it by at most {@code batchSize} entries and
+ * restarts it once it reaches the end. Callers check {@link #shouldSweep} on their hot path, which is true on
+ * average once every {@code sweepEvery} calls without touching any shared counter, and then call {@link #sweep}.
+ */
+final class AmortizedSweeper<K, V> {
+
+    private final ConcurrentMap<K, V> map;
+    private final int batchSize;
+    private final int sweepEvery;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // guarded by lock
+    private Iterator<Map.Entry<K, V>> cursor;
+
+    AmortizedSweeper(ConcurrentMap<K, V> map, int batchSize, int sweepEvery) {
+        this.map = map;
+        this.batchSize = batchSize;
+        this.sweepEvery = sweepEvery;
+    }
+
+    boolean shouldSweep() {
+        return ThreadLocalRandom.current().nextInt(sweepEvery) == 0;
+    }
+
+    /**
+     * Removes expired entries among the next {@code batchSize} entries under the cursor. Returns immediately when
+     * another thread is already sweeping.
+     *
+     * @return number of entries removed
+     */
+    int sweep(Predicate<? super V> expired) {
+        if (!lock.tryLock()) {
+            return 0;
+        }
+        try {
+            int removed = 0;
+            boolean restarted = false;
+            for (int i = 0; i < batchSize; i++) {
+                if (cursor == null || !cursor.hasNext()) {
+                    if (restarted) break; // the whole map fit in this batch
+                    cursor = map.entrySet().iterator();
+                    restarted = true;
+                    if (!cursor.hasNext()) break;
+                }
+                Map.Entry<K, V> entry = cursor.next();
+                V value = entry.getValue();
+                // checked again under the key's lock, for values updated in place since the test
+                if (expired.test(value) && map.computeIfPresent(entry.getKey(), (k, v) -> v == value && expired.test(v) ? null : v) == null) {
+                    removed++;
+                }
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Approximate LRU: the entry with the smallest access time among the next {@code samples} entries under the
+     * cursor, or null when the map is empty. Callers that share a capacity between maps compare the samples of
+     * each and {@link #remove} the oldest.
+     */
+    Map.Entry<K, V> oldestSample(ToLongFunction<? super V> lastAccess, int samples) {
+        lock.lock();
+        try {
+            Map.Entry<K, V> oldest = null;
+            long oldestAccess = Long.MAX_VALUE;
+            boolean restarted = false;
+            for (int i = 0; i < samples; i++) {
+                if (cursor == null || !cursor.hasNext()) {
+                    if (restarted) break;
+                    cursor = map.entrySet().iterator();
+                    restarted = true;
+                    if (!cursor.hasNext()) break;
+                }
+                Map.Entry<K, V> entry = cursor.next();
+                long access = lastAccess.applyAsLong(entry.getValue());
+                if (access < oldestAccess) {
+                    oldest = entry;
+                    oldestAccess = access;
+                }
+            }
+            return oldest;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a sampled entry unless it was replaced or removed since.
+     */
+    boolean remove(Map.Entry<K, V> entry) {
+        return entry != null && map.remove(entry.getKey(), entry.getValue());
+    }
+}
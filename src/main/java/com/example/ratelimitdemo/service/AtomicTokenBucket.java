@@ -0,0 +1,194 @@
+package com.example.ratelimitdemo.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Lock-free token bucket. The whole bucket state lives in one {@code long} that is replaced with a CAS loop:
+ * <pre>
+ *   bits 63..24  last refill time, millis since the bucket was created (40 bits, ~34 years)
+ *   bits 23..0   tokens in fixed point; the fraction gets every bit the capacity does not need
+ * </pre>
+ * Capacities up to {@link #MAX_CAPACITY} keep at least 8 fractional bits. When a refill adds less than one
+ * fixed-point unit the timestamp is left alone, so slow buckets polled every millisecond still accumulate.
+ * The access time used for eviction is tracked separately since rejected attempts never write the state.
+ * A reservation the tokens do not cover leaves no tokens and a refill time in the future, from which the bucket
+ * refills once the reservation is paid off.
+ */
+final class AtomicTokenBucket implements Bucket {
+
+    static final int MAX_CAPACITY = (1 << 16) - 1;
+
+    private static final int TOKEN_BITS = 24;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    private static final long MAX_TIMESTAMP = (1L << (Long.SIZE - TOKEN_BITS)) - 1;
+
+    private static final VarHandle STATE;
+
+    static {
+        try {
+            STATE = MethodHandles.lookup().findVarHandle(AtomicTokenBucket.class, "state", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int fractionBits;
+    private final long capacityUnits;
+    private final double refillUnitsPerMilli;
+    private final MonotonicClock clock;
+    private final long originEpochMilli;
+
+    @SuppressWarnings("unused") // accessed through STATE
+    private volatile long state;
+
+    private volatile long lastAccessEpochMilli;
+
+    AtomicTokenBucket(int capacity, double refillTokensPerSecond, MonotonicClock clock) {
+        if (!supports(capacity)) {
+            throw new IllegalArgumentException("capacity must be between 0 and " + MAX_CAPACITY + ": " + capacity);
+        }
+        this.fractionBits = TOKEN_BITS - (Integer.SIZE - Integer.numberOfLeadingZeros(capacity));
+        this.capacityUnits = ((long) capacity) << fractionBits;
+        this.refillUnitsPerMilli = refillTokensPerSecond * (1L << fractionBits) / 1000.0;
+        this.clock = clock;
+        this.originEpochMilli = clock.currentTimeMillis();
+        this.lastAccessEpochMilli = originEpochMilli;
+        this.state = capacityUnits;
+    }
+
+    static boolean supports(int capacity) {
+        return capacity >= 0 && capacity <= MAX_CAPACITY;
+    }
+
+    @Override
+    public boolean tryConsume(int permits) {
+        if (permits > capacityUnits >> fractionBits) {
+            return false;
+        }
+        long one = ((long) permits) << fractionBits;
+        long now = timestamp(touch());
+        for (;;) {
+            long current = (long) STATE.getVolatile(this);
+            long refilled = refill(current, now);
+            if ((refilled & TOKEN_MASK) < one) {
+                return false;
+            }
+            if (STATE.compareAndSet(this, current, refilled - one)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void addTokens(double amount) {
+        long units = (long) (amount * (1L << fractionBits));
+        long now = timestamp(touch());
+        for (;;) {
+            long current = (long) STATE.getVolatile(this);
+            long refilled = refill(current, now);
+            long tokens = Math.min(capacityUnits, (refilled & TOKEN_MASK) + units);
+            if (STATE.compareAndSet(this, current, (refilled & ~TOKEN_MASK) | tokens)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public double getTokens() {
+        long refilled = refill((long) STATE.getVolatile(this), timestamp(touch()));
+        return (double) (refilled & TOKEN_MASK) / (1L << fractionBits);
+    }
+
+    @Override
+    public long waitNanos(int permits) {
+        long now = timestamp(touch());
+        long millis = waitMillis(refill((long) STATE.getVolatile(this), now), now, ((long) permits) << fractionBits);
+        return millis == Long.MAX_VALUE ? Long.MAX_VALUE : millis * 1_000_000L;
+    }
+
+    @Override
+    public long reserve(int permits) {
+        long one = ((long) permits) << fractionBits;
+        long now = timestamp(touch());
+        for (;;) {
+            long current = (long) STATE.getVolatile(this);
+            long refilled = refill(current, now);
+            long millis = waitMillis(refilled, now, one);
+            long next;
+            if (millis == 0L) {
+                next = refilled - one;
+            } else if (millis != Long.MAX_VALUE && now + millis <= MAX_TIMESTAMP) {
+                next = (now + millis) << TOKEN_BITS;
+            } else {
+                return Long.MAX_VALUE;
+            }
+            if (STATE.compareAndSet(this, current, next)) {
+                return millis * 1_000_000L;
+            }
+        }
+    }
+
+    @Override
+    public long lastAccessEpochMilli() {
+        return lastAccessEpochMilli;
+    }
+
+    @Override
+    public boolean isIdle(long nowEpochMilli, long idleMillis) {
+        if (nowEpochMilli - lastAccessEpochMilli < idleMillis) {
+            return false;
+        }
+        return (refill((long) STATE.getVolatile(this), timestamp(nowEpochMilli)) & TOKEN_MASK) >= capacityUnits;
+    }
+
+    // only write when the millisecond changes so a hot bucket does not store on every call
+    private long touch() {
+        long now = clock.currentTimeMillis();
+        if (lastAccessEpochMilli != now) {
+            lastAccessEpochMilli = now;
+        }
+        return now;
+    }
+
+    private long timestamp(long nowEpochMilli) {
+        long elapsed = nowEpochMilli - originEpochMilli;
+        return Math.max(0L, Math.min(MAX_TIMESTAMP, elapsed));
+    }
+
+    // millis from now until one units are there, counting a refill time still ahead of now
+    private long waitMillis(long refilled, long now, long one) {
+        long tokens = refilled & TOKEN_MASK;
+        if (tokens >= one) {
+            return 0L;
+        }
+        if (one > capacityUnits || refillUnitsPerMilli <= 0) {
+            return Long.MAX_VALUE;
+        }
+        double refillMillis = Math.ceil((one - tokens) / refillUnitsPerMilli);
+        if (refillMillis > MAX_TIMESTAMP) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0L, (refilled >>> TOKEN_BITS) - now) + (long) refillMillis;
+    }
+
+    private long refill(long current, long now) {
+        long last = current >>> TOKEN_BITS;
+        long tokens = current & TOKEN_MASK;
+        long deltaMillis = now - last;
+        if (deltaMillis <= 0) {
+            return current;
+        }
+        long missing = capacityUnits - tokens;
+        double add = deltaMillis * refillUnitsPerMilli;
+        if (add >= missing) {
+            return (now << TOKEN_BITS) | capacityUnits;
+        }
+        long whole = (long) add;
+        if (whole == 0) {
+            // keep the old timestamp so the elapsed time carries over to the next refill
+            return current;
+        }
+        return (now << TOKEN_BITS) | (tokens + whole);
+    }
+}
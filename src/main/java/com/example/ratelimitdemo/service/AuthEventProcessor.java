@@ -0,0 +1,283 @@
+package com.example.ratelimitdemo.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Applies login outcomes to the {@link FailedLoginService} off the request thread. {@link #failed} and
+ * {@link #succeeded} put the outcome into a bounded lock-free ring, as {@link DecisionLog} does; a daemon thread
+ * drains it every {@code maxDelayMillis} and applies the batch, with the failures of one user and address merged
+ * into one update. Outcomes keep their order where it matters: the failures queued before a success are applied
+ * before it.
+ * <p>
+ * A failure becomes visible to lockout checks about {@code maxDelayMillis} after it is queued; the time each
+ * outcome spent queued is kept for the {@code bruteforce.events.lag} meters. Outcomes are never dropped: when the
+ * ring is full the caller applies its own, so a flood of failures slows its senders down rather than slipping
+ * past the lockouts.
+ */
+@Component
+public class AuthEventProcessor implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(AuthEventProcessor.class);
+
+    private final FailedLoginService failedLoginService;
+    private final boolean async;
+    private final long maxDelayNanos;
+    private final MonotonicClock clock;
+
+    // Bounded MPSC ring, as in DecisionLog: slot i is free for the producer at position p when sequences[i] == p,
+    // and holds an outcome for the consumer at position p when sequences[i] == p + 1.
+    private final int mask;
+    private final String[] usernames;
+    private final String[] ips;
+    private final boolean[] successes;
+    private final long[] queuedNanos;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private long head; // drainer only
+
+    // drainer only: failures waiting to be applied, by user and address, in the order first seen
+    private final Map<Key, Pending> pending = new LinkedHashMap<>();
+
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder inline = new LongAdder();
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder lagNanos = new LongAdder();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+
+    private final Thread drainer;
+    private volatile boolean running = true;
+
+    @Autowired
+    public AuthEventProcessor(FailedLoginService failedLoginService,
+                              @Value("${security.bruteforce.events.async:true}") boolean async,
+                              @Value("${security.bruteforce.events.bufferSize:8192}") int bufferSize,
+                              @Value("${security.bruteforce.events.maxDelayMillis:5}") int maxDelayMillis,
+                              MonotonicClock clock) {
+        this(failedLoginService, async, bufferSize, maxDelayMillis, clock, async);
+    }
+
+    AuthEventProcessor(FailedLoginService failedLoginService, boolean async, int bufferSize, int maxDelayMillis,
+                       MonotonicClock clock, boolean startDrainer) {
+        if (bufferSize < 2 || Integer.bitCount(bufferSize) != 1 || maxDelayMillis <= 0) {
+            throw new IllegalArgumentException("auth event processor needs a power-of-two bufferSize >= 2 and maxDelayMillis > 0: bufferSize="
+                    + bufferSize + " maxDelayMillis=" + maxDelayMillis);
+        }
+        this.failedLoginService = failedLoginService;
+        this.async = async;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.clock = clock;
+        int capacity = async ? bufferSize : 2;
+        this.mask = capacity - 1;
+        this.usernames = new String[capacity];
+        this.ips = new String[capacity];
+        this.successes = new boolean[capacity];
+        this.queuedNanos = new long[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        if (startDrainer) {
+            drainer = new Thread(this::run, "auth-event-drainer");
+            drainer.setDaemon(true);
+            drainer.start();
+        } else {
+            drainer = null;
+        }
+        log.info("AuthEventProcessor initialized with async={} bufferSize={} maxDelayMillis={}", async, bufferSize, maxDelayMillis);
+    }
+
+    /**
+     * A processor that applies every outcome on the caller's thread, for listeners built outside Spring.
+     */
+    public static AuthEventProcessor direct(FailedLoginService failedLoginService) {
+        return new AuthEventProcessor(failedLoginService, false, 2, 1, MonotonicClock.system(), false);
+    }
+
+    public void failed(String username, String ip) {
+        if (!async || !offer(username, ip, false)) {
+            inline.increment();
+            failedLoginService.recordFailed(username, ip);
+        }
+    }
+
+    public void succeeded(String username, String ip) {
+        if (!async || !offer(username, ip, true)) {
+            inline.increment();
+            failedLoginService.recordSuccess(username, ip);
+        }
+    }
+
+    public long getQueuedCount() {
+        return queued.sum();
+    }
+
+    /** Outcomes applied on the caller's thread because the processor is synchronous or its ring was full. */
+    public long getInlineCount() {
+        return inline.sum();
+    }
+
+    /** Outcomes applied by the drainer; the lag meters cover these. */
+    public long getAppliedCount() {
+        return applied.sum();
+    }
+
+    /** Failures that were merged into another failure's update instead of taking one of their own. */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    public long getTotalLagNanos() {
+        return lagNanos.sum();
+    }
+
+    public long getMaxLagNanos() {
+        return maxLagNanos.get();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (drainer != null) {
+            LockSupport.unpark(drainer);
+        }
+    }
+
+    private boolean offer(String username, String ip, boolean success) {
+        long position = tail.get();
+        for (;;) {
+            int index = (int) position & mask;
+            long available = sequences.get(index) - position;
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    usernames[index] = username;
+                    ips[index] = ip;
+                    successes[index] = success;
+                    queuedNanos[index] = clock.currentTimeNanos();
+                    sequences.lazySet(index, position + 1);
+                    queued.increment();
+                    return true;
+                }
+                position = tail.get();
+            } else if (available < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(maxDelayNanos);
+            try {
+                drain();
+            } catch (RuntimeException e) {
+                log.error("Failed to apply authentication events", e);
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Applies at most one ring's worth of queued outcomes; returns how many were taken.
+     */
+    int drain() {
+        int drained = 0;
+        while (drained <= mask) {
+            int index = (int) head & mask;
+            if (sequences.get(index) != head + 1) {
+                break;
+            }
+            String username = usernames[index];
+            String ip = ips[index];
+            boolean success = successes[index];
+            long queuedAt = queuedNanos[index];
+            usernames[index] = null;
+            ips[index] = null;
+            sequences.lazySet(index, head + mask + 1);
+            head++;
+            drained++;
+            if (success) {
+                applyPending();
+                failedLoginService.recordSuccess(username, ip);
+                long lag = clock.currentTimeNanos() - queuedAt;
+                recordLag(1, lag, lag);
+            } else {
+                Pending p = pending.computeIfAbsent(new Key(username, ip), k -> new Pending(queuedAt));
+                p.failures++;
+                p.queuedNanosSum += queuedAt;
+            }
+        }
+        applyPending();
+        if (drained > 0 && log.isDebugEnabled()) {
+            log.debug("Applied {} authentication events, max lag {} us", drained, TimeUnit.NANOSECONDS.toMicros(maxLagNanos.get()));
+        }
+        return drained;
+    }
+
+    // an update that throws is not retried: it is removed before it is applied
+    private void applyPending() {
+        for (Iterator<Map.Entry<Key, Pending>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Key, Pending> e = it.next();
+            it.remove();
+            Key key = e.getKey();
+            Pending p = e.getValue();
+            failedLoginService.recordFailed(key.username, key.ip, p.failures);
+            long now = clock.currentTimeNanos();
+            recordLag(p.failures, p.failures * now - p.queuedNanosSum, now - p.firstQueuedNanos);
+            coalesced.add(p.failures - 1);
+        }
+    }
+
+    private void recordLag(int events, long totalNanos, long oldestNanos) {
+        applied.add(events);
+        lagNanos.add(totalNanos);
+        maxLagNanos.accumulateAndGet(oldestNanos, Math::max);
+    }
+
+    private static final class Key {
+        final String username;
+        final String ip;
+
+        Key(String username, String ip) {
+            this.username = username;
+            this.ip = ip;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return Objects.equals(username, other.username) && Objects.equals(ip, other.ip);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(username) * 31 + Objects.hashCode(ip);
+        }
+    }
+
+    private static final class Pending {
+        final long firstQueuedNanos;
+        long queuedNanosSum;
+        int failures;
+
+        Pending(long firstQueuedNanos) {
+            this.firstQueuedNanos = firstQueuedNanos;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.ratelimitdemo.service;
+
+/**
+ * Lockout state of a user and an address taken at one instant by {@link FailedLoginService#blockStatus}. When both
+ * are locked, the lock remaining and unlock time are the user's.
+ */
+public final class BlockStatus {
+
+    public static final BlockStatus NOT_BLOCKED = new BlockStatus(false, false, 0, 0L, 0L);
+
+    private final boolean userBlocked;
+    private final boolean ipBlocked;
+    private final int remainingAttempts;
+    private final long lockRemainingSeconds;
+    private final long unlockEpochMillis;
+
+    BlockStatus(boolean userBlocked, boolean ipBlocked, int remainingAttempts, long lockRemainingSeconds, long unlockEpochMillis) {
+        this.userBlocked = userBlocked;
+        this.ipBlocked = ipBlocked;
+        this.remainingAttempts = remainingAttempts;
+        this.lockRemainingSeconds = lockRemainingSeconds;
+        this.unlockEpochMillis = unlockEpochMillis;
+    }
+
+    public boolean isBlocked() {
+        return userBlocked || ipBlocked;
+    }
+
+    public boolean isUserBlocked() {
+        return userBlocked;
+    }
+
+    public boolean isIpBlocked() {
+        return ipBlocked;
+    }
+
+    // failed attempts the user has left; only reported for a blocked status
+    public int getRemainingAttempts() {
+        return remainingAttempts;
+    }
+
+    public long getLockRemainingSeconds() {
+        return lockRemainingSeconds;
+    }
+
+    public long getUnlockEpochMillis() {
+        return unlockEpochMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "BlockStatus{userBlocked=" + userBlocked + ", ipBlocked=" + ipBlocked + ", remainingAttempts=" + remainingAttempts
+                + ", lockRemainingSeconds=" + lockRemainingSeconds + ", unlockEpochMillis=" + unlockEpochMillis + "}";
+    }
+}
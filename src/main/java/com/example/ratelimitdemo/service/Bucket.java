@@ -0,0 +1,33 @@
+package com.example.ratelimitdemo.service;
+
+/**
+ * Per-key token bucket state held by {@link RateLimiterService}.
+ */
+interface Bucket extends StoreEntry {
+
+    default boolean tryConsume() {
+        return tryConsume(1);
+    }
+
+    /**
+     * Takes {@code permits} tokens if all of them are available, otherwise none; 0 permits always succeeds.
+     */
+    boolean tryConsume(int permits);
+
+    void addTokens(double amount);
+
+    double getTokens();
+
+    /**
+     * Nanoseconds until {@code permits} tokens are available, counting permits already reserved; 0 when they are,
+     * {@link Long#MAX_VALUE} when they never will be. Takes nothing.
+     */
+    long waitNanos(int permits);
+
+    /**
+     * Takes {@code permits} tokens now, ahead of the refill when they are not there yet: the bucket goes into debt
+     * and later requests wait behind the reservation. Returns the nanoseconds until the tokens are covered, as
+     * {@link #waitNanos} gave, or {@link Long#MAX_VALUE} without taking anything when they never will be.
+     */
+    long reserve(int permits);
+}
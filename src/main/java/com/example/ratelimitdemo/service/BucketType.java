@@ -0,0 +1,11 @@
+package com.example.ratelimitdemo.service;
+
+/**
+ * Bucket implementation used by {@link RateLimiterService}, selected with {@code ratelimit.bucket.type}.
+ */
+public enum BucketType {
+    /** Double-based bucket guarded by its monitor. */
+    SYNCHRONIZED,
+    /** Lock-free bucket with tokens and refill time packed into a single CAS-updated long. */
+    ATOMIC
+}
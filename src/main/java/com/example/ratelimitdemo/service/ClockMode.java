@@ -0,0 +1,11 @@
+package com.example.ratelimitdemo.service;
+
+/**
+ * Clock used by the limiter and lockout services, selected with {@code ratelimit.clock.mode}.
+ */
+public enum ClockMode {
+    /** Reads {@link System#nanoTime()} on every call. */
+    PRECISE,
+    /** Returns a value refreshed by a background thread every {@code ratelimit.clock.tickMillis}. */
+    TICKER
+}
@@ -0,0 +1,81 @@
+package com.example.ratelimitdemo.service;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Count-min sketch over string keys: {@code depth} rows of {@code width} counters, each key adding to one counter
+ * per row and reading back the smallest of them. An estimate never undercounts; it overcounts by at most
+ * {@code e / width} of everything added since the last decay, with probability {@code 1 - e^-depth}. Memory is
+ * {@code depth * width} ints however many distinct keys are added.
+ * <p>
+ * Counters are atomic, so concurrent adds need no lock. {@link #decay} halves every counter in place; an add
+ * racing with it may or may not be halved.
+ */
+final class CountMinSketch {
+
+    private final int depth;
+    private final int width;
+    private final int mask;
+    private final AtomicIntegerArray counters;
+
+    CountMinSketch(int depth, int width) {
+        if (depth <= 0 || width <= 0 || Integer.bitCount(width) != 1 || (long) depth * width > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("count-min sketch needs depth > 0 and a power-of-two width: depth="
+                    + depth + " width=" + width);
+        }
+        this.depth = depth;
+        this.width = width;
+        this.mask = width - 1;
+        this.counters = new AtomicIntegerArray(depth * width);
+    }
+
+    /**
+     * Adds one occurrence of {@code key} and returns its estimated count including it.
+     */
+    int add(String key) {
+        return add(key, 1);
+    }
+
+    /**
+     * Adds {@code occurrences} of {@code key} and returns its estimated count including them.
+     */
+    int add(String key, int occurrences) {
+        long h = Hashing.mix(key.hashCode());
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1; // odd, so the rows probe different columns
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int count = counters.addAndGet(row * width + ((h1 + row * h2) & mask), occurrences);
+            if (count < min) min = count;
+        }
+        return min;
+    }
+
+    int estimate(String key) {
+        long h = Hashing.mix(key.hashCode());
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int count = counters.get(row * width + ((h1 + row * h2) & mask));
+            if (count < min) min = count;
+        }
+        return min;
+    }
+
+    /**
+     * Halves every counter, so a count fades by half per call.
+     */
+    void decay() {
+        for (int i = 0, n = counters.length(); i < n; i++) {
+            int count = counters.get(i);
+            while (count != 0 && !counters.compareAndSet(i, count, count >>> 1)) {
+                count = counters.get(i);
+            }
+        }
+    }
+
+    long getMemoryBytes() {
+        return (long) depth * width * Integer.BYTES;
+    }
+}
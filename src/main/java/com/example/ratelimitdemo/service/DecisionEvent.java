@@ -0,0 +1,25 @@
+package com.example.ratelimitdemo.service;
+
+/**
+ * Kinds of decisions reported to the {@link DecisionLog}. Each is summarized per interval with its busiest keys.
+ */
+public enum DecisionEvent {
+    RATE_LIMIT_DENIED("rate-limit-denied"),
+    LOGIN_FAILED_USER("login-failed-user"),
+    LOGIN_FAILED_IP("login-failed-ip"),
+    LOCKED_USER("locked-user"),
+    LOCKED_IP("locked-ip"),
+    LOCKED_SUBNET("locked-subnet"),
+    BLOCKED_USER("blocked-user"),
+    BLOCKED_IP("blocked-ip");
+
+    private final String label;
+
+    DecisionEvent(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,259 @@
+package com.example.ratelimitdemo.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Logs limiter and lockout decisions as periodic summaries instead of a line per request, e.g.
+ * {@code rate-limit-denied total=1204 keys=37 top=[bob:test1=1000, eve:test1=150] in last 10s}.
+ * <p>
+ * {@link #record} puts the event into a bounded lock-free ring (one CAS and three array writes, no allocation)
+ * and never blocks: when the ring is full the event is counted as dropped. Repeats of one event for one key can take
+ * a single slot with their count. A daemon thread drains the ring, counts
+ * events per kind and key, and every interval logs one line per kind with its {@code topKeys} busiest keys. Keys
+ * beyond {@link #MAX_KEYS_PER_EVENT} per interval are only counted, so a flood of distinct keys cannot grow the
+ * counts without bound. Allowed requests are too frequent to be worth a ring slot and only add to a total.
+ */
+@Component
+public class DecisionLog implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(DecisionLog.class);
+
+    static final int MAX_KEYS_PER_EVENT = 10_000;
+    private static final long DRAIN_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final DecisionEvent[] EVENTS = DecisionEvent.values();
+    private static final DecisionLog DISABLED = new DecisionLog(false, 2, 1, 1, MonotonicClock.system(), false);
+
+    private final boolean enabled;
+    private final int topKeys;
+    private final long intervalNanos;
+    private final MonotonicClock clock;
+
+    // Bounded MPSC ring: slot i is free for the producer at position p when sequences[i] == p, and holds the event
+    // for the consumer at position p when sequences[i] == p + 1. The sequence store publishes the slot contents.
+    private final int mask;
+    private final String[] keys;
+    private final DecisionEvent[] events;
+    private final int[] repeats;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private long head; // drainer only
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    // drainer only
+    private final List<Map<String, long[]>> counts = new ArrayList<>();
+    private final long[] totals = new long[EVENTS.length];
+    private final long[] overflow = new long[EVENTS.length];
+    private long intervalStartNanos;
+
+    private final Thread drainer;
+    private volatile boolean running = true;
+
+    @Autowired
+    public DecisionLog(@Value("${decisionlog.enabled:true}") boolean enabled,
+                       @Value("${decisionlog.bufferSize:65536}") int bufferSize,
+                       @Value("${decisionlog.intervalSeconds:10}") int intervalSeconds,
+                       @Value("${decisionlog.topKeys:10}") int topKeys,
+                       MonotonicClock clock) {
+        this(enabled, bufferSize, intervalSeconds, topKeys, clock, enabled);
+    }
+
+    DecisionLog(boolean enabled, int bufferSize, int intervalSeconds, int topKeys, MonotonicClock clock, boolean startDrainer) {
+        if (bufferSize < 2 || Integer.bitCount(bufferSize) != 1 || intervalSeconds <= 0 || topKeys < 0) {
+            throw new IllegalArgumentException("decision log needs a power-of-two bufferSize >= 2, intervalSeconds > 0 and topKeys >= 0: bufferSize="
+                    + bufferSize + " intervalSeconds=" + intervalSeconds + " topKeys=" + topKeys);
+        }
+        this.enabled = enabled;
+        this.topKeys = topKeys;
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(intervalSeconds);
+        this.clock = clock;
+        int capacity = enabled ? bufferSize : 2;
+        this.mask = capacity - 1;
+        this.keys = new String[capacity];
+        this.events = new DecisionEvent[capacity];
+        this.repeats = new int[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        for (int i = 0; i < EVENTS.length; i++) {
+            counts.add(new HashMap<>());
+        }
+        this.intervalStartNanos = clock.currentTimeNanos();
+        if (startDrainer) {
+            drainer = new Thread(this::run, "decision-log-drainer");
+            drainer.setDaemon(true);
+            drainer.start();
+        } else {
+            drainer = null;
+        }
+        if (enabled) {
+            log.info("DecisionLog initialized with bufferSize={} intervalSeconds={} topKeys={}", bufferSize, intervalSeconds, topKeys);
+        }
+    }
+
+    /**
+     * A log that records nothing, for services built outside Spring.
+     */
+    public static DecisionLog disabled() {
+        return DISABLED;
+    }
+
+    public void recordAllowed() {
+        if (enabled) {
+            allowed.increment();
+        }
+    }
+
+    /**
+     * Queues {@code event} for {@code key}; drops it when the ring is full.
+     */
+    public void record(DecisionEvent event, String key) {
+        record(event, key, 1);
+    }
+
+    /**
+     * Queues {@code times} occurrences of {@code event} for {@code key} in one slot; drops them all when the ring is
+     * full.
+     */
+    public void record(DecisionEvent event, String key, int times) {
+        if (!enabled || times <= 0) {
+            return;
+        }
+        long position = tail.get();
+        for (;;) {
+            int index = (int) position & mask;
+            long available = sequences.get(index) - position;
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    keys[index] = key;
+                    events[index] = event;
+                    repeats[index] = times;
+                    sequences.lazySet(index, position + 1);
+                    return;
+                }
+                position = tail.get();
+            } else if (available < 0) {
+                dropped.add(times);
+                return;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (drainer != null) {
+            LockSupport.unpark(drainer);
+        }
+    }
+
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(DRAIN_NANOS);
+            drain();
+            if (clock.currentTimeNanos() - intervalStartNanos >= intervalNanos) {
+                flush();
+            }
+        }
+        drain();
+        flush();
+    }
+
+    // moves queued events into the interval's counts
+    int drain() {
+        int drained = 0;
+        for (;;) {
+            int index = (int) head & mask;
+            if (sequences.get(index) != head + 1) {
+                return drained;
+            }
+            String key = keys[index];
+            DecisionEvent event = events[index];
+            int times = repeats[index];
+            keys[index] = null;
+            events[index] = null;
+            sequences.lazySet(index, head + mask + 1);
+            head++;
+            drained++;
+            count(event, key, times);
+        }
+    }
+
+    private void count(DecisionEvent event, String key, int times) {
+        int e = event.ordinal();
+        totals[e] += times;
+        Map<String, long[]> byKey = counts.get(e);
+        long[] count = byKey.get(key);
+        if (count != null) {
+            count[0] += times;
+        } else if (byKey.size() < MAX_KEYS_PER_EVENT) {
+            byKey.put(key, new long[] {times});
+        } else {
+            overflow[e] += times;
+        }
+    }
+
+    /**
+     * Logs the interval's summary lines and starts a new interval; returns the lines logged.
+     */
+    List<String> flush() {
+        long now = clock.currentTimeNanos();
+        long seconds = Math.max(1L, TimeUnit.NANOSECONDS.toSeconds(now - intervalStartNanos));
+        intervalStartNanos = now;
+        List<String> lines = new ArrayList<>();
+        long allowedCount = allowed.sumThenReset();
+        long droppedCount = dropped.sumThenReset();
+        if (allowedCount > 0 || droppedCount > 0) {
+            lines.add("rate-limit-allowed total=" + allowedCount + " dropped-events=" + droppedCount + " in last " + seconds + "s");
+        }
+        for (DecisionEvent event : EVENTS) {
+            int e = event.ordinal();
+            if (totals[e] == 0) {
+                continue;
+            }
+            Map<String, long[]> byKey = counts.get(e);
+            List<Map.Entry<String, long[]>> top = new ArrayList<>(byKey.entrySet());
+            top.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+            StringBuilder line = new StringBuilder(event.getLabel())
+                    .append(" total=").append(totals[e])
+                    .append(" keys=").append(byKey.size() + (overflow[e] > 0 ? "+" : ""))
+                    .append(" top=[");
+            for (int i = 0; i < Math.min(topKeys, top.size()); i++) {
+                if (i > 0) {
+                    line.append(", ");
+                }
+                line.append(top.get(i).getKey()).append('=').append(top.get(i).getValue()[0]);
+            }
+            line.append("] in last ").append(seconds).append('s');
+            lines.add(line.toString());
+            totals[e] = 0;
+            overflow[e] = 0;
+            byKey.clear();
+        }
+        for (String line : lines) {
+            log.info(line);
+        }
+        return lines;
+    }
+}
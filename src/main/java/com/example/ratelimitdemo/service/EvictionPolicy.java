@@ -0,0 +1,13 @@
+package com.example.ratelimitdemo.service;
+
+/**
+ * What {@link RateLimiterService} does with a new key once {@code ratelimit.store.maxEntries} buckets exist.
+ */
+public enum EvictionPolicy {
+    /** Evict the least recently used bucket out of a small sample and store the new one. */
+    LEAST_RECENTLY_USED,
+    /** Do not store the new key and reject its requests (fail closed). */
+    REJECT,
+    /** Do not store the new key and allow its requests (fail open). */
+    ALLOW
+}
@@ -2,121 +2,510 @@ package com.example.ratelimitdemo.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.time.Instant;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Counts failed logins per user and per address over a sliding window of {@code windowMinutes} and locks a key for
+ * {@code lockMinutes} once {@code threshold} failures fall inside the window. Locking starts the count afresh, so a
+ * key whose lock ran out gets the full threshold again rather than being relocked by its next failure.
+ * <p>
+ * Records whose lock has run out and whose failures have all aged out of the window are dropped a batch at a time
+ * as new failures are recorded, so memory follows the recently active keys rather than everything ever seen.
+ * <p>
+ * With {@code ipSketch.enabled}, failures from an address without a record are only counted in a fixed-size
+ * {@link CountMinSketch}, halved every window; an address gets an exact record once the sketch has seen
+ * {@code promoteAt} failures from it, and those carry over into its count. A flood of one-off addresses then costs
+ * the sketch's fixed memory instead of a record each. Because {@code promoteAt} is below the threshold, an
+ * overestimate from the sketch can get an address tracked early but never locked without further failures.
+ * <p>
+ * With {@code subnet.enabled}, failures are also counted per network ({@code /24} and {@code /64} by default) in an
+ * {@link IpPrefixTrie}, and a network reaching {@code subnet.threshold} failures is locked as a whole, so rotating
+ * through the addresses of one network does not evade the lock. Checking an address parses it only while some
+ * network is locked.
+ */
 @Component
 public class FailedLoginService {
     private static final Logger log = LoggerFactory.getLogger(FailedLoginService.class);
 
-    private final Map<String, Attempt> userAttempts = new ConcurrentHashMap<>();
-    private final Map<String, Attempt> ipAttempts = new ConcurrentHashMap<>();
+    private static final int SWEEP_BATCH = 64;
+    private static final int SWEEP_EVERY = 64;
+    private static final int DEFAULT_LOCK_FILTER_BITS = 1 << 20;
+    // keep user and IP keys apart in the lock filter
+    private static final int USER_KEY = 0;
+    private static final int IP_KEY = 0x5bd1e995;
+
+    private final ConcurrentMap<String, Attempt> userAttempts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Attempt> ipAttempts = new ConcurrentHashMap<>();
+    private final AmortizedSweeper<String, Attempt> userSweeper = new AmortizedSweeper<>(userAttempts, SWEEP_BATCH, SWEEP_EVERY);
+    private final AmortizedSweeper<String, Attempt> ipSweeper = new AmortizedSweeper<>(ipAttempts, SWEEP_BATCH, SWEEP_EVERY);
 
     private final int threshold;
     private final long lockMillis;
+    private final long windowMillis;
+    private final MonotonicClock clock;
+    private final DecisionLog decisionLog;
+
+    // null unless ipSketch.enabled
+    private final CountMinSketch ipSketch;
+    private final int ipSketchPromoteAt;
+
+    // null unless subnet.enabled
+    private final IpPrefixTrie<Attempt> ipv4Subnets;
+    private final IpPrefixTrie<Attempt> ipv6Subnets;
+    private final int subnetThreshold;
+    private final int ipv4PrefixLength;
+    private final int ipv6PrefixLength;
+    // latest end of any subnet lock, so that checks can skip the trie while none is running
+    private final AtomicLong subnetLocksUntil = new AtomicLong();
+
+    // users and IPs locked lately; null when lockFilter.bits is 0
+    private final LockedKeyFilter lockedKeys;
+
+    // when the sketch is next halved and the subnet tries next pruned
+    private final AtomicLong nextMaintenance;
+
+    private final LongAdder userLocks = new LongAdder();
+    private final LongAdder ipLocks = new LongAdder();
+    private final LongAdder userUnlocks = new LongAdder();
+    private final LongAdder ipUnlocks = new LongAdder();
+    private final LongAdder ipPromotions = new LongAdder();
+    private final LongAdder subnetLocks = new LongAdder();
+
+    public FailedLoginService(int threshold, int lockMinutes) {
+        this(threshold, lockMinutes, MonotonicClock.system());
+    }
+
+    public FailedLoginService(int threshold, int lockMinutes, MonotonicClock clock) {
+        this(threshold, lockMinutes, clock, DecisionLog.disabled());
+    }
+
+    public FailedLoginService(int threshold, int lockMinutes, MonotonicClock clock, DecisionLog decisionLog) {
+        this(threshold, lockMinutes, lockMinutes, clock, decisionLog);
+    }
+
+    public FailedLoginService(int threshold, int lockMinutes, int windowMinutes, MonotonicClock clock, DecisionLog decisionLog) {
+        this(threshold, lockMinutes, windowMinutes, clock, decisionLog, false, 0, 0, 0);
+    }
+
+    public FailedLoginService(int threshold, int lockMinutes, int windowMinutes, MonotonicClock clock, DecisionLog decisionLog,
+                              boolean ipSketchEnabled, int ipSketchDepth, int ipSketchWidth, int ipSketchPromoteAt) {
+        this(threshold, lockMinutes, windowMinutes, clock, decisionLog, ipSketchEnabled, ipSketchDepth, ipSketchWidth,
+                ipSketchPromoteAt, false, 0, 0, 0);
+    }
 
+    public FailedLoginService(int threshold, int lockMinutes, int windowMinutes, MonotonicClock clock, DecisionLog decisionLog,
+                              boolean ipSketchEnabled, int ipSketchDepth, int ipSketchWidth, int ipSketchPromoteAt,
+                              boolean subnetEnabled, int subnetThreshold, int ipv4PrefixLength, int ipv6PrefixLength) {
+        this(threshold, lockMinutes, windowMinutes, clock, decisionLog, ipSketchEnabled, ipSketchDepth, ipSketchWidth,
+                ipSketchPromoteAt, subnetEnabled, subnetThreshold, ipv4PrefixLength, ipv6PrefixLength, DEFAULT_LOCK_FILTER_BITS);
+    }
+
+    @Autowired
     public FailedLoginService(@Value("${security.bruteforce.threshold:5}") int threshold,
-                              @Value("${security.bruteforce.lockMinutes:15}") int lockMinutes) {
+                              @Value("${security.bruteforce.lockMinutes:15}") int lockMinutes,
+                              @Value("${security.bruteforce.windowMinutes:${security.bruteforce.lockMinutes:15}}") int windowMinutes,
+                              MonotonicClock clock,
+                              DecisionLog decisionLog,
+                              @Value("${security.bruteforce.ipSketch.enabled:false}") boolean ipSketchEnabled,
+                              @Value("${security.bruteforce.ipSketch.depth:4}") int ipSketchDepth,
+                              @Value("${security.bruteforce.ipSketch.width:262144}") int ipSketchWidth,
+                              @Value("${security.bruteforce.ipSketch.promoteAt:3}") int ipSketchPromoteAt,
+                              @Value("${security.bruteforce.subnet.enabled:true}") boolean subnetEnabled,
+                              @Value("${security.bruteforce.subnet.threshold:25}") int subnetThreshold,
+                              @Value("${security.bruteforce.subnet.ipv4PrefixLength:24}") int ipv4PrefixLength,
+                              @Value("${security.bruteforce.subnet.ipv6PrefixLength:64}") int ipv6PrefixLength,
+                              @Value("${security.bruteforce.lockFilter.bits:1048576}") int lockFilterBits) {
+        if (windowMinutes <= 0) {
+            throw new IllegalArgumentException("security.bruteforce.windowMinutes must be > 0: " + windowMinutes);
+        }
+        if (threshold > Attempt.MAX_COUNT || (subnetEnabled && subnetThreshold > Attempt.MAX_COUNT)) {
+            throw new IllegalArgumentException("security.bruteforce thresholds must not exceed " + Attempt.MAX_COUNT
+                    + ": threshold=" + threshold + " subnet.threshold=" + subnetThreshold);
+        }
+        if (ipSketchEnabled && (ipSketchPromoteAt < 1 || ipSketchPromoteAt >= threshold)) {
+            throw new IllegalArgumentException("security.bruteforce.ipSketch.promoteAt must be >= 1 and below the threshold: promoteAt="
+                    + ipSketchPromoteAt + " threshold=" + threshold);
+        }
+        if (subnetEnabled && (subnetThreshold < 1 || ipv4PrefixLength < 1 || ipv4PrefixLength > 32
+                || ipv6PrefixLength < 1 || ipv6PrefixLength > 128)) {
+            throw new IllegalArgumentException("security.bruteforce.subnet needs threshold >= 1, ipv4PrefixLength in 1..32 and"
+                    + " ipv6PrefixLength in 1..128: threshold=" + subnetThreshold + " ipv4PrefixLength=" + ipv4PrefixLength
+                    + " ipv6PrefixLength=" + ipv6PrefixLength);
+        }
         this.threshold = threshold;
         this.lockMillis = lockMinutes * 60L * 1000L;
-        log.info("FailedLoginService initialized with threshold={} lockMinutes={}", threshold, lockMinutes);
+        this.windowMillis = windowMinutes * 60L * 1000L;
+        this.clock = clock;
+        this.decisionLog = decisionLog;
+        this.ipSketch = ipSketchEnabled ? new CountMinSketch(ipSketchDepth, ipSketchWidth) : null;
+        this.ipSketchPromoteAt = ipSketchPromoteAt;
+        this.ipv4Subnets = subnetEnabled ? new IpPrefixTrie<>() : null;
+        this.ipv6Subnets = subnetEnabled ? new IpPrefixTrie<>() : null;
+        this.subnetThreshold = subnetThreshold;
+        this.ipv4PrefixLength = ipv4PrefixLength;
+        this.ipv6PrefixLength = ipv6PrefixLength;
+        this.lockedKeys = lockFilterBits > 0 ? new LockedKeyFilter(lockFilterBits, lockMillis, clock.currentTimeMillis()) : null;
+        this.nextMaintenance = new AtomicLong(clock.currentTimeMillis() + windowMillis);
+        log.info("FailedLoginService initialized with threshold={} lockMinutes={} windowMinutes={} ipSketch={} subnet={} lockFilterBits={}",
+                threshold, lockMinutes, windowMinutes,
+                ipSketchEnabled ? ipSketchDepth + "x" + ipSketchWidth + " promoteAt=" + ipSketchPromoteAt : "off",
+                subnetEnabled ? "/" + ipv4PrefixLength + " /" + ipv6PrefixLength + " threshold=" + subnetThreshold : "off", lockFilterBits);
     }
 
     public void recordFailed(String username, String ip) {
+        recordFailed(username, ip, 1);
+    }
+
+    /**
+     * Records {@code failures} failed logins of {@code username} from {@code ip} at once, with the same outcome as
+     * that many calls to {@link #recordFailed(String, String)} at the same instant.
+     */
+    public void recordFailed(String username, String ip, int failures) {
+        if (failures < 1) {
+            throw new IllegalArgumentException("failures must be at least 1: " + failures);
+        }
+        long now = clock.currentTimeMillis();
+        maintain(now);
         if (username != null) {
-            userAttempts.compute(username, (k, v) -> {
-                if (v == null) v = new Attempt();
-                v.count++;
-                if (v.count >= threshold) v.lockUntil = Instant.now().toEpochMilli() + lockMillis;
-                return v;
-            });
-            log.warn("Failed login for user={} ip={} count={}", username, ip, userAttempts.get(username).count);
+            Attempt attempt = userAttempts.compute(username, (k, v) -> fail(v != null ? v : newAttempt(now, 0), now, failures, threshold, userLocks, DecisionEvent.LOCKED_USER, k));
+            if (lockedKeys != null && Attempt.isLocked(attempt.state)) lockedKeys.add(username, USER_KEY, now);
+            if (userSweeper.shouldSweep()) userSweeper.sweep(a -> isStale(a, now));
+            decisionLog.record(DecisionEvent.LOGIN_FAILED_USER, username, failures);
         }
         if (ip != null) {
-            ipAttempts.compute(ip, (k, v) -> {
-                if (v == null) v = new Attempt();
-                v.count++;
-                if (v.count >= threshold) v.lockUntil = Instant.now().toEpochMilli() + lockMillis;
-                return v;
-            });
-            log.warn("Failed login for ip={} username={} count={}", ip, username, ipAttempts.get(ip).count);
+            int earlier = ipSketch == null ? 0 : sketchFailures(ip, failures);
+            if (earlier >= 0) {
+                Attempt attempt = ipAttempts.compute(ip, (k, v) -> fail(v != null ? v : newAttempt(now, earlier), now, failures, threshold, ipLocks, DecisionEvent.LOCKED_IP, k));
+                if (lockedKeys != null && Attempt.isLocked(attempt.state)) lockedKeys.add(ip, IP_KEY, now);
+                if (ipSweeper.shouldSweep()) ipSweeper.sweep(a -> isStale(a, now));
+            }
+            if (ipv4Subnets != null) {
+                recordSubnetFailure(ip, now, failures);
+            }
+            decisionLog.record(DecisionEvent.LOGIN_FAILED_IP, ip, failures);
+        }
+    }
+
+    // once per window: halves the sketch and prunes networks with nothing left to count
+    private void maintain(long now) {
+        long due = nextMaintenance.get();
+        if (now - due < 0 || !nextMaintenance.compareAndSet(due, now + windowMillis)) return;
+        if (ipSketch != null) ipSketch.decay();
+        if (ipv4Subnets != null) {
+            ipv4Subnets.removeIf(a -> isStale(a, now));
+            ipv6Subnets.removeIf(a -> isStale(a, now));
+        }
+    }
+
+    // failures the sketch saw from ip before these once it is promoted, 0 if already tracked, -1 if not yet promoted;
+    // never more than promoteAt - 1, so that collisions in the sketch cannot lock an address on their own
+    private int sketchFailures(String ip, int failures) {
+        if (ipAttempts.containsKey(ip)) return 0;
+        int estimate = ipSketch.add(ip, failures);
+        if (estimate < ipSketchPromoteAt) return -1;
+        ipPromotions.increment();
+        return Math.max(0, Math.min(estimate - failures, ipSketchPromoteAt - 1));
+    }
+
+    private void recordSubnetFailure(String ip, long now, int failures) {
+        IpAddress address = IpAddress.parse(ip);
+        if (address == null) return;
+        int length = address.isIpv4() ? ipv4PrefixLength : ipv6PrefixLength;
+        String network = address.toPrefixString(length);
+        Attempt a = subnets(address).compute(address.getHigh(), address.getLow(), length,
+                v -> fail(v != null ? v : newAttempt(now, 0), now, failures, subnetThreshold, subnetLocks, DecisionEvent.LOCKED_SUBNET, network));
+        subnetLocksUntil.accumulateAndGet(Attempt.lockUntil(a.state), Math::max);
+    }
+
+    private IpPrefixTrie<Attempt> subnets(IpAddress address) {
+        return address.isIpv4() ? ipv4Subnets : ipv6Subnets;
+    }
+
+    // end of the lock on ip's network, or 0
+    private long subnetLockUntil(String ip, long now) {
+        if (ipv4Subnets == null || subnetLocksUntil.get() <= now) return 0L;
+        IpAddress address = IpAddress.parse(ip);
+        if (address == null) return 0L;
+        Attempt a = subnets(address).longestMatch(address.getHigh(), address.getLow());
+        return a == null ? 0L : Attempt.lockUntil(a.state);
+    }
+
+    private static Attempt newAttempt(long now, int count) {
+        return new Attempt(Attempt.counting(now, count, 0));
+    }
+
+    // failures while locked extend the lock; otherwise they are counted and lock once the window holds threshold;
+    // only a lock that was not already running counts as a new one
+    private Attempt fail(Attempt a, long now, int failures, int threshold, LongAdder locks, DecisionEvent event, String key) {
+        long state = a.state;
+        if (Attempt.lockUntil(state) > now) {
+            a.state = Attempt.locked(now + lockMillis);
+            return a;
+        }
+        state = roll(state, now);
+        state = Attempt.counting(Attempt.windowStart(state), Math.min(Attempt.count(state) + failures, Attempt.MAX_COUNT),
+                Attempt.previousCount(state));
+        if (failures(state, now) >= threshold) {
+            locks.increment();
+            decisionLog.record(event, key);
+            state = Attempt.locked(now + lockMillis);
+        }
+        a.state = state;
+        return a;
+    }
+
+    // moves the fixed window forward so that it contains now, carrying the last window's count as previousCount;
+    // a lock that ran out leaves nothing to carry
+    private long roll(long state, long now) {
+        if (Attempt.isLocked(state)) return Attempt.counting(now, 0, 0);
+        long windowStart = Attempt.windowStart(state);
+        long elapsed = now - windowStart;
+        if (elapsed < windowMillis) return state;
+        if (elapsed < 2 * windowMillis) return Attempt.counting(windowStart + windowMillis, 0, Attempt.count(state));
+        return Attempt.counting(now, 0, 0);
+    }
+
+    // failures in the sliding window ending at now: the current window's plus the overlapping share of the one before
+    private int failures(long state, long now) {
+        if (Attempt.isLocked(state)) return 0;
+        long elapsed = now - Attempt.windowStart(state);
+        if (elapsed < windowMillis) {
+            return (int) ((Attempt.count(state) * windowMillis + Attempt.previousCount(state) * (windowMillis - elapsed)) / windowMillis);
+        }
+        if (elapsed < 2 * windowMillis) {
+            return (int) (Attempt.count(state) * (2 * windowMillis - elapsed) / windowMillis);
+        }
+        return 0;
+    }
+
+    private boolean isStale(Attempt a, long now) {
+        long state = a.state;
+        return Attempt.lockUntil(state) <= now && failures(state, now) == 0;
+    }
+
+    /**
+     * Drops one batch of stale records from each map; recording failures already does this now and then.
+     *
+     * @return number of records removed
+     */
+    int sweepExpired() {
+        long now = clock.currentTimeMillis();
+        int removed = userSweeper.sweep(a -> isStale(a, now)) + ipSweeper.sweep(a -> isStale(a, now));
+        if (ipv4Subnets != null) {
+            removed += ipv4Subnets.removeIf(a -> isStale(a, now)) + ipv6Subnets.removeIf(a -> isStale(a, now));
         }
+        return removed;
     }
 
     public void recordSuccess(String username, String ip) {
+        long now = clock.currentTimeMillis();
         if (username != null) {
-            userAttempts.remove(username);
-            log.info("Reset failed attempts for user={}", username);
+            Attempt removed = userAttempts.remove(username);
+            if (removed != null) {
+                if (Attempt.lockUntil(removed.state) > now) userUnlocks.increment();
+                log.info("Reset failed attempts for user={}", username);
+            }
         }
         if (ip != null) {
-            ipAttempts.remove(ip);
-            log.info("Reset failed attempts for ip={}", ip);
+            Attempt removed = ipAttempts.remove(ip);
+            if (removed != null) {
+                if (Attempt.lockUntil(removed.state) > now) ipUnlocks.increment();
+                log.info("Reset failed attempts for ip={}", ip);
+            }
+        }
+    }
+
+    /**
+     * Everything needed to turn away a request from {@code username} at {@code ip}, read at one instant: one
+     * clock read and one read of each record. Returns {@link BlockStatus#NOT_BLOCKED} when neither is locked.
+     * <p>
+     * Records are only looked up for keys the lock filter may hold, so for the usual request from a user and an
+     * address that are not locked this costs the hashing of both keys and a few bit reads.
+     */
+    public BlockStatus blockStatus(String username, String ip) {
+        long now = clock.currentTimeMillis();
+        long ipLockUntil = 0L;
+        if (ip != null) {
+            long ipState = mightBeLocked(ip, IP_KEY, now) ? state(ipAttempts, ip) : 0L;
+            ipLockUntil = Math.max(Attempt.lockUntil(ipState), subnetLockUntil(ip, now));
+        }
+        // a blocked address reports the user's remaining attempts, which needs the user's record even if unlocked
+        long userState = ipLockUntil > now || mightBeLocked(username, USER_KEY, now) ? state(userAttempts, username) : 0L;
+        long userLockUntil = Attempt.lockUntil(userState);
+        boolean userBlocked = userLockUntil > now;
+        boolean ipBlocked = ipLockUntil > now;
+        if (!userBlocked && !ipBlocked) {
+            return BlockStatus.NOT_BLOCKED;
         }
+        int remaining = userBlocked ? 0 : Math.max(0, threshold - failures(userState, now));
+        long unlock = userBlocked ? userLockUntil : ipLockUntil;
+        return new BlockStatus(userBlocked, ipBlocked, remaining, (unlock - now + 999) / 1000, unlock);
+    }
+
+    private boolean mightBeLocked(String key, int kind, long now) {
+        return key != null && (lockedKeys == null || lockedKeys.mightContain(key, kind, now));
+    }
+
+    // the packed state of key's record; 0, an empty count, when there is none
+    private static long state(ConcurrentMap<String, Attempt> attempts, String key) {
+        if (key == null) return 0L;
+        Attempt a = attempts.get(key);
+        return a == null ? 0L : a.state;
     }
 
     public boolean isUserBlocked(String username) {
-        if (username == null) return false;
-        Attempt a = userAttempts.get(username);
-        boolean blocked = a != null && a.lockUntil > Instant.now().toEpochMilli();
-        if (blocked) log.debug("User {} is blocked until {}", username, a.lockUntil);
-        return blocked;
+        return Attempt.lockUntil(state(userAttempts, username)) > clock.currentTimeMillis();
     }
 
     public boolean isIpBlocked(String ip) {
         if (ip == null) return false;
-        Attempt a = ipAttempts.get(ip);
-        boolean blocked = a != null && a.lockUntil > Instant.now().toEpochMilli();
-        if (blocked) log.debug("IP {} is blocked until {}", ip, a.lockUntil);
-        return blocked;
+        long now = clock.currentTimeMillis();
+        return ipLockUntil(ip, now) > now;
+    }
+
+    // end of the lock on ip itself or on its network, whichever is later
+    private long ipLockUntil(String ip, long now) {
+        return Math.max(Attempt.lockUntil(state(ipAttempts, ip)), subnetLockUntil(ip, now));
     }
 
     public int remainingAttemptsForUser(String username) {
-        if (username == null) return threshold;
-        Attempt a = userAttempts.get(username);
-        return a == null ? threshold : Math.max(0, threshold - a.count);
+        long state = state(userAttempts, username);
+        long now = clock.currentTimeMillis();
+        return Attempt.lockUntil(state) > now ? 0 : Math.max(0, threshold - failures(state, now));
     }
 
     // New helper: returns remaining lock seconds for user or 0 if not locked
     public long getUserLockRemainingSeconds(String username) {
-        if (username == null) return 0L;
-        Attempt a = userAttempts.get(username);
-        if (a == null || a.lockUntil <= Instant.now().toEpochMilli()) return 0L;
-        long millis = a.lockUntil - Instant.now().toEpochMilli();
+        long lockUntil = Attempt.lockUntil(state(userAttempts, username));
+        long now = clock.currentTimeMillis();
+        if (lockUntil <= now) return 0L;
+        long millis = lockUntil - now;
         long secs = (millis + 999) / 1000; // ceil
         return secs;
     }
 
     // New helper: returns unlock epoch millis or 0 if not locked
     public long getUserUnlockEpochMillis(String username) {
-        if (username == null) return 0L;
-        Attempt a = userAttempts.get(username);
-        if (a == null || a.lockUntil <= Instant.now().toEpochMilli()) return 0L;
-        return a.lockUntil;
+        long lockUntil = Attempt.lockUntil(state(userAttempts, username));
+        return lockUntil <= clock.currentTimeMillis() ? 0L : lockUntil;
     }
 
     // New helper for IP locks
     public long getIpLockRemainingSeconds(String ip) {
         if (ip == null) return 0L;
-        Attempt a = ipAttempts.get(ip);
-        if (a == null || a.lockUntil <= Instant.now().toEpochMilli()) return 0L;
-        long millis = a.lockUntil - Instant.now().toEpochMilli();
+        long now = clock.currentTimeMillis();
+        long lockUntil = ipLockUntil(ip, now);
+        if (lockUntil <= now) return 0L;
+        long millis = lockUntil - now;
         long secs = (millis + 999) / 1000;
         return secs;
     }
 
     public long getIpUnlockEpochMillis(String ip) {
         if (ip == null) return 0L;
-        Attempt a = ipAttempts.get(ip);
-        if (a == null || a.lockUntil <= Instant.now().toEpochMilli()) return 0L;
-        return a.lockUntil;
+        long now = clock.currentTimeMillis();
+        long lockUntil = ipLockUntil(ip, now);
+        return lockUntil <= now ? 0L : lockUntil;
     }
 
-    private static class Attempt {
-        int count = 0;
-        long lockUntil = 0L;
+    public int getTrackedUserCount() {
+        return userAttempts.size();
+    }
+
+    public int getTrackedIpCount() {
+        return ipAttempts.size();
+    }
+
+    public int getTrackedSubnetCount() {
+        return ipv4Subnets == null ? 0 : ipv4Subnets.size() + ipv6Subnets.size();
+    }
+
+    // addresses moved from the sketch to exact tracking
+    public long getIpSketchPromotionCount() {
+        return ipPromotions.sum();
+    }
+
+    long getIpSketchMemoryBytes() {
+        return ipSketch == null ? 0L : ipSketch.getMemoryBytes();
+    }
+
+    public long getUserLockCount() {
+        return userLocks.sum();
+    }
+
+    public long getIpLockCount() {
+        return ipLocks.sum();
+    }
+
+    public long getSubnetLockCount() {
+        return subnetLocks.sum();
+    }
+
+    // locks cleared early by a successful login
+    public long getUserUnlockCount() {
+        return userUnlocks.sum();
+    }
+
+    public long getIpUnlockCount() {
+        return ipUnlocks.sum();
+    }
+
+    /**
+     * The record of one key, packed into a single long so that it is always written and read whole: either a lock
+     * ({@code LOCKED} set, its end in the time bits) or a count (start of the current window in the time bits, the
+     * failures in it and in the window before in two 10-bit fields). A lock carries no count, since locking starts
+     * the count afresh. Times are epoch milliseconds, which fit the 42 time bits until 2109.
+     * <p>
+     * Written only inside {@code compute} for its key, read without locking.
+     */
+    static final class Attempt {
+        static final int MAX_COUNT = (1 << 10) - 1;
+
+        private static final long TIME_MASK = (1L << 42) - 1;
+        private static final int COUNT_SHIFT = 42;
+        private static final int PREVIOUS_SHIFT = 52;
+        private static final long LOCKED = 1L << 62;
+
+        volatile long state;
+
+        Attempt(long state) {
+            this.state = state;
+        }
+
+        static long locked(long lockUntil) {
+            return LOCKED | (lockUntil & TIME_MASK);
+        }
+
+        static long counting(long windowStart, int count, int previousCount) {
+            return (long) previousCount << PREVIOUS_SHIFT | (long) count << COUNT_SHIFT | (windowStart & TIME_MASK);
+        }
+
+        static boolean isLocked(long state) {
+            return (state & LOCKED) != 0;
+        }
+
+        // end of the lock, or 0 for a count
+        static long lockUntil(long state) {
+            return isLocked(state) ? state & TIME_MASK : 0L;
+        }
+
+        static long windowStart(long state) {
+            return state & TIME_MASK;
+        }
+
+        static int count(long state) {
+            return (int) (state >>> COUNT_SHIFT) & MAX_COUNT;
+        }
+
+        static int previousCount(long state) {
+            return (int) (state >>> PREVIOUS_SHIFT) & MAX_COUNT;
+        }
     }
 }
@@ -0,0 +1,127 @@
+package com.example.ratelimitdemo.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Generic cell rate algorithm: the whole state is the theoretical arrival time (TAT), the clock instant at which
+ * the bucket is full again. A request moves the TAT one emission interval ({@code 1 / refill}) later and is
+ * admitted when that leaves it at most {@code capacity} intervals ahead of now, which admits exactly what a token
+ * bucket with the same capacity and refill rate would, at the cost of one CAS on one {@code long} per decision.
+ */
+final class GcraBucket implements Bucket {
+
+    // slower than one token per ~11.5 days is left to token buckets, as is refill 0 (capacity is all there is)
+    static final double MIN_REFILL_TOKENS_PER_SECOND = 1e-6;
+
+    private static final long MAX_BURST_NANOS = 1L << 61;
+
+    private static final VarHandle TAT;
+
+    static {
+        try {
+            TAT = MethodHandles.lookup().findVarHandle(GcraBucket.class, "tat", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int capacity;
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final MonotonicClock clock;
+
+    @SuppressWarnings("unused") // accessed through TAT
+    private volatile long tat;
+
+    GcraBucket(int capacity, double refillTokensPerSecond, MonotonicClock clock) {
+        if (!supports(capacity, refillTokensPerSecond)) {
+            throw new IllegalArgumentException("GCRA needs capacity >= 0 and refill >= " + MIN_REFILL_TOKENS_PER_SECOND
+                    + " tokens/s: capacity=" + capacity + " refill=" + refillTokensPerSecond);
+        }
+        this.capacity = capacity;
+        this.intervalNanos = Math.max(1L, Math.round(1e9 / refillTokensPerSecond));
+        // capped at ~73 years so TAT arithmetic stays clear of overflow
+        this.burstNanos = capacity > MAX_BURST_NANOS / intervalNanos ? MAX_BURST_NANOS : capacity * intervalNanos;
+        this.clock = clock;
+        this.tat = clock.currentTimeNanos();
+    }
+
+    static boolean supports(int capacity, double refillTokensPerSecond) {
+        return capacity >= 0 && refillTokensPerSecond >= MIN_REFILL_TOKENS_PER_SECOND;
+    }
+
+    @Override
+    public boolean tryConsume(int permits) {
+        if (permits > capacity) {
+            return false;
+        }
+        long increment = permits * intervalNanos;
+        long now = clock.currentTimeNanos();
+        for (;;) {
+            long current = (long) TAT.getVolatile(this);
+            long next = Math.max(current, now) + increment;
+            if (next - now > burstNanos) {
+                return false;
+            }
+            if (TAT.compareAndSet(this, current, next)) {
+                return true;
+            }
+        }
+    }
+
+    // a reservation is a request admitted with the TAT more than the burst ahead of now; it waits out the excess
+    @Override
+    public long waitNanos(int permits) {
+        if (permits > capacity) {
+            return Long.MAX_VALUE;
+        }
+        long now = clock.currentTimeNanos();
+        return Math.max(0L, Math.max((long) TAT.getVolatile(this), now) + permits * intervalNanos - now - burstNanos);
+    }
+
+    @Override
+    public long reserve(int permits) {
+        if (permits > capacity) {
+            return Long.MAX_VALUE;
+        }
+        long increment = permits * intervalNanos;
+        long now = clock.currentTimeNanos();
+        for (;;) {
+            long current = (long) TAT.getVolatile(this);
+            long next = Math.max(current, now) + increment;
+            if (TAT.compareAndSet(this, current, next)) {
+                return Math.max(0L, next - now - burstNanos);
+            }
+        }
+    }
+
+    @Override
+    public void addTokens(double amount) {
+        long credit = (long) (amount * intervalNanos);
+        long now = clock.currentTimeNanos();
+        for (;;) {
+            long current = (long) TAT.getVolatile(this);
+            if (TAT.compareAndSet(this, current, Math.max(now, current - credit))) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public double getTokens() {
+        long ahead = (long) TAT.getVolatile(this) - clock.currentTimeNanos();
+        return ahead <= 0 ? capacity : Math.max(0.0, capacity - (double) ahead / intervalNanos);
+    }
+
+    // a TAT in the past is when the bucket last filled up, close enough to the last access for LRU sampling
+    @Override
+    public long lastAccessEpochMilli() {
+        return (long) TAT.getVolatile(this) / 1_000_000L;
+    }
+
+    @Override
+    public boolean isIdle(long nowEpochMilli, long idleMillis) {
+        return nowEpochMilli - lastAccessEpochMilli() >= idleMillis;
+    }
+}
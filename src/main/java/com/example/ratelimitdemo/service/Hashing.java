@@ -0,0 +1,24 @@
+package com.example.ratelimitdemo.service;
+
+/**
+ * Hash mixing shared by the probabilistic structures in this package.
+ */
+final class Hashing {
+
+    private Hashing() {
+    }
+
+    /**
+     * Spreads a 32-bit hash code over 64 bits (murmur3 fmix64), so that both halves can serve as independent hashes
+     * for double hashing.
+     */
+    static long mix(int hashCode) {
+        long h = hashCode;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
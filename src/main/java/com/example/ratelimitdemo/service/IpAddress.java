@@ -0,0 +1,193 @@
+package com.example.ratelimitdemo.service;
+
+/**
+ * An IPv4 or IPv6 address as a 128-bit number, parsed from its literal without any lookup. The bits are kept most
+ * significant first in {@link #getHigh} and {@link #getLow}; an IPv4 address occupies the top 32 bits of
+ * {@code high}, so that for either family a prefix of length n is the first n bits. IPv4-mapped IPv6 addresses
+ * ({@code ::ffff:a.b.c.d}) parse as the IPv4 address they carry.
+ */
+public final class IpAddress {
+
+    private final long high;
+    private final long low;
+    private final boolean ipv4;
+
+    private IpAddress(long high, long low, boolean ipv4) {
+        this.high = high;
+        this.low = low;
+        this.ipv4 = ipv4;
+    }
+
+    /**
+     * Parses a dotted IPv4 or an IPv6 literal, with an optional {@code %zone} that is ignored. Returns null for
+     * anything else, including host names.
+     */
+    public static IpAddress parse(String literal) {
+        return literal == null ? null : parse(literal, 0, literal.length());
+    }
+
+    /**
+     * Parses the literal in {@code s[from, to)}, as {@link #parse(String)} does, without cutting it out first.
+     */
+    public static IpAddress parse(String s, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        int colon = s.indexOf(':', from);
+        if (colon < 0 || colon >= to) {
+            long value = parseDotted(s, from, to);
+            return value < 0 ? null : new IpAddress(value << 32, 0L, true);
+        }
+        return parseIpv6(s, from, to);
+    }
+
+    public boolean isIpv4() {
+        return ipv4;
+    }
+
+    public int getBitLength() {
+        return ipv4 ? 32 : 128;
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    /**
+     * Whether this address lies in the network of {@code network} with the given prefix length; never for an
+     * address of the other family.
+     */
+    public boolean isInNetwork(IpAddress network, int prefixLength) {
+        return ipv4 == network.ipv4
+                && maskHigh(high, prefixLength) == maskHigh(network.high, prefixLength)
+                && maskLow(low, prefixLength) == maskLow(network.low, prefixLength);
+    }
+
+    /**
+     * The network of this address with the given prefix length, as {@code address/length}.
+     */
+    public String toPrefixString(int length) {
+        return format(maskHigh(high, length), maskLow(low, length)) + "/" + length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof IpAddress)) return false;
+        IpAddress other = (IpAddress) o;
+        return high == other.high && low == other.low && ipv4 == other.ipv4;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(high * 31 + low) ^ (ipv4 ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return format(high, low);
+    }
+
+    private String format(long h, long l) {
+        StringBuilder sb = new StringBuilder(ipv4 ? 15 : 39);
+        if (ipv4) {
+            for (int shift = 56; shift >= 32; shift -= 8) {
+                if (shift < 56) sb.append('.');
+                sb.append((h >>> shift) & 0xFF);
+            }
+            return sb.toString();
+        }
+        for (int group = 0; group < 8; group++) {
+            if (group > 0) sb.append(':');
+            long half = group < 4 ? h : l;
+            sb.append(Long.toHexString((half >>> (48 - 16 * (group & 3))) & 0xFFFF));
+        }
+        return sb.toString();
+    }
+
+    static long maskHigh(long high, int length) {
+        return length >= 64 ? high : length <= 0 ? 0L : high & (-1L << (64 - length));
+    }
+
+    static long maskLow(long low, int length) {
+        return length >= 128 ? low : length <= 64 ? 0L : low & (-1L << (128 - length));
+    }
+
+    // value of the dotted quad in s[from, to), or -1
+    private static long parseDotted(String s, int from, int to) {
+        long value = 0;
+        int parts = 0;
+        int part = -1;
+        for (int i = from; i <= to; i++) {
+            char c = i < to ? s.charAt(i) : '.';
+            if (c == '.') {
+                if (part < 0 || ++parts > 4) return -1;
+                value = value << 8 | part;
+                part = -1;
+            } else if (c >= '0' && c <= '9') {
+                part = part < 0 ? c - '0' : part * 10 + (c - '0');
+                if (part > 255) return -1;
+            } else {
+                return -1;
+            }
+        }
+        return parts == 4 ? value : -1;
+    }
+
+    private static IpAddress parseIpv6(String s, int from, int to) {
+        int end = s.indexOf('%', from);
+        if (end < 0 || end > to) end = to;
+        int[] groups = new int[8];
+        int count = 0;
+        int gap = -1; // index of the group where "::" stands
+        int i = from;
+        if (end - from >= 2 && s.startsWith("::", from)) {
+            gap = 0;
+            i = from + 2;
+        }
+        while (i < end) {
+            int j = i;
+            int value = 0;
+            int digit;
+            while (j < end && j - i < 4 && (digit = Character.digit(s.charAt(j), 16)) >= 0) {
+                value = value << 4 | digit;
+                j++;
+            }
+            if (j < end && s.charAt(j) == '.') {
+                // trailing dotted IPv4 part, two groups' worth
+                long v4 = parseDotted(s, i, end);
+                if (v4 < 0 || count > 6) return null;
+                groups[count++] = (int) (v4 >>> 16);
+                groups[count++] = (int) (v4 & 0xFFFF);
+                break;
+            }
+            if (j == i || count == 8) return null;
+            groups[count++] = value;
+            if (j == end) break;
+            if (s.charAt(j) != ':' || ++j == end) return null;
+            if (s.charAt(j) == ':') {
+                if (gap >= 0) return null;
+                gap = count;
+                j++;
+            }
+            i = j;
+        }
+        if (gap < 0 ? count != 8 : count > 7) return null;
+        long high = 0;
+        long low = 0;
+        int zeros = 8 - count;
+        for (int g = 0, src = 0; g < 8; g++) {
+            int value = gap >= 0 && g >= gap && g < gap + zeros ? 0 : groups[src++];
+            if (g < 4) high = high << 16 | value;
+            else low = low << 16 | value;
+        }
+        if (high == 0 && (low >>> 32) == 0xFFFFL) {
+            return new IpAddress((low & 0xFFFFFFFFL) << 32, 0L, true);
+        }
+        return new IpAddress(high, low, false);
+    }
+}
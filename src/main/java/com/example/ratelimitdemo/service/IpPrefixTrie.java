@@ -0,0 +1,157 @@
+package com.example.ratelimitdemo.service;
+
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Values keyed by network prefix, in a path-compressed binary trie over the 128-bit form of {@link IpAddress}. A
+ * node stands either for a stored prefix or for the point where two stored prefixes diverge, so the trie holds at
+ * most two nodes per value, and a lookup follows one path of at most {@code 128} bits however many prefixes are
+ * stored.
+ * <p>
+ * Lookups take no lock: child links and values are volatile and a node's prefix never changes. Updates and
+ * removals are serialized on the trie and should be infrequent compared to lookups.
+ */
+final class IpPrefixTrie<V> {
+
+    private final Node<V> root = new Node<>(0L, 0L, 0);
+    private int size; // guarded by this
+
+    /**
+     * The value of the longest stored prefix containing the address, or null.
+     */
+    V longestMatch(long high, long low) {
+        V best = null;
+        Node<V> node = root;
+        while (node != null && commonPrefix(node.high, node.low, high, low) >= node.length) {
+            V value = node.value;
+            if (value != null) best = value;
+            if (node.length == 128) break;
+            node = bit(high, low, node.length) == 0 ? node.zero : node.one;
+        }
+        return best;
+    }
+
+    /**
+     * Stores {@code update} applied to the current value of the prefix (null if none) and returns it; like
+     * {@link java.util.Map#compute}, but {@code update} must not return null.
+     */
+    synchronized V compute(long high, long low, int length, UnaryOperator<V> update) {
+        high = IpAddress.maskHigh(high, length);
+        low = IpAddress.maskLow(low, length);
+        Node<V> parent = root;
+        if (length == 0) {
+            return apply(root, update);
+        }
+        while (true) {
+            int side = bit(high, low, parent.length);
+            Node<V> child = side == 0 ? parent.zero : parent.one;
+            if (child == null) {
+                Node<V> leaf = new Node<>(high, low, length);
+                V value = apply(leaf, update);
+                link(parent, side, leaf);
+                return value;
+            }
+            int common = Math.min(commonPrefix(child.high, child.low, high, low), Math.min(length, child.length));
+            if (common == child.length) {
+                if (common == length) {
+                    return apply(child, update);
+                }
+                parent = child;
+                continue;
+            }
+            // the prefix ends inside child's span or leaves it: put a node where they part
+            Node<V> fork = new Node<>(IpAddress.maskHigh(high, common), IpAddress.maskLow(low, common), common);
+            link(fork, bit(child.high, child.low, common), child);
+            Node<V> target = fork;
+            if (common < length) {
+                target = new Node<>(high, low, length);
+                link(fork, bit(high, low, common), target);
+            }
+            V value = apply(target, update);
+            link(parent, side, fork);
+            return value;
+        }
+    }
+
+    /**
+     * Removes the values matching {@code expired} and the nodes no longer needed.
+     *
+     * @return number of values removed
+     */
+    synchronized int removeIf(Predicate<? super V> expired) {
+        int removed = 0;
+        V value = root.value;
+        if (value != null && expired.test(value)) {
+            root.value = null;
+            size--;
+            removed++;
+        }
+        return removed + prune(root, expired);
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    private int prune(Node<V> node, Predicate<? super V> expired) {
+        int removed = 0;
+        for (int side = 0; side < 2; side++) {
+            Node<V> child = side == 0 ? node.zero : node.one;
+            if (child == null) continue;
+            removed += prune(child, expired);
+            V value = child.value;
+            if (value != null && expired.test(value)) {
+                child.value = null;
+                size--;
+                removed++;
+            }
+            if (child.value == null && (child.zero == null || child.one == null)) {
+                link(node, side, child.zero != null ? child.zero : child.one);
+            }
+        }
+        return removed;
+    }
+
+    private V apply(Node<V> node, UnaryOperator<V> update) {
+        V previous = node.value;
+        V value = update.apply(previous);
+        if (value == null) {
+            throw new IllegalArgumentException("update returned null");
+        }
+        if (previous == null) size++;
+        node.value = value;
+        return value;
+    }
+
+    private static <V> void link(Node<V> parent, int side, Node<V> child) {
+        if (side == 0) parent.zero = child;
+        else parent.one = child;
+    }
+
+    private static int bit(long high, long low, int index) {
+        return (int) (index < 64 ? high >>> (63 - index) : low >>> (127 - index)) & 1;
+    }
+
+    private static int commonPrefix(long high1, long low1, long high2, long low2) {
+        long diff = high1 ^ high2;
+        if (diff != 0) return Long.numberOfLeadingZeros(diff);
+        diff = low1 ^ low2;
+        return diff != 0 ? 64 + Long.numberOfLeadingZeros(diff) : 128;
+    }
+
+    private static final class Node<V> {
+        final long high;
+        final long low;
+        final int length;
+        volatile Node<V> zero;
+        volatile Node<V> one;
+        volatile V value;
+
+        Node(long high, long low, int length) {
+            this.high = high;
+            this.low = low;
+            this.length = length;
+        }
+    }
+}
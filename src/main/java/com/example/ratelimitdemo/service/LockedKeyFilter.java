@@ -0,0 +1,88 @@
+package com.example.ratelimitdemo.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Bloom filter of recently locked keys, so that a lockout check can answer "not locked" without a map lookup. A
+ * negative answer is always right; a positive one means the caller has to look the key up.
+ * <p>
+ * A bloom filter cannot forget a key, so it is kept in two generations of {@code periodMillis}: keys are added to
+ * the current one and looked up in both, and when a period ends the older generation is dropped. A key added at t
+ * is therefore found until at least {@code t + periodMillis}, which covers a lock of that length set or extended at
+ * t. Bits are set with atomic operations; a lookup takes no lock.
+ */
+final class LockedKeyFilter {
+
+    private static final int HASHES = 4;
+
+    private final int words;
+    private final int mask;
+    private final long periodMillis;
+    private final AtomicReference<Generations> generations;
+
+    LockedKeyFilter(int bits, long periodMillis, long now) {
+        if (bits < 64 || Integer.bitCount(bits) != 1) {
+            throw new IllegalArgumentException("lock filter needs a power-of-two number of bits >= 64: " + bits);
+        }
+        this.words = bits >>> 6;
+        this.mask = bits - 1;
+        this.periodMillis = Math.max(periodMillis, 1_000L);
+        this.generations = new AtomicReference<>(new Generations(new AtomicLongArray(words), null, now + this.periodMillis));
+    }
+
+    void add(String key, int salt, long now) {
+        AtomicLongArray current = generations(now).current;
+        long h = Hashing.mix(key.hashCode() ^ salt);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (h1 + i * h2) & mask;
+            current.accumulateAndGet(bit >>> 6, 1L << bit, (word, b) -> word | b);
+        }
+    }
+
+    boolean mightContain(String key, int salt, long now) {
+        Generations g = generations(now);
+        long h = Hashing.mix(key.hashCode() ^ salt);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        return contains(g.current, h1, h2) || (g.previous != null && contains(g.previous, h1, h2));
+    }
+
+    long getMemoryBytes() {
+        return 2L * words * Long.BYTES;
+    }
+
+    private boolean contains(AtomicLongArray bits, int h1, int h2) {
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (h1 + i * h2) & mask;
+            if ((bits.get(bit >>> 6) & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    private Generations generations(long now) {
+        Generations g = generations.get();
+        while (now - g.end >= 0) {
+            // after a whole idle period the current generation is too old to keep as well
+            AtomicLongArray previous = now - g.end < periodMillis ? g.current : null;
+            Generations next = new Generations(new AtomicLongArray(words), previous, now + periodMillis);
+            if (generations.compareAndSet(g, next)) return next;
+            g = generations.get();
+        }
+        return g;
+    }
+
+    private static final class Generations {
+        final AtomicLongArray current;
+        final AtomicLongArray previous;
+        final long end;
+
+        Generations(AtomicLongArray current, AtomicLongArray previous, long end) {
+            this.current = current;
+            this.previous = previous;
+            this.end = end;
+        }
+    }
+}
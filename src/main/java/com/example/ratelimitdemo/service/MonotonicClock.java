@@ -0,0 +1,27 @@
+package com.example.ratelimitdemo.service;
+
+/**
+ * Time source for the limiter and lockout hot paths.
+ * <p>
+ * Readings never go backwards, even when the wall clock is stepped. They are anchored to the Unix epoch when the
+ * clock is created, so millisecond readings can still be reported as unlock times; over long uptimes they may
+ * drift from the wall clock by whatever NTP corrects.
+ */
+public interface MonotonicClock {
+
+    /**
+     * Nanoseconds since the Unix epoch, monotonic.
+     */
+    long currentTimeNanos();
+
+    default long currentTimeMillis() {
+        return currentTimeNanos() / 1_000_000L;
+    }
+
+    /**
+     * Shared precise clock for code created outside Spring.
+     */
+    static MonotonicClock system() {
+        return PreciseClock.INSTANCE;
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.ratelimitdemo.service;
+
+/**
+ * {@link System#nanoTime()} offset so that it reads as nanoseconds since the epoch. The offset is taken once per
+ * process, so every instance returns the same readings.
+ */
+public final class PreciseClock implements MonotonicClock {
+
+    static final PreciseClock INSTANCE = new PreciseClock();
+
+    private static final long ORIGIN_NANOS = System.nanoTime();
+    private static final long ORIGIN_EPOCH_NANOS = System.currentTimeMillis() * 1_000_000L;
+
+    @Override
+    public long currentTimeNanos() {
+        return ORIGIN_EPOCH_NANOS + (System.nanoTime() - ORIGIN_NANOS);
+    }
+}
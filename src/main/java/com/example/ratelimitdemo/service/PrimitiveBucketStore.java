@@ -0,0 +1,484 @@
+package com.example.ratelimitdemo.service;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token bucket store for millions of keys, keeping every bucket in two primitive arrays instead of a
+ * {@link TokenBucket}, a map node and a composite String key.
+ * <p>
+ * Keys are 64-bit hashes of the caller's key ({@link #hash}); two keys with the same hash share a bucket, which
+ * for ten million keys happens with a probability of about 3e-6. A bucket is stored as the instant, in nanoseconds
+ * since the store was created, at which it will be back at capacity (GCRA's theoretical arrival time, see
+ * {@link GcraBucket}), so token bucket and GCRA windows share it; its tokens are derived from how far that
+ * instant lies in the future. A bucket that is full carries no information, so absent keys read as full and idle
+ * expiry needs no per-bucket capacity or rate. Refill rates must be positive.
+ * <p>
+ * The table is split into {@value #SEGMENTS} segments, each an open-addressed, linear-probing pair of
+ * {@code long[]} (key, full-at) guarded by the segment monitor and doubled at 3/4 load. That is 16 bytes per slot,
+ * so 21 to 32 bytes per bucket depending on where the load sits between 3/4 and 3/8; BucketStoreFootprintBenchmark
+ * measures 33 bytes at one million keys, against 152 for a {@link TokenBucket} with its map node and key String.
+ * All windows of a multi-window key live in the key's segment, so a multi-window decision takes one lock and is
+ * all-or-nothing.
+ */
+final class PrimitiveBucketStore {
+
+    static final int SEGMENTS = 64;
+    static final int BYTES_PER_SLOT = 2 * Long.BYTES;
+
+    private static final int SEGMENT_SHIFT = Long.SIZE - Integer.numberOfTrailingZeros(SEGMENTS);
+    private static final int INITIAL_SEGMENT_SLOTS = 16;
+    private static final int EVICTION_SAMPLES = 8;
+    private static final int GROUP_MIN_BATCH = 8;
+    private static final long EMPTY = 0L;
+    // as in GcraBucket, so full-at arithmetic stays clear of overflow
+    private static final long MAX_BURST_NANOS = 1L << 61;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final MonotonicClock clock;
+    private final long originNanos;
+    private final int maxEntries;
+    private final EvictionPolicy evictionPolicy;
+    private final long idleNanos;
+    private final int sweepBatch;
+
+    private final AtomicInteger count = new AtomicInteger();
+    private final AtomicInteger sweepSegment = new AtomicInteger();
+    private final LongAdder idleEvictions = new LongAdder();
+    private final LongAdder capacityEvictions = new LongAdder();
+    private final LongAdder untrackedKeys = new LongAdder();
+
+    PrimitiveBucketStore(int maxEntries, EvictionPolicy evictionPolicy, long idleMillis, int sweepBatch, MonotonicClock clock) {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(INITIAL_SEGMENT_SLOTS);
+        }
+        this.clock = clock;
+        this.originNanos = clock.currentTimeNanos();
+        this.maxEntries = maxEntries;
+        this.evictionPolicy = evictionPolicy;
+        this.idleNanos = idleMillis * 1_000_000L;
+        this.sweepBatch = sweepBatch;
+    }
+
+    /**
+     * 64-bit FNV-1a over the chars of {@code key}, finished with a murmur3 mix; never allocates.
+     */
+    static long hash(CharSequence key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    static boolean supports(double refillTokensPerSecond) {
+        return refillTokensPerSecond > 0;
+    }
+
+    boolean tryConsume(long key, int capacity, double refillTokensPerSecond, int permits) {
+        if (permits > capacity) {
+            return false;
+        }
+        long interval = intervalNanos(refillTokensPerSecond);
+        long burst = nanos(capacity, interval);
+        long now = now();
+        Segment s = segment(key);
+        synchronized (s) {
+            return consume(s, nonEmpty(key), now, burst, nanos(permits, interval));
+        }
+    }
+
+    /**
+     * Decides {@code count} requests against one limit, taking each segment lock once for all of its keys.
+     * Requests are grouped by segment with a stable counting sort, so requests for the same key keep their order;
+     * batches too small to repay the sort take the locks one request at a time.
+     * Sets bit {@code i} of {@code admitted} for every granted request and returns how many were granted.
+     */
+    int tryConsumeBatch(long[] keys, int[] permits, int count, int capacity, double refillTokensPerSecond, long[] admitted) {
+        if (count < GROUP_MIN_BATCH) {
+            int granted = 0;
+            for (int i = 0; i < count; i++) {
+                if (tryConsume(keys[i], capacity, refillTokensPerSecond, permits != null ? permits[i] : 1)) {
+                    admitted[i >>> 6] |= 1L << i;
+                    granted++;
+                }
+            }
+            return granted;
+        }
+        int[] segmentStart = new int[SEGMENTS + 1];
+        for (int i = 0; i < count; i++) {
+            segmentStart[segmentIndex(keys[i]) + 1]++;
+        }
+        for (int seg = 0; seg < SEGMENTS; seg++) {
+            segmentStart[seg + 1] += segmentStart[seg];
+        }
+        int[] fill = segmentStart.clone();
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[fill[segmentIndex(keys[i])]++] = i;
+        }
+
+        long interval = intervalNanos(refillTokensPerSecond);
+        long burst = nanos(capacity, interval);
+        long now = now();
+        int granted = 0;
+        for (int seg = 0; seg < SEGMENTS; seg++) {
+            if (segmentStart[seg] == segmentStart[seg + 1]) continue;
+            Segment s = segments[seg];
+            synchronized (s) {
+                for (int j = segmentStart[seg]; j < segmentStart[seg + 1]; j++) {
+                    int i = order[j];
+                    int p = permits != null ? permits[i] : 1;
+                    if (p <= capacity && consume(s, nonEmpty(keys[i]), now, burst, nanos(p, interval))) {
+                        admitted[i >>> 6] |= 1L << i;
+                        granted++;
+                    }
+                }
+            }
+        }
+        return granted;
+    }
+
+    // caller holds the segment monitor
+    private boolean consume(Segment s, long slotKey, long now, long burst, long cost) {
+        int idx = find(s, slotKey);
+        long fullAt = idx >= 0 ? s.fullAt[idx] : now;
+        long next = Math.max(fullAt, now) + cost;
+        if (next - now > burst) {
+            return false;
+        }
+        if (idx >= 0) {
+            s.fullAt[idx] = next;
+            return true;
+        }
+        switch (makeRoom(s, 1)) {
+            case REJECT:
+                return false;
+            case UNTRACKED:
+                return true;
+            default:
+                insert(s, slotKey, next);
+                return true;
+        }
+    }
+
+    /**
+     * Consumes {@code permits} tokens from every window of {@code key} or from none, filling {@code tokens} with
+     * each window's tokens after the decision.
+     */
+    boolean tryConsume(long key, List<RateLimitWindow> windows, int permits, double[] tokens) {
+        long now = now();
+        Segment s = segment(key);
+        synchronized (s) {
+            int missing = 0;
+            boolean allowed = true;
+            for (int i = 0; i < tokens.length; i++) {
+                RateLimitWindow w = windows.get(i);
+                int idx = find(s, windowKey(key, i));
+                if (idx < 0) missing++;
+                long fullAt = idx >= 0 ? s.fullAt[idx] : now;
+                tokens[i] = tokens(fullAt, now, w.getCapacity(), w.getRefillTokensPerSecond());
+                if (tokens[i] < permits) allowed = false;
+            }
+            if (allowed && missing > 0) {
+                Room room = makeRoom(s, missing);
+                if (room == Room.REJECT) {
+                    allowed = false;
+                    for (int i = 0; i < tokens.length; i++) {
+                        if (find(s, windowKey(key, i)) < 0) tokens[i] = 0.0;
+                    }
+                } else if (room == Room.UNTRACKED) {
+                    missing = 0; // decide as if present, store nothing new
+                }
+            }
+            if (!allowed) {
+                return false;
+            }
+            for (int i = 0; i < tokens.length; i++) {
+                RateLimitWindow w = windows.get(i);
+                long slotKey = windowKey(key, i);
+                long cost = nanos(permits, intervalNanos(w.getRefillTokensPerSecond()));
+                int idx = find(s, slotKey);
+                if (idx >= 0) {
+                    s.fullAt[idx] = Math.max(s.fullAt[idx], now) + cost;
+                } else if (missing > 0) {
+                    insert(s, slotKey, now + cost);
+                }
+                tokens[i] -= permits;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Reserves {@code permits} in every window of {@code key} when all of them are due within
+     * {@code maxWaitNanos}, otherwise in none: each full-at instant moves on as for an admitted request, even past
+     * the burst. Returns the nanoseconds until the last window covers the permits, or -1.
+     */
+    long reserve(long key, List<RateLimitWindow> windows, int permits, long maxWaitNanos) {
+        long now = now();
+        Segment s = segment(key);
+        synchronized (s) {
+            int missing = 0;
+            long wait = 0L;
+            for (int i = 0; i < windows.size(); i++) {
+                RateLimitWindow w = windows.get(i);
+                if (permits > w.getCapacity()) {
+                    return -1L;
+                }
+                long interval = intervalNanos(w.getRefillTokensPerSecond());
+                int idx = find(s, windowKey(key, i));
+                if (idx < 0) missing++;
+                long fullAt = idx >= 0 ? s.fullAt[idx] : now;
+                wait = Math.max(wait, Math.max(fullAt, now) + nanos(permits, interval) - now - nanos(w.getCapacity(), interval));
+            }
+            if (wait > maxWaitNanos) {
+                return -1L;
+            }
+            if (missing > 0) {
+                Room room = makeRoom(s, missing);
+                if (room == Room.REJECT) {
+                    return -1L;
+                } else if (room == Room.UNTRACKED) {
+                    missing = 0;
+                }
+            }
+            for (int i = 0; i < windows.size(); i++) {
+                long slotKey = windowKey(key, i);
+                long cost = nanos(permits, intervalNanos(windows.get(i).getRefillTokensPerSecond()));
+                int idx = find(s, slotKey);
+                if (idx >= 0) {
+                    s.fullAt[idx] = Math.max(s.fullAt[idx], now) + cost;
+                } else if (missing > 0) {
+                    insert(s, slotKey, now + cost);
+                }
+            }
+            return wait;
+        }
+    }
+
+    double getTokens(long key, int capacity, double refillTokensPerSecond) {
+        long now = now();
+        Segment s = segment(key);
+        synchronized (s) {
+            int idx = find(s, nonEmpty(key));
+            return idx >= 0 ? tokens(s.fullAt[idx], now, capacity, refillTokensPerSecond) : capacity;
+        }
+    }
+
+    void addTokens(long key, double refillTokensPerSecond, double amount) {
+        long now = now();
+        long credit = (long) (amount * 1e9 / refillTokensPerSecond);
+        Segment s = segment(key);
+        synchronized (s) {
+            int idx = find(s, nonEmpty(key));
+            if (idx >= 0) {
+                s.fullAt[idx] = Math.max(now, s.fullAt[idx] - credit);
+            }
+        }
+    }
+
+    /**
+     * Removes buckets that have been full for at least the idle time from the next {@code sweepBatch} slots of the
+     * next segment in turn.
+     */
+    int sweep() {
+        long now = now();
+        Segment s = segments[Math.floorMod(sweepSegment.getAndIncrement(), SEGMENTS)];
+        int removed = 0;
+        synchronized (s) {
+            int mask = s.keys.length - 1;
+            for (int scanned = 0; scanned < sweepBatch && scanned <= mask; ) {
+                int i = s.sweepIndex;
+                if (s.keys[i] != EMPTY && now - s.fullAt[i] >= idleNanos) {
+                    removeAt(s, i); // a later entry may shift into i, so look at i again
+                    removed++;
+                } else {
+                    s.sweepIndex = (i + 1) & mask;
+                    scanned++;
+                }
+            }
+        }
+        idleEvictions.add(removed);
+        return removed;
+    }
+
+    int size() {
+        return count.get();
+    }
+
+    long getIdleEvictionCount() {
+        return idleEvictions.sum();
+    }
+
+    long getCapacityEvictionCount() {
+        return capacityEvictions.sum();
+    }
+
+    long getUntrackedKeyCount() {
+        return untrackedKeys.sum();
+    }
+
+    private enum Room { OK, REJECT, UNTRACKED }
+
+    // caller holds the segment monitor
+    private Room makeRoom(Segment s, int needed) {
+        if (maxEntries <= 0 || count.get() + needed <= maxEntries) {
+            return Room.OK;
+        }
+        switch (evictionPolicy) {
+            case REJECT:
+                untrackedKeys.increment();
+                return Room.REJECT;
+            case ALLOW:
+                untrackedKeys.increment();
+                return Room.UNTRACKED;
+            default:
+                // only this segment is locked; when it has too little to give, track nothing new rather than lock
+                // another or go over the cap
+                if (s.size < needed) {
+                    untrackedKeys.increment();
+                    return Room.UNTRACKED;
+                }
+                for (int n = 0; n < needed; n++) {
+                    evictOldest(s);
+                    capacityEvictions.increment();
+                }
+                return Room.OK;
+        }
+    }
+
+    // the bucket that has been full the longest among a few slots is the cheapest to forget
+    private void evictOldest(Segment s) {
+        int mask = s.keys.length - 1;
+        int oldest = -1;
+        int seen = 0;
+        for (int scanned = 0; scanned <= mask && seen < EVICTION_SAMPLES; scanned++) {
+            int i = (s.sweepIndex + scanned) & mask;
+            if (s.keys[i] != EMPTY) {
+                if (oldest < 0 || s.fullAt[i] < s.fullAt[oldest]) oldest = i;
+                seen++;
+            }
+        }
+        if (oldest >= 0) removeAt(s, oldest);
+    }
+
+    private int find(Segment s, long slotKey) {
+        int mask = s.keys.length - 1;
+        for (int i = (int) slotKey & mask; ; i = (i + 1) & mask) {
+            long k = s.keys[i];
+            if (k == slotKey) return i;
+            if (k == EMPTY) return -1;
+        }
+    }
+
+    private void insert(Segment s, long slotKey, long fullAt) {
+        if ((s.size + 1) * 4L > s.keys.length * 3L) {
+            resize(s);
+        }
+        int mask = s.keys.length - 1;
+        int i = (int) slotKey & mask;
+        while (s.keys[i] != EMPTY) {
+            i = (i + 1) & mask;
+        }
+        s.keys[i] = slotKey;
+        s.fullAt[i] = fullAt;
+        s.size++;
+        count.incrementAndGet();
+    }
+
+    private void resize(Segment s) {
+        long[] oldKeys = s.keys;
+        long[] oldFullAt = s.fullAt;
+        s.keys = new long[oldKeys.length * 2];
+        s.fullAt = new long[oldKeys.length * 2];
+        s.sweepIndex = 0;
+        int mask = s.keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == EMPTY) continue;
+            int i = (int) oldKeys[j] & mask;
+            while (s.keys[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            s.keys[i] = oldKeys[j];
+            s.fullAt[i] = oldFullAt[j];
+        }
+    }
+
+    // backward-shift deletion keeps probe chains intact without tombstones
+    private void removeAt(Segment s, int hole) {
+        int mask = s.keys.length - 1;
+        int j = hole;
+        for (;;) {
+            j = (j + 1) & mask;
+            long k = s.keys[j];
+            if (k == EMPTY) break;
+            int home = (int) k & mask;
+            boolean reachable = hole <= j ? (home > hole && home <= j) : (home > hole || home <= j);
+            if (!reachable) {
+                s.keys[hole] = k;
+                s.fullAt[hole] = s.fullAt[j];
+                hole = j;
+            }
+        }
+        s.keys[hole] = EMPTY;
+        s.fullAt[hole] = 0L;
+        s.size--;
+        count.decrementAndGet();
+    }
+
+    // burst and cost are whole multiples of one rounded interval, as in GcraBucket, so capacity permits always fit
+    // a full bucket whatever the rate
+    private static long intervalNanos(double refillTokensPerSecond) {
+        return Math.max(1L, Math.round(1e9 / refillTokensPerSecond));
+    }
+
+    private static long nanos(int tokens, long intervalNanos) {
+        return tokens > MAX_BURST_NANOS / intervalNanos ? MAX_BURST_NANOS : tokens * intervalNanos;
+    }
+
+    private static double tokens(long fullAt, long now, int capacity, double refillTokensPerSecond) {
+        if (fullAt <= now) return capacity;
+        return Math.max(0.0, capacity - (fullAt - now) * refillTokensPerSecond / 1e9);
+    }
+
+    private long now() {
+        return clock.currentTimeNanos() - originNanos;
+    }
+
+    private Segment segment(long key) {
+        return segments[segmentIndex(key)];
+    }
+
+    static int segmentIndex(long key) {
+        return (int) (key >>> SEGMENT_SHIFT);
+    }
+
+    private static long windowKey(long key, int window) {
+        return nonEmpty(mix(key + (window + 1) * 0x9E3779B97F4A7C15L));
+    }
+
+    private static long nonEmpty(long key) {
+        return key == EMPTY ? 1L : key;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    private static final class Segment {
+        long[] keys;
+        long[] fullAt;
+        int size;
+        int sweepIndex;
+
+        Segment(int slots) {
+            keys = new long[slots];
+            fullAt = new long[slots];
+        }
+    }
+}
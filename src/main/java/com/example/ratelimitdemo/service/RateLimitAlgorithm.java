@@ -0,0 +1,48 @@
+package com.example.ratelimitdemo.service;
+
+/**
+ * Limiting algorithm behind a {@link RateLimitWindow}. Every algorithm reads the window's capacity and refill rate
+ * the same way, so a policy can switch algorithms without retuning; they differ in state size and in how bursts
+ * across a window boundary are treated.
+ * <p>
+ * Per-key state: {@link #TOKEN_BUCKET} a double and a long (synchronized) or one packed long (atomic);
+ * {@link #GCRA} one long; {@link #SLIDING_WINDOW} one packed long. A limit an algorithm cannot express (refill 0,
+ * or a sliding window above {@link SlidingWindowBucket#MAX_CAPACITY}) falls back to a token bucket.
+ */
+public enum RateLimitAlgorithm {
+
+    /** Tokens refilled continuously; {@code ratelimit.bucket.type} picks the synchronized or lock-free bucket. */
+    TOKEN_BUCKET {
+        @Override
+        Bucket newBucket(int capacity, double refillTokensPerSecond, BucketType bucketType, MonotonicClock clock) {
+            if (bucketType == BucketType.ATOMIC && AtomicTokenBucket.supports(capacity)) {
+                return new AtomicTokenBucket(capacity, refillTokensPerSecond, clock);
+            }
+            return new TokenBucket(capacity, refillTokensPerSecond, clock);
+        }
+    },
+
+    /** Generic cell rate algorithm: token bucket decisions from a single theoretical arrival time. */
+    GCRA {
+        @Override
+        Bucket newBucket(int capacity, double refillTokensPerSecond, BucketType bucketType, MonotonicClock clock) {
+            if (GcraBucket.supports(capacity, refillTokensPerSecond)) {
+                return new GcraBucket(capacity, refillTokensPerSecond, clock);
+            }
+            return TOKEN_BUCKET.newBucket(capacity, refillTokensPerSecond, bucketType, clock);
+        }
+    },
+
+    /** Approximate sliding window counter over the time the refill rate takes to refill the capacity. */
+    SLIDING_WINDOW {
+        @Override
+        Bucket newBucket(int capacity, double refillTokensPerSecond, BucketType bucketType, MonotonicClock clock) {
+            if (SlidingWindowBucket.supports(capacity, refillTokensPerSecond)) {
+                return new SlidingWindowBucket(capacity, refillTokensPerSecond, clock);
+            }
+            return TOKEN_BUCKET.newBucket(capacity, refillTokensPerSecond, bucketType, clock);
+        }
+    };
+
+    abstract Bucket newBucket(int capacity, double refillTokensPerSecond, BucketType bucketType, MonotonicClock clock);
+}
@@ -0,0 +1,81 @@
+package com.example.ratelimitdemo.service;
+
+import java.util.List;
+
+/**
+ * Outcome of {@link RateLimiterService#tryConsume(String, List)}: whether the request was admitted and, for every
+ * window in the order given, the remaining tokens and retry-after seconds taken together with the decision.
+ */
+public final class RateLimitDecision {
+
+    private final boolean allowed;
+    private final List<RateLimitWindow> windows;
+    private final int[] remaining;
+    private final int[] retryAfterSeconds;
+    private final long waitNanos;
+
+    RateLimitDecision(boolean allowed, List<RateLimitWindow> windows, int[] remaining, int[] retryAfterSeconds,
+                      long waitNanos) {
+        this.allowed = allowed;
+        this.windows = windows;
+        this.remaining = remaining;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.waitNanos = waitNanos;
+    }
+
+    static RateLimitDecision of(boolean allowed, List<RateLimitWindow> windows, double[] tokens, int permits) {
+        int[] remaining = new int[tokens.length];
+        int[] retryAfter = new int[tokens.length];
+        long wait = 0L;
+        for (int i = 0; i < tokens.length; i++) {
+            remaining[i] = (int) Math.floor(tokens[i]);
+            RateLimitWindow window = windows.get(i);
+            retryAfter[i] = RateLimiterService.retryAfterSeconds(tokens[i], window.getCapacity(), window.getRefillTokensPerSecond(), permits);
+            wait = Math.max(wait, RateLimiterService.waitNanos(tokens[i], window.getCapacity(), window.getRefillTokensPerSecond(), permits));
+        }
+        return new RateLimitDecision(allowed, windows, remaining, retryAfter, wait);
+    }
+
+    public boolean isAllowed() {
+        return allowed;
+    }
+
+    public int getWindowCount() {
+        return remaining.length;
+    }
+
+    public RateLimitWindow getWindow(int index) {
+        return windows.get(index);
+    }
+
+    public int getRemaining(int index) {
+        return remaining[index];
+    }
+
+    public int getRetryAfterSeconds(int index) {
+        return retryAfterSeconds[index];
+    }
+
+    /**
+     * Longest retry-after across the windows, i.e. when every window can grant again.
+     */
+    public int getRetryAfterSeconds() {
+        int max = 0;
+        for (int retry : retryAfterSeconds) {
+            max = Math.max(max, retry);
+        }
+        return max;
+    }
+
+    /**
+     * Nanoseconds until every window holds the decision's permits again at the current refill rates, or
+     * {@link Long#MAX_VALUE} when some window never will. Unlike the retry-after seconds this is not rounded up.
+     */
+    public long getWaitNanos() {
+        return waitNanos;
+    }
+
+    public RateLimiterService.BucketInfo getBucketInfo(int index) {
+        return new RateLimiterService.BucketInfo(windows.get(index).getCapacity(), remaining[index], retryAfterSeconds[index]);
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.ratelimitdemo.service;
+
+/**
+ * One window of a multi-window limit, e.g. 5 requests per 5 seconds plus 10 per minute, and the algorithm that
+ * enforces it.
+ */
+public final class RateLimitWindow {
+
+    private final String name;
+    private final int capacity;
+    private final double refillTokensPerSecond;
+    private final RateLimitAlgorithm algorithm;
+
+    public RateLimitWindow(String name, int capacity, double refillTokensPerSecond) {
+        this(name, capacity, refillTokensPerSecond, RateLimitAlgorithm.TOKEN_BUCKET);
+    }
+
+    public RateLimitWindow(String name, int capacity, double refillTokensPerSecond, RateLimitAlgorithm algorithm) {
+        this.name = name;
+        this.capacity = capacity;
+        this.refillTokensPerSecond = refillTokensPerSecond;
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Window that refills its whole capacity over {@code windowSeconds}.
+     */
+    public static RateLimitWindow perWindow(String name, int capacity, int windowSeconds) {
+        return perWindow(name, capacity, windowSeconds, RateLimitAlgorithm.TOKEN_BUCKET);
+    }
+
+    public static RateLimitWindow perWindow(String name, int capacity, int windowSeconds, RateLimitAlgorithm algorithm) {
+        return new RateLimitWindow(name, capacity, ((double) capacity) / Math.max(1, windowSeconds), algorithm);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public double getRefillTokensPerSecond() {
+        return refillTokensPerSecond;
+    }
+
+    public RateLimitAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    @Override
+    public String toString() {
+        return name + "(capacity=" + capacity + ", refill=" + refillTokensPerSecond + "/s, " + algorithm + ")";
+    }
+}
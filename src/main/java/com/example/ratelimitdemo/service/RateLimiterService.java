@@ -2,67 +2,453 @@ package com.example.ratelimitdemo.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.time.Instant;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
 @Component
 public class RateLimiterService {
 
     private static final Logger log = LoggerFactory.getLogger(RateLimiterService.class);
 
-    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    // Idle buckets are swept on average every SWEEP_EVERY lookups, SWEEP_BATCH entries at a time.
+    private static final int SWEEP_EVERY = 64;
+    private static final int SWEEP_BATCH = 128;
+    private static final int EVICTION_SAMPLES = 8;
+
+    // Handed out for untracked keys under EvictionPolicy.REJECT: capacity 0, never grants.
+    private static final Bucket REJECTING_BUCKET = new AtomicTokenBucket(0, 0.0, MonotonicClock.system());
+
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final AmortizedSweeper<String, Bucket> sweeper = new AmortizedSweeper<>(buckets, SWEEP_BATCH, SWEEP_EVERY);
+
+    // multi-window keys: one entry holds every window of the key
+    private final ConcurrentHashMap<String, WindowGroup> windowGroups = new ConcurrentHashMap<>();
+    private final AmortizedSweeper<String, WindowGroup> groupSweeper = new AmortizedSweeper<>(windowGroups, SWEEP_BATCH, SWEEP_EVERY);
+
+    // set with ratelimit.store.type=primitive; keys whose refill rate is 0 stay in the maps above
+    private final PrimitiveBucketStore primitiveStore;
+
+    private final BucketType bucketType;
+    private final int maxEntries;
+    private final EvictionPolicy evictionPolicy;
+    private final long idleMillis;
+    private final MonotonicClock clock;
+    private final DecisionLog decisionLog;
+
+    private final LongAdder idleEvictions = new LongAdder();
+    private final LongAdder capacityEvictions = new LongAdder();
+    private final LongAdder untrackedKeys = new LongAdder();
+
+    public RateLimiterService() {
+        this(BucketType.SYNCHRONIZED);
+    }
+
+    public RateLimiterService(BucketType bucketType) {
+        this(bucketType, 1_000_000, EvictionPolicy.LEAST_RECENTLY_USED, 60, MonotonicClock.system());
+    }
+
+    public RateLimiterService(BucketType bucketType, int maxEntries, EvictionPolicy evictionPolicy, int idleSeconds,
+                              MonotonicClock clock) {
+        this(bucketType, StoreType.MAP, maxEntries, evictionPolicy, idleSeconds, clock);
+    }
+
+    public RateLimiterService(BucketType bucketType, StoreType storeType, int maxEntries, EvictionPolicy evictionPolicy,
+                              int idleSeconds, MonotonicClock clock) {
+        this(bucketType, storeType, maxEntries, evictionPolicy, idleSeconds, clock, DecisionLog.disabled());
+    }
+
+    @Autowired
+    public RateLimiterService(@Value("${ratelimit.bucket.type:synchronized}") BucketType bucketType,
+                              @Value("${ratelimit.store.type:map}") StoreType storeType,
+                              @Value("${ratelimit.store.maxEntries:1000000}") int maxEntries,
+                              @Value("${ratelimit.store.evictionPolicy:least-recently-used}") EvictionPolicy evictionPolicy,
+                              @Value("${ratelimit.store.idleSeconds:60}") int idleSeconds,
+                              MonotonicClock clock,
+                              DecisionLog decisionLog) {
+        this.bucketType = bucketType;
+        this.maxEntries = maxEntries;
+        this.evictionPolicy = evictionPolicy;
+        this.idleMillis = idleSeconds * 1000L;
+        this.clock = clock;
+        this.decisionLog = decisionLog;
+        this.primitiveStore = storeType == StoreType.PRIMITIVE
+                ? new PrimitiveBucketStore(maxEntries, evictionPolicy, idleMillis, SWEEP_BATCH, clock)
+                : null;
+        log.info("RateLimiterService initialized with bucketType={} storeType={} maxEntries={} evictionPolicy={} idleSeconds={}",
+                bucketType, storeType, maxEntries, evictionPolicy, idleSeconds);
+    }
 
     public boolean tryConsume(String key, int capacity, double refillTokensPerSecond) {
-        TokenBucket bucket = buckets.computeIfAbsent(key, k -> new TokenBucket(capacity, refillTokensPerSecond));
-        boolean allowed = bucket.tryConsume();
-        log.debug("tryConsume key={} capacity={} refill={} allowed={}", key, capacity, refillTokensPerSecond, allowed);
-        return allowed;
+        return tryConsume(key, capacity, refillTokensPerSecond, 1);
+    }
+
+    /**
+     * Takes {@code permits} tokens from the bucket of {@code key} if all of them are available, so an expensive
+     * call can cost more of the limit than a cheap one. A cost above the capacity can never be granted.
+     */
+    public boolean tryConsume(String key, int capacity, double refillTokensPerSecond, int permits) {
+        checkPermits(permits);
+        boolean allowed;
+        if (usePrimitive(refillTokensPerSecond)) {
+            sweepPrimitiveSometimes();
+            allowed = primitiveStore.tryConsume(PrimitiveBucketStore.hash(key), capacity, refillTokensPerSecond, permits);
+        } else {
+            allowed = bucket(key, capacity, refillTokensPerSecond).tryConsume(permits);
+        }
+        return report(key, allowed);
     }
 
     public boolean tryConsumeComposite(String shortKey, int shortCapacity, double shortRefillTokensPerSecond,
                                        String minuteKey, int minuteCapacity, double minuteRefillTokensPerSecond) {
-        TokenBucket shortBucket = buckets.computeIfAbsent(shortKey, k -> new TokenBucket(shortCapacity, shortRefillTokensPerSecond));
-        TokenBucket minuteBucket = buckets.computeIfAbsent(minuteKey, k -> new TokenBucket(minuteCapacity, minuteRefillTokensPerSecond));
+        return tryConsumeComposite(shortKey, shortCapacity, shortRefillTokensPerSecond,
+                minuteKey, minuteCapacity, minuteRefillTokensPerSecond, 1);
+    }
+
+    public boolean tryConsumeComposite(String shortKey, int shortCapacity, double shortRefillTokensPerSecond,
+                                       String minuteKey, int minuteCapacity, double minuteRefillTokensPerSecond,
+                                       int permits) {
+        checkPermits(permits);
+        return report(shortKey, composite(shortKey, shortCapacity, shortRefillTokensPerSecond,
+                minuteKey, minuteCapacity, minuteRefillTokensPerSecond, permits));
+    }
+
+    private boolean composite(String shortKey, int shortCapacity, double shortRefillTokensPerSecond,
+                              String minuteKey, int minuteCapacity, double minuteRefillTokensPerSecond, int permits) {
+        if (usePrimitive(shortRefillTokensPerSecond) && usePrimitive(minuteRefillTokensPerSecond)) {
+            sweepPrimitiveSometimes();
+            long shortHash = PrimitiveBucketStore.hash(shortKey);
+            if (!primitiveStore.tryConsume(shortHash, shortCapacity, shortRefillTokensPerSecond, permits)) {
+                return false;
+            }
+            if (primitiveStore.tryConsume(PrimitiveBucketStore.hash(minuteKey), minuteCapacity, minuteRefillTokensPerSecond, permits)) {
+                return true;
+            }
+            primitiveStore.addTokens(shortHash, shortRefillTokensPerSecond, permits);
+            return false;
+        }
+        Bucket shortBucket = bucket(shortKey, shortCapacity, shortRefillTokensPerSecond);
+        Bucket minuteBucket = bucket(minuteKey, minuteCapacity, minuteRefillTokensPerSecond);
 
         // First try short bucket
-        boolean shortAllowed = shortBucket.tryConsume();
-        log.debug("tryConsumeComposite shortKey={} allowed={} tokensRemaining={} (capacity={})",
-                shortKey, shortAllowed, shortBucket.peekTokens(), shortCapacity);
-        if (!shortAllowed) {
+        if (!shortBucket.tryConsume(permits)) {
             return false;
         }
-        // Then try minute bucket; if fails, roll back short bucket by returning one token
-        boolean minuteAllowed = minuteBucket.tryConsume();
-        log.debug("tryConsumeComposite minuteKey={} allowed={} tokensRemaining={} (capacity={})",
-                minuteKey, minuteAllowed, minuteBucket.peekTokens(), minuteCapacity);
-        if (minuteAllowed) {
+        // Then try minute bucket; if fails, roll back short bucket by returning the permits
+        if (minuteBucket.tryConsume(permits)) {
             return true;
         }
         // rollback short bucket
-        shortBucket.addTokens(1.0);
-        log.debug("Rolled back shortKey={} after minute bucket fail; tokensNow={}", shortKey, shortBucket.peekTokens());
+        shortBucket.addTokens(permits);
         return false;
     }
 
+    /**
+     * Admits one request against every window of {@code key}, or against none of them, with a single map lookup.
+     * The returned decision carries the remaining tokens and retry-after of each window as seen by this decision,
+     * so callers do not need {@link #getBucketInfo} for headers. The windows of a key are fixed when its first
+     * request arrives; a list with a different number of windows starts the key over.
+     */
+    public RateLimitDecision tryConsume(String key, List<RateLimitWindow> windows) {
+        return tryConsume(key, windows, 1);
+    }
+
+    /**
+     * Like {@link #tryConsume(String, List)} for a request that costs {@code permits} tokens in every window;
+     * the retry-after values then say when that many tokens are available again.
+     */
+    public RateLimitDecision tryConsume(String key, List<RateLimitWindow> windows, int permits) {
+        checkPermits(permits);
+        if (usePrimitive(windows)) {
+            sweepPrimitiveSometimes();
+            double[] tokens = new double[windows.size()];
+            boolean allowed = primitiveStore.tryConsume(PrimitiveBucketStore.hash(key), windows, permits, tokens);
+            return RateLimitDecision.of(report(key, allowed), windows, tokens, permits);
+        }
+        if (groupSweeper.shouldSweep()) {
+            sweepIdleBuckets();
+        }
+        WindowGroup group = windowGroups.get(key);
+        if (group == null || group.size() != windows.size()) {
+            group = insert(windowGroups, key, k -> newWindowGroup(windows), group != null);
+        }
+        RateLimitDecision decision = group != null
+                ? group.tryConsume(windows, permits)
+                : RateLimitDecision.of(false, windows, new double[windows.size()], permits);
+        report(key, decision.isAllowed());
+        return decision;
+    }
+
+    /**
+     * Reserves {@code permits} tokens in every window of {@code key} for a request that waits for them instead of
+     * being rejected, when every window can cover them within {@code maxWaitNanos}: the windows go into debt, so
+     * requests arriving later wait behind the reservation rather than take the refilled tokens first. Returns the
+     * nanoseconds until the permits are covered, after which the request may proceed without another decision, or
+     * -1 when they are not due in time and nothing was taken. A reservation is not reported to the decision log;
+     * the denial that led to it was.
+     */
+    public long reserve(String key, List<RateLimitWindow> windows, int permits, long maxWaitNanos) {
+        checkPermits(permits);
+        if (usePrimitive(windows)) {
+            sweepPrimitiveSometimes();
+            return primitiveStore.reserve(PrimitiveBucketStore.hash(key), windows, permits, maxWaitNanos);
+        }
+        if (groupSweeper.shouldSweep()) {
+            sweepIdleBuckets();
+        }
+        WindowGroup group = windowGroups.get(key);
+        if (group == null || group.size() != windows.size()) {
+            group = insert(windowGroups, key, k -> newWindowGroup(windows), group != null);
+        }
+        return group != null ? group.reserve(permits, maxWaitNanos) : -1L;
+    }
+
+    /**
+     * Decides a batch of requests against one limit in a single call, for callers such as a gateway that collect
+     * requests before deciding them. Bit {@code i} of {@code admitted} is set when {@code keys[i]} was granted
+     * {@code permits[i]} tokens, or one token when {@code permits} is null; {@code admitted} must hold
+     * {@code (count + 63) / 64} words and is not cleared. Requests for the same key are decided in batch order.
+     * Returns the number of requests granted.
+     * <p>
+     * The primitive store takes each segment lock once per batch. The map store still looks keys up one by one,
+     * but checks for a sweep once per batch rather than per key.
+     */
+    public int tryConsumeBatch(String[] keys, int[] permits, int count, int capacity, double refillTokensPerSecond,
+                               long[] admitted) {
+        if (permits != null) {
+            for (int i = 0; i < count; i++) {
+                checkPermits(permits[i]);
+            }
+        }
+        int granted = 0;
+        if (usePrimitive(refillTokensPerSecond)) {
+            sweepPrimitiveSometimes();
+            long[] hashes = new long[count];
+            for (int i = 0; i < count; i++) {
+                hashes[i] = PrimitiveBucketStore.hash(keys[i]);
+            }
+            granted = primitiveStore.tryConsumeBatch(hashes, permits, count, capacity, refillTokensPerSecond, admitted);
+        } else {
+            if (sweeper.shouldSweep()) {
+                sweepIdleBuckets();
+            }
+            for (int i = 0; i < count; i++) {
+                if (lookup(keys[i], capacity, refillTokensPerSecond).tryConsume(permits != null ? permits[i] : 1)) {
+                    admitted[i >>> 6] |= 1L << i;
+                    granted++;
+                }
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            report(keys[i], (admitted[i >>> 6] & (1L << i)) != 0);
+        }
+        return granted;
+    }
+
+    /**
+     * {@link #tryConsumeBatch(String[], int[], int, int, double, long[])} over all of {@code keys}, returning the
+     * granted requests as a bit set.
+     */
+    public BitSet tryConsumeBatch(String[] keys, int[] permits, int capacity, double refillTokensPerSecond) {
+        long[] admitted = new long[(keys.length + 63) >>> 6];
+        tryConsumeBatch(keys, permits, keys.length, capacity, refillTokensPerSecond, admitted);
+        return BitSet.valueOf(admitted);
+    }
+
     // Return snapshot information about the bucket for headers: capacity, remaining tokens (floor), and retry-after seconds.
     public BucketInfo getBucketInfo(String key, int capacity, double refillTokensPerSecond) {
-        TokenBucket bucket = buckets.computeIfAbsent(key, k -> new TokenBucket(capacity, refillTokensPerSecond));
-        double tokens = bucket.getTokens();
+        double tokens;
+        if (usePrimitive(refillTokensPerSecond)) {
+            sweepPrimitiveSometimes();
+            tokens = primitiveStore.getTokens(PrimitiveBucketStore.hash(key), capacity, refillTokensPerSecond);
+        } else {
+            tokens = bucket(key, capacity, refillTokensPerSecond).getTokens();
+        }
         int remaining = (int) Math.floor(tokens);
-        int retryAfterSeconds = 0;
-        if (tokens < 1.0) {
-            double missing = 1.0 - tokens;
-            if (refillTokensPerSecond > 0) {
-                retryAfterSeconds = (int) Math.ceil(missing / refillTokensPerSecond);
-            } else {
-                retryAfterSeconds = Integer.MAX_VALUE;
+        int retryAfterSeconds = retryAfterSeconds(tokens, capacity, refillTokensPerSecond, 1);
+        return new BucketInfo(capacity, remaining, retryAfterSeconds);
+    }
+
+    public int getBucketCount() {
+        return buckets.size() + windowGroups.size() + (primitiveStore != null ? primitiveStore.size() : 0);
+    }
+
+    public long getIdleEvictionCount() {
+        return idleEvictions.sum() + (primitiveStore != null ? primitiveStore.getIdleEvictionCount() : 0L);
+    }
+
+    public long getCapacityEvictionCount() {
+        return capacityEvictions.sum() + (primitiveStore != null ? primitiveStore.getCapacityEvictionCount() : 0L);
+    }
+
+    public long getUntrackedKeyCount() {
+        return untrackedKeys.sum() + (primitiveStore != null ? primitiveStore.getUntrackedKeyCount() : 0L);
+    }
+
+    /**
+     * Removes buckets that have been idle for {@code ratelimit.store.idleSeconds} and are back at capacity, looking
+     * at no more than one sweep batch. Runs automatically from the lookup path; exposed for callers that want
+     * to sweep on a schedule.
+     */
+    public int sweepIdleBuckets() {
+        long now = clock.currentTimeMillis();
+        int removed = sweeper.sweep(b -> b.isIdle(now, idleMillis)) + groupSweeper.sweep(g -> g.isIdle(now, idleMillis));
+        idleEvictions.add(removed);
+        if (primitiveStore != null) {
+            removed += primitiveStore.sweep();
+        }
+        if (removed > 0) {
+            log.debug("Evicted {} idle buckets; buckets now={}", removed, getBucketCount());
+        }
+        return removed;
+    }
+
+    private boolean usePrimitive(double refillTokensPerSecond) {
+        return primitiveStore != null && PrimitiveBucketStore.supports(refillTokensPerSecond);
+    }
+
+    private boolean usePrimitive(List<RateLimitWindow> windows) {
+        if (primitiveStore == null) {
+            return false;
+        }
+        for (int i = 0; i < windows.size(); i++) {
+            RateLimitWindow window = windows.get(i);
+            if (window.getAlgorithm() == RateLimitAlgorithm.SLIDING_WINDOW
+                    || !PrimitiveBucketStore.supports(window.getRefillTokensPerSecond())) return false;
+        }
+        return true;
+    }
+
+    // the primitive store's counterpart of the sweeper.shouldSweep() check in bucket(), at the same cadence
+    private void sweepPrimitiveSometimes() {
+        if (ThreadLocalRandom.current().nextInt(SWEEP_EVERY) == 0) {
+            primitiveStore.sweep();
+        }
+    }
+
+    private Bucket bucket(String key, int capacity, double refillTokensPerSecond) {
+        if (sweeper.shouldSweep()) {
+            sweepIdleBuckets();
+        }
+        return lookup(key, capacity, refillTokensPerSecond);
+    }
+
+    private Bucket lookup(String key, int capacity, double refillTokensPerSecond) {
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = insert(buckets, key, k -> newBucket(capacity, refillTokensPerSecond), false);
+        }
+        return bucket != null ? bucket : REJECTING_BUCKET;
+    }
+
+    /**
+     * Stores a new entry, applying the eviction policy once the store is full. Returns null when the policy
+     * rejects the key, and an untracked entry when it allows it.
+     * <p>
+     * An idle entry is full, so a thread still holding one that gets evicted can at most be granted a token the
+     * replacement entry would have granted as well.
+     */
+    private <E extends StoreEntry> E insert(ConcurrentHashMap<String, E> map, String key, Function<String, E> factory,
+                                            boolean replace) {
+        if (maxEntries > 0 && !replace && getBucketCount() >= maxEntries) {
+            switch (evictionPolicy) {
+                case LEAST_RECENTLY_USED:
+                    if (evictOldest()) {
+                        capacityEvictions.increment();
+                        break;
+                    }
+                    // everything counted is in the primitive store, or was removed under us: stay within the cap
+                    untrackedKeys.increment();
+                    log.debug("Bucket store full ({} entries) and nothing to evict; rejecting untracked key={}", maxEntries, key);
+                    return null;
+                case REJECT:
+                    untrackedKeys.increment();
+                    log.debug("Bucket store full ({} entries); rejecting untracked key={}", maxEntries, key);
+                    return null;
+                case ALLOW:
+                    untrackedKeys.increment();
+                    log.debug("Bucket store full ({} entries); allowing untracked key={}", maxEntries, key);
+                    return factory.apply(key);
             }
         }
-        log.debug("getBucketInfo key={} capacity={} tokens={} remaining={} retryAfter={}", key, capacity, tokens, remaining, retryAfterSeconds);
-        return new BucketInfo(capacity, remaining, retryAfterSeconds);
+        if (replace) {
+            E entry = factory.apply(key);
+            map.put(key, entry);
+            return entry;
+        }
+        return map.computeIfAbsent(key, factory);
+    }
+
+    // the maps share maxEntries, so the oldest sample of either makes room for a key of the other
+    private boolean evictOldest() {
+        Map.Entry<String, Bucket> bucket = sweeper.oldestSample(StoreEntry::lastAccessEpochMilli, EVICTION_SAMPLES);
+        Map.Entry<String, WindowGroup> group = groupSweeper.oldestSample(StoreEntry::lastAccessEpochMilli, EVICTION_SAMPLES);
+        boolean groupFirst = group != null
+                && (bucket == null || group.getValue().lastAccessEpochMilli() < bucket.getValue().lastAccessEpochMilli());
+        return groupFirst
+                ? groupSweeper.remove(group) || sweeper.remove(bucket)
+                : sweeper.remove(bucket) || groupSweeper.remove(group);
+    }
+
+    private WindowGroup newWindowGroup(List<RateLimitWindow> windows) {
+        Bucket[] groupBuckets = new Bucket[windows.size()];
+        boolean lockFree = true;
+        for (int i = 0; i < groupBuckets.length; i++) {
+            RateLimitWindow window = windows.get(i);
+            groupBuckets[i] = window.getAlgorithm().newBucket(window.getCapacity(), window.getRefillTokensPerSecond(), bucketType, clock);
+            lockFree &= !(groupBuckets[i] instanceof TokenBucket);
+        }
+        return new WindowGroup(groupBuckets, lockFree);
+    }
+
+    // seconds until {@code permits} tokens are available; never, when the bucket cannot refill or hold that many
+    static int retryAfterSeconds(double tokens, int capacity, double refillTokensPerSecond, int permits) {
+        if (tokens >= permits) {
+            return 0;
+        }
+        if (refillTokensPerSecond <= 0 || permits > capacity) {
+            return Integer.MAX_VALUE;
+        }
+        return (int) Math.ceil((permits - tokens) / refillTokensPerSecond);
+    }
+
+    // decisions go to the decision log, which summarizes denials per key instead of a log line per request
+    private boolean report(String key, boolean allowed) {
+        if (allowed) {
+            decisionLog.recordAllowed();
+        } else {
+            decisionLog.record(DecisionEvent.RATE_LIMIT_DENIED, key);
+        }
+        return allowed;
+    }
+
+    // retryAfterSeconds without the rounding, for callers that wait for the permits instead of rejecting
+    static long waitNanos(double tokens, int capacity, double refillTokensPerSecond, int permits) {
+        if (tokens >= permits) {
+            return 0L;
+        }
+        if (refillTokensPerSecond <= 0 || permits > capacity) {
+            return Long.MAX_VALUE;
+        }
+        return (long) Math.ceil((permits - tokens) / refillTokensPerSecond * 1e9);
+    }
+
+    private static void checkPermits(int permits) {
+        if (permits < 0) {
+            throw new IllegalArgumentException("permits must not be negative: " + permits);
+        }
+    }
+
+    private Bucket newBucket(int capacity, double refillTokensPerSecond) {
+        return RateLimitAlgorithm.TOKEN_BUCKET.newBucket(capacity, refillTokensPerSecond, bucketType, clock);
     }
 
     public static class BucketInfo {
@@ -88,58 +474,4 @@ public class RateLimiterService {
             return retryAfterSeconds;
         }
     }
-
-    private static class TokenBucket {
-        private final int capacity;
-        private final double refillTokensPerSecond;
-        private double tokens;
-        private long lastRefillEpochMilli;
-
-        TokenBucket(int capacity, double refillTokensPerSecond) {
-            this.capacity = capacity;
-            this.refillTokensPerSecond = refillTokensPerSecond;
-            this.tokens = capacity;
-            this.lastRefillEpochMilli = Instant.now().toEpochMilli();
-        }
-
-        synchronized boolean tryConsume() {
-            refill();
-            if (tokens >= 1.0) {
-                tokens -= 1.0;
-                log.trace("Token consumed; tokens now={} (capacity={})", tokens, capacity);
-                return true;
-            }
-            log.trace("Token not available; tokens={} (capacity={})", tokens, capacity);
-            return false;
-        }
-
-        synchronized void addTokens(double amount) {
-            refill();
-            tokens = Math.min(capacity, tokens + amount);
-            log.trace("Added tokens amount={} tokensNow={} (capacity={})", amount, tokens, capacity);
-        }
-
-        synchronized double getTokens() {
-            refill();
-            return tokens;
-        }
-
-        synchronized double peekTokens() {
-            refill();
-            return tokens;
-        }
-
-        private void refill() {
-            long now = Instant.now().toEpochMilli();
-            long deltaMillis = now - lastRefillEpochMilli;
-            if (deltaMillis <= 0) {
-                log.trace("refill() skipped because deltaMillis<={}, lastRefill={}", deltaMillis, lastRefillEpochMilli);
-                return;
-            }
-            double add = (deltaMillis / 1000.0) * refillTokensPerSecond;
-            tokens = Math.min(capacity, tokens + add);
-            lastRefillEpochMilli = now;
-            log.trace("Refilled tokens by {} over {}ms; tokens={} (capacity={})", add, deltaMillis, tokens, capacity);
-        }
-    }
 }
@@ -0,0 +1,216 @@
+package com.example.ratelimitdemo.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Approximate sliding window counter: requests are counted in fixed windows and the count over the last window
+ * length is estimated as {@code previous * (1 - elapsed fraction of the current window) + current}. The window
+ * length is the time the configured refill rate takes to refill the capacity, so "5 per 5 seconds" admits about
+ * 5 in any 5 second span, without the token bucket's refill arithmetic.
+ * <p>
+ * Both counts and the window index share one CAS-updated {@code long}:
+ * <pre>
+ *   bits 63..32  index of the current window since the bucket was created, wrapping
+ *   bits 31..16  previous window count
+ *   bits 15..0   current window count
+ * </pre>
+ * A reservation is counted in the current window straight away, which holds later requests back until the
+ * estimate has slid down far enough to have admitted it; that instant is at most the end of the next window.
+ */
+final class SlidingWindowBucket implements Bucket {
+
+    static final int MAX_CAPACITY = 0xFFFF;
+
+    private static final long COUNT_MASK = 0xFFFFL;
+    private static final long INDEX_MASK = 0xFFFF_FFFFL;
+
+    private static final VarHandle STATE;
+
+    static {
+        try {
+            STATE = MethodHandles.lookup().findVarHandle(SlidingWindowBucket.class, "state", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int capacity;
+    private final long windowNanos;
+    private final MonotonicClock clock;
+    private final long originNanos;
+
+    @SuppressWarnings("unused") // accessed through STATE
+    private volatile long state;
+
+    private volatile long lastAccessEpochMilli;
+
+    SlidingWindowBucket(int capacity, double refillTokensPerSecond, MonotonicClock clock) {
+        if (!supports(capacity, refillTokensPerSecond)) {
+            throw new IllegalArgumentException("sliding window needs capacity between 0 and " + MAX_CAPACITY
+                    + " and refill >= " + GcraBucket.MIN_REFILL_TOKENS_PER_SECOND + " tokens/s: capacity=" + capacity
+                    + " refill=" + refillTokensPerSecond);
+        }
+        this.capacity = capacity;
+        this.windowNanos = Math.max(1L, Math.round(Math.max(1, capacity) / refillTokensPerSecond * 1e9));
+        this.clock = clock;
+        this.originNanos = clock.currentTimeNanos();
+        this.lastAccessEpochMilli = originNanos / 1_000_000L;
+    }
+
+    static boolean supports(int capacity, double refillTokensPerSecond) {
+        return capacity >= 0 && capacity <= MAX_CAPACITY
+                && refillTokensPerSecond >= GcraBucket.MIN_REFILL_TOKENS_PER_SECOND;
+    }
+
+    @Override
+    public boolean tryConsume(int permits) {
+        if (permits > capacity) {
+            return false;
+        }
+        long elapsed = elapsed(touch());
+        long index = elapsed / windowNanos;
+        for (;;) {
+            long current = (long) STATE.getVolatile(this);
+            long rolled = roll(current, index);
+            if (estimate(rolled, elapsed) + permits > capacity) {
+                return false;
+            }
+            if (STATE.compareAndSet(this, current, rolled + permits)) {
+                return true;
+            }
+        }
+    }
+
+    // hands back requests counted in the current window, e.g. a rolled-back multi-window decision
+    @Override
+    public void addTokens(double amount) {
+        long refund = (long) amount;
+        long index = elapsed(touch()) / windowNanos;
+        for (;;) {
+            long current = (long) STATE.getVolatile(this);
+            long rolled = roll(current, index);
+            long count = Math.max(0L, (rolled & COUNT_MASK) - refund);
+            if (STATE.compareAndSet(this, current, (rolled & ~COUNT_MASK) | count)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public double getTokens() {
+        long elapsed = elapsed(touch());
+        long rolled = roll((long) STATE.getVolatile(this), elapsed / windowNanos);
+        return Math.max(0.0, capacity - estimate(rolled, elapsed));
+    }
+
+    @Override
+    public long waitNanos(int permits) {
+        long elapsed = elapsed(touch());
+        return waitNanos(roll((long) STATE.getVolatile(this), elapsed / windowNanos), elapsed, permits);
+    }
+
+    @Override
+    public long reserve(int permits) {
+        long elapsed = elapsed(touch());
+        long index = elapsed / windowNanos;
+        for (;;) {
+            long current = (long) STATE.getVolatile(this);
+            long rolled = roll(current, index);
+            long wait = waitNanos(rolled, elapsed, permits);
+            if (wait == Long.MAX_VALUE) {
+                return wait;
+            }
+            if (STATE.compareAndSet(this, current, rolled + permits)) {
+                return wait;
+            }
+        }
+    }
+
+    @Override
+    public long lastAccessEpochMilli() {
+        return lastAccessEpochMilli;
+    }
+
+    @Override
+    public boolean isIdle(long nowEpochMilli, long idleMillis) {
+        if (nowEpochMilli - lastAccessEpochMilli < idleMillis) {
+            return false;
+        }
+        long elapsed = elapsed(nowEpochMilli * 1_000_000L);
+        return estimate(roll((long) STATE.getVolatile(this), elapsed / windowNanos), elapsed) == 0.0;
+    }
+
+    /**
+     * Moves the state to window {@code index}: the current count becomes the previous one when exactly one window
+     * passed, and both clear after that. A state already ahead of {@code index} (a racing thread read a later
+     * clock) is left alone.
+     */
+    private static long roll(long state, long index) {
+        long stored = state >>> 32;
+        long passed = (index - stored) & INDEX_MASK;
+        if (passed == 0 || passed > INDEX_MASK / 2) {
+            return state;
+        }
+        long previous = passed == 1 ? state & COUNT_MASK : 0L;
+        return ((index & INDEX_MASK) << 32) | (previous << 16);
+    }
+
+    private double estimate(long state, long elapsed) {
+        long previous = (state >>> 16) & COUNT_MASK;
+        long current = state & COUNT_MASK;
+        if (previous == 0) {
+            return current;
+        }
+        // a state ahead of this reading counts the previous window in full
+        long intoWindow = ((elapsed / windowNanos) & INDEX_MASK) == state >>> 32 ? elapsed % windowNanos : 0L;
+        return previous * (1.0 - (double) intoWindow / windowNanos) + current;
+    }
+
+    // nanoseconds from elapsed until the estimate leaves room for permits: later in this window as the previous
+    // count slides out, or in the next one as this window's count does
+    private long waitNanos(long state, long elapsed, int permits) {
+        long current = state & COUNT_MASK;
+        if (permits > capacity || current + permits > COUNT_MASK) {
+            return Long.MAX_VALUE;
+        }
+        if (estimate(state, elapsed) + permits <= capacity) {
+            return 0L;
+        }
+        long previous = (state >>> 16) & COUNT_MASK;
+        long windowStart = elapsed - elapsed % windowNanos;
+        if (((elapsed / windowNanos) & INDEX_MASK) != state >>> 32) {
+            windowStart += windowNanos; // a state ahead of this reading
+        }
+        long room = capacity - current - permits;
+        long at;
+        if (room >= 0 && previous > 0) {
+            at = windowStart + slideNanos(previous, room);
+        } else {
+            at = windowStart + windowNanos + slideNanos(current, capacity - permits);
+        }
+        return Math.max(1L, at - elapsed);
+    }
+
+    // time into a window until count weighted by what is left of it drops to room
+    private long slideNanos(long count, long room) {
+        if (count <= room) {
+            return 0L;
+        }
+        return (long) Math.ceil((1.0 - (double) room / count) * windowNanos);
+    }
+
+    private long elapsed(long nowNanos) {
+        return Math.max(0L, nowNanos - originNanos);
+    }
+
+    // only write when the millisecond changes so a hot bucket does not store on every call
+    private long touch() {
+        long now = clock.currentTimeNanos();
+        long nowMilli = now / 1_000_000L;
+        if (lastAccessEpochMilli != nowMilli) {
+            lastAccessEpochMilli = nowMilli;
+        }
+        return now;
+    }
+}
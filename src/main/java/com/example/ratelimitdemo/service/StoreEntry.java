@@ -0,0 +1,15 @@
+package com.example.ratelimitdemo.service;
+
+/**
+ * Value kept in one of the {@link RateLimiterService} maps, as seen by the idle sweeper and the LRU eviction.
+ */
+interface StoreEntry {
+
+    long lastAccessEpochMilli();
+
+    /**
+     * True when the entry has been untouched for {@code idleMillis} and is back at capacity. Such an entry
+     * carries no information: dropping it and creating a fresh one later gives the same decisions.
+     */
+    boolean isIdle(long nowEpochMilli, long idleMillis);
+}
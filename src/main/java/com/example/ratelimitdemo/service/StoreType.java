@@ -0,0 +1,11 @@
+package com.example.ratelimitdemo.service;
+
+/**
+ * Bucket store used by {@link RateLimiterService}, selected with {@code ratelimit.store.type}.
+ */
+public enum StoreType {
+    /** One bucket object per key in a ConcurrentHashMap. */
+    MAP,
+    /** Hashed keys and bucket state in segmented primitive arrays; see {@link PrimitiveBucketStore}. */
+    PRIMITIVE
+}
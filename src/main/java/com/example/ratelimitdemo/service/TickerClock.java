@@ -0,0 +1,51 @@
+package com.example.ratelimitdemo.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Coarse clock: a daemon thread copies a {@link PreciseClock} reading into a volatile field every tick, so a
+ * reading costs one volatile load. Readings lag real time by at most about one tick.
+ */
+public final class TickerClock implements MonotonicClock, AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(TickerClock.class);
+
+    private final PreciseClock source = PreciseClock.INSTANCE;
+    private final long tickNanos;
+    private final Thread ticker;
+    private volatile long now;
+    private volatile boolean running = true;
+
+    public TickerClock(long tickMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis must be positive: " + tickMillis);
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.now = source.currentTimeNanos();
+        this.ticker = new Thread(this::tick, "limiter-clock-ticker");
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+        log.info("TickerClock started with tickMillis={}", tickMillis);
+    }
+
+    @Override
+    public long currentTimeNanos() {
+        return now;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(ticker);
+    }
+
+    private void tick() {
+        while (running) {
+            LockSupport.parkNanos(tickNanos);
+            now = source.currentTimeNanos();
+        }
+    }
+}
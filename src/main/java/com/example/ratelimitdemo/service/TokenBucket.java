@@ -0,0 +1,112 @@
+package com.example.ratelimitdemo.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+class TokenBucket implements Bucket {
+    private static final Logger log = LoggerFactory.getLogger(TokenBucket.class);
+
+    // a wait beyond ~73 years is as good as never, and keeps the refill time clear of overflow
+    private static final long MAX_WAIT_NANOS = 1L << 61;
+
+    private final int capacity;
+    private final double refillTokensPerSecond;
+    private final MonotonicClock clock;
+    private double tokens;
+    private long lastRefillNanos;
+
+    TokenBucket(int capacity, double refillTokensPerSecond, MonotonicClock clock) {
+        this.capacity = capacity;
+        this.refillTokensPerSecond = refillTokensPerSecond;
+        this.clock = clock;
+        this.tokens = capacity;
+        this.lastRefillNanos = clock.currentTimeNanos();
+    }
+
+    @Override
+    public synchronized boolean tryConsume(int permits) {
+        refill();
+        if (tokens >= permits) {
+            tokens -= permits;
+            log.trace("Token consumed; tokens now={} (capacity={})", tokens, capacity);
+            return true;
+        }
+        log.trace("Token not available; tokens={} (capacity={})", tokens, capacity);
+        return false;
+    }
+
+    @Override
+    public synchronized void addTokens(double amount) {
+        refill();
+        tokens = Math.min(capacity, tokens + amount);
+        log.trace("Added tokens amount={} tokensNow={} (capacity={})", amount, tokens, capacity);
+    }
+
+    @Override
+    public synchronized double getTokens() {
+        refill();
+        return tokens;
+    }
+
+    @Override
+    public synchronized long waitNanos(int permits) {
+        return waitNanos(refill(), permits);
+    }
+
+    // a reservation the tokens do not cover moves the refill time into the future, so the bucket refills from zero
+    // once it is paid off
+    @Override
+    public synchronized long reserve(int permits) {
+        long now = refill();
+        long wait = waitNanos(now, permits);
+        if (wait == 0L) {
+            tokens -= permits;
+        } else if (wait != Long.MAX_VALUE) {
+            tokens = 0.0;
+            lastRefillNanos = now + wait;
+        }
+        log.trace("Reserved permits={} waitNanos={} (capacity={})", permits, wait, capacity);
+        return wait;
+    }
+
+    // every access refills, so the refill time doubles as the access time
+    @Override
+    public synchronized long lastAccessEpochMilli() {
+        return lastRefillNanos / 1_000_000L;
+    }
+
+    @Override
+    public synchronized boolean isIdle(long nowEpochMilli, long idleMillis) {
+        long idle = nowEpochMilli - lastRefillNanos / 1_000_000L;
+        return idle >= idleMillis && tokens + (idle / 1000.0) * refillTokensPerSecond >= capacity;
+    }
+
+    // caller holds the monitor; tokens are 0 while the refill time is ahead of now
+    private long waitNanos(long now, int permits) {
+        if (tokens >= permits) {
+            return 0L;
+        }
+        if (permits > capacity || refillTokensPerSecond <= 0) {
+            return Long.MAX_VALUE;
+        }
+        double refillNanos = Math.ceil((permits - tokens) / refillTokensPerSecond * 1e9);
+        if (refillNanos > MAX_WAIT_NANOS) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0L, lastRefillNanos - now) + (long) refillNanos;
+    }
+
+    private long refill() {
+        long now = clock.currentTimeNanos();
+        long deltaNanos = now - lastRefillNanos;
+        if (deltaNanos <= 0) {
+            log.trace("refill() skipped because deltaNanos<={}, lastRefill={}", deltaNanos, lastRefillNanos);
+            return now;
+        }
+        double add = (deltaNanos / 1_000_000_000.0) * refillTokensPerSecond;
+        tokens = Math.min(capacity, tokens + add);
+        lastRefillNanos = now;
+        log.trace("Refilled tokens by {} over {}ns; tokens={} (capacity={})", add, deltaNanos, tokens, capacity);
+        return now;
+    }
+}
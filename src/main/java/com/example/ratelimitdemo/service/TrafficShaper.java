@@ -0,0 +1,252 @@
+package com.example.ratelimitdemo.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Traffic shaping for {@link RateLimiterService}: a request the limiter denied, but whose permits are due within
+ * {@code maxWaitMillis}, waits for them instead of being rejected. The permits are reserved when the request is
+ * queued ({@link RateLimiterService#reserve}), so requests arriving later wait behind it rather than take the
+ * refilled tokens first; waiting requests of one key are released in the order they came, each once, at the time
+ * its reservation is covered, and none is decided again.
+ * <p>
+ * A waiting request holds no thread. It is a task on one scheduler thread, which only hands the outcome to the
+ * caller's callback, so an async servlet request can be resumed from there. At most {@code maxQueuePerKey}
+ * requests wait per key; past that they are rejected straight away.
+ */
+@Component
+public class TrafficShaper implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(TrafficShaper.class);
+
+    private final RateLimiterService limiter;
+    private final MonotonicClock clock;
+    private final boolean enabled;
+    private final long maxWaitNanos;
+    private final int maxQueuePerKey;
+
+    // null when shaping is off, so a disabled shaper starts no thread
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    private final ConcurrentHashMap<String, Integer> queueDepth = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final LongAdder parkedCount = new LongAdder();
+    private final LongAdder releasedCount = new LongAdder();
+    private final LongAdder abandonedCount = new LongAdder();
+    private final LongAdder queueFullCount = new LongAdder();
+    private final LongAdder waitTooLongCount = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanosSeen = new AtomicLong();
+
+    public TrafficShaper(RateLimiterService limiter, MonotonicClock clock,
+                         @Value("${ratelimit.shaping.enabled:false}") boolean enabled,
+                         @Value("${ratelimit.shaping.maxWaitMillis:1000}") long maxWaitMillis,
+                         @Value("${ratelimit.shaping.maxQueuePerKey:5}") int maxQueuePerKey) {
+        if (enabled && (maxWaitMillis <= 0 || maxQueuePerKey <= 0)) {
+            throw new IllegalArgumentException("shaping needs maxWaitMillis and maxQueuePerKey > 0: maxWaitMillis="
+                    + maxWaitMillis + " maxQueuePerKey=" + maxQueuePerKey);
+        }
+        this.limiter = limiter;
+        this.clock = clock;
+        this.enabled = enabled;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.maxQueuePerKey = maxQueuePerKey;
+        if (enabled) {
+            scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread t = new Thread(r, "rate-limit-shaper");
+                t.setDaemon(true);
+                return t;
+            });
+        } else {
+            scheduler = null;
+        }
+        log.info("TrafficShaper initialized with enabled={} maxWaitMillis={} maxQueuePerKey={}", enabled, maxWaitMillis, maxQueuePerKey);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+    }
+
+    /**
+     * Takes a place in {@code key}'s queue for a request the limiter denied with {@code denied}, and reserves its
+     * {@code permits} in {@code windows}. Returns null when the request is to be rejected: shaping is off, its
+     * permits are not due within the maximum wait or the queue is full. The caller either {@link Slot#park parks}
+     * the request on the slot or {@link Slot#cancel cancels} it.
+     */
+    public Slot acquire(String key, List<RateLimitWindow> windows, int permits, RateLimitDecision denied) {
+        if (!enabled) {
+            return null;
+        }
+        if (denied.getWaitNanos() > maxWaitNanos) {
+            waitTooLongCount.increment();
+            return null;
+        }
+        if (!enter(key)) {
+            queueFullCount.increment();
+            log.debug("Shaping queue full for key={} maxQueuePerKey={}", key, maxQueuePerKey);
+            return null;
+        }
+        queued.incrementAndGet();
+        long startNanos = clock.currentTimeNanos();
+        // the denial's wait does not count reservations already queued, so only the reservation tells
+        long waitNanos = limiter.reserve(key, windows, permits, maxWaitNanos);
+        if (waitNanos < 0) {
+            leave(key);
+            waitTooLongCount.increment();
+            return null;
+        }
+        return new Slot(key, windows, permits, startNanos, waitNanos);
+    }
+
+    public int getQueuedCount() {
+        return queued.get();
+    }
+
+    public long getParkedCount() {
+        return parkedCount.sum();
+    }
+
+    public long getReleasedCount() {
+        return releasedCount.sum();
+    }
+
+    /** Requests whose client went away while they waited; their reserved permits stay taken. */
+    public long getAbandonedCount() {
+        return abandonedCount.sum();
+    }
+
+    public long getQueueFullCount() {
+        return queueFullCount.sum();
+    }
+
+    public long getWaitTooLongCount() {
+        return waitTooLongCount.sum();
+    }
+
+    /** Time spent waiting by every request that left the queue, released or abandoned. */
+    public long getTotalWaitNanos() {
+        return totalWaitNanos.sum();
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWaitNanosSeen.get();
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    // counts the request into the key's queue unless it is full
+    private boolean enter(String key) {
+        boolean[] entered = new boolean[1];
+        queueDepth.compute(key, (k, depth) -> {
+            int current = depth != null ? depth : 0;
+            if (current >= maxQueuePerKey) {
+                return depth;
+            }
+            entered[0] = true;
+            return current + 1;
+        });
+        return entered[0];
+    }
+
+    private void leave(String key) {
+        queueDepth.computeIfPresent(key, (k, depth) -> depth > 1 ? depth - 1 : null);
+        queued.decrementAndGet();
+    }
+
+    /**
+     * A request's place in its key's queue, holding its reserved permits, from {@link #acquire} until the request
+     * is released, is abandoned or the slot is cancelled.
+     */
+    public final class Slot {
+        private final String key;
+        private final List<RateLimitWindow> windows;
+        private final int permits;
+        private final long startNanos;
+        private final long waitNanos;
+
+        private Consumer<RateLimitDecision> release;
+        private volatile boolean abandoned;
+
+        private Slot(String key, List<RateLimitWindow> windows, int permits, long startNanos, long waitNanos) {
+            this.key = key;
+            this.windows = windows;
+            this.permits = permits;
+            this.startNanos = startNanos;
+            this.waitNanos = waitNanos;
+        }
+
+        /**
+         * Waits until the reserved permits are covered and hands {@code release} the allowed decision.
+         * {@code release} runs on the scheduler thread and must not block.
+         */
+        public void park(Consumer<RateLimitDecision> release) {
+            this.release = release;
+            parkedCount.increment();
+            log.debug("Parking request for key={} waitNanos={}", key, waitNanos);
+            long remaining = startNanos + waitNanos - clock.currentTimeNanos();
+            try {
+                scheduler.schedule(this::finish, Math.max(0L, remaining), TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // shutting down: the permits are reserved, so let the request go now rather than leave it hanging
+                finish();
+            }
+        }
+
+        /**
+         * Gives up the place of a request that could not be parked. Its reserved permits are not handed back.
+         */
+        public void cancel() {
+            leave(key);
+        }
+
+        /**
+         * Marks a parked request whose client is gone: it leaves the queue when its permits are due, and
+         * {@code release} is not called. May be called from any thread, also after the release.
+         */
+        public void abandon() {
+            abandoned = true;
+        }
+
+        private void finish() {
+            long waited = Math.max(0L, clock.currentTimeNanos() - startNanos);
+            totalWaitNanos.add(waited);
+            maxWaitNanosSeen.accumulateAndGet(waited, Math::max);
+            leave(key);
+            if (abandoned) {
+                abandonedCount.increment();
+                log.debug("Dropping abandoned request for key={}", key);
+                return;
+            }
+            releasedCount.increment();
+            log.debug("Releasing shaped request for key={} waitedNanos={}", key, waited);
+            // the reservation drained the windows, so the request goes on with none of their tokens left
+            RateLimitDecision decision = RateLimitDecision.of(true, windows, new double[windows.size()], permits);
+            try {
+                release.accept(decision);
+            } catch (RuntimeException e) {
+                log.error("Releasing shaped request failed for key={}", key, e);
+            }
+        }
+    }
+}
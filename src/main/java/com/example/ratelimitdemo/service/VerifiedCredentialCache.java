@@ -0,0 +1,158 @@
+package com.example.ratelimitdemo.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers credentials that recently passed the password check, so a client repeating its Basic credentials is not
+ * charged a full BCrypt verification on every request.
+ * <p>
+ * Per user the cache holds an HMAC-SHA256, under a key drawn at startup and never stored, of the presented password
+ * together with the stored password hash; the password itself is never kept. Because the stored hash is part of the
+ * MAC, changing a password invalidates the entry without any notification. Entries expire after {@code ttlSeconds};
+ * once {@code maxEntries} users are cached, new ones are verified in full until entries expire.
+ */
+@Component
+public class VerifiedCredentialCache {
+    private static final Logger log = LoggerFactory.getLogger(VerifiedCredentialCache.class);
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int SWEEP_BATCH = 64;
+    private static final int SWEEP_EVERY = 64;
+
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final MonotonicClock clock;
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AmortizedSweeper<String, Entry> sweeper = new AmortizedSweeper<>(entries, SWEEP_BATCH, SWEEP_EVERY);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Autowired
+    public VerifiedCredentialCache(@Value("${security.credentialcache.enabled:true}") boolean enabled,
+                                   @Value("${security.credentialcache.maxEntries:10000}") int maxEntries,
+                                   @Value("${security.credentialcache.ttlSeconds:300}") int ttlSeconds,
+                                   MonotonicClock clock) {
+        if (maxEntries <= 0 || ttlSeconds <= 0) {
+            throw new IllegalArgumentException("credential cache needs maxEntries > 0 and ttlSeconds > 0: maxEntries="
+                    + maxEntries + " ttlSeconds=" + ttlSeconds);
+        }
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.clock = clock;
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+        newMac(); // fail at startup rather than on the first login
+        log.info("VerifiedCredentialCache initialized with enabled={} maxEntries={} ttlSeconds={}", enabled, maxEntries, ttlSeconds);
+    }
+
+    /**
+     * Returns true when {@code password} was verified against {@code encodedPassword} for {@code username} within
+     * the last {@code ttlSeconds}.
+     */
+    public boolean isVerified(String username, CharSequence password, String encodedPassword) {
+        if (!enabled || username == null || password == null || encodedPassword == null) {
+            return false;
+        }
+        Entry entry = entries.get(username);
+        if (entry != null && clock.currentTimeNanos() - entry.expiresAtNanos >= 0) {
+            entries.remove(username, entry);
+            entry = null;
+        }
+        if (entry != null && MessageDigest.isEqual(entry.digest, digest(username, password, encodedPassword))) {
+            hits.increment();
+            return true;
+        }
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * Records that {@code password} just passed the full check against {@code encodedPassword}.
+     */
+    public void put(String username, CharSequence password, String encodedPassword) {
+        if (!enabled || username == null || password == null || encodedPassword == null) {
+            return;
+        }
+        long now = clock.currentTimeNanos();
+        if (sweeper.shouldSweep() || entries.size() >= maxEntries) {
+            sweeper.sweep(e -> now - e.expiresAtNanos >= 0);
+        }
+        Entry entry = new Entry(digest(username, password, encodedPassword), now + ttlNanos);
+        if (entries.size() < maxEntries || entries.containsKey(username)) {
+            entries.put(username, entry);
+        }
+    }
+
+    /**
+     * Forgets {@code username}'s verified credentials, e.g. when the user is locked.
+     */
+    public void invalidate(String username) {
+        if (username != null) {
+            entries.remove(username);
+        }
+    }
+
+    public int getSize() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private byte[] digest(String username, CharSequence password, String encodedPassword) {
+        Mac mac = macs.get();
+        mac.update(username.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        mac.update(encodedPassword.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        return mac.doFinal(password.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    }
+
+    private static final class Entry {
+        final byte[] digest;
+        final long expiresAtNanos;
+
+        Entry(byte[] digest, long expiresAtNanos) {
+            this.digest = digest;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.ratelimitdemo.service;
+
+import java.util.List;
+
+/**
+ * Every window of one key behind a single map entry, so a multi-window decision costs one lookup.
+ * <p>
+ * With synchronized buckets the check-and-consume runs under the group monitor and is atomic. When every bucket
+ * is CAS-based (atomic token bucket, GCRA, sliding window) the group stays lock-free: all windows are checked
+ * before anything is taken, so a denial writes nothing, and only a consumer that loses a race on a later window
+ * hands back the tokens it already took. Either way a request consumes from every window or from none.
+ */
+final class WindowGroup implements StoreEntry {
+
+    private final Bucket[] buckets;
+    private final boolean lockFree;
+
+    WindowGroup(Bucket[] buckets, boolean lockFree) {
+        this.buckets = buckets;
+        this.lockFree = lockFree;
+    }
+
+    int size() {
+        return buckets.length;
+    }
+
+    RateLimitDecision tryConsume(List<RateLimitWindow> windows, int permits) {
+        double[] tokens = new double[buckets.length];
+        boolean allowed;
+        if (lockFree) {
+            allowed = tryConsumeOptimistic(tokens, permits);
+        } else {
+            synchronized (this) {
+                allowed = tryConsumeLocked(tokens, permits);
+            }
+        }
+        return RateLimitDecision.of(allowed, windows, tokens, permits);
+    }
+
+    // caller holds the group monitor, so nothing else touches these buckets in between
+    private boolean tryConsumeLocked(double[] tokens, int permits) {
+        boolean allowed = true;
+        for (int i = 0; i < buckets.length; i++) {
+            tokens[i] = buckets[i].getTokens();
+            if (tokens[i] < permits) allowed = false;
+        }
+        if (allowed) {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i].tryConsume(permits);
+                tokens[i] -= permits;
+            }
+        }
+        return allowed;
+    }
+
+    private boolean tryConsumeOptimistic(double[] tokens, int permits) {
+        boolean available = true;
+        for (int i = 0; i < buckets.length; i++) {
+            tokens[i] = buckets[i].getTokens();
+            if (tokens[i] < permits) available = false;
+        }
+        if (!available) {
+            return false;
+        }
+        for (int i = 0; i < buckets.length; i++) {
+            if (!buckets[i].tryConsume(permits)) {
+                // lost a race for the last tokens of window i
+                for (int j = 0; j < i; j++) {
+                    buckets[j].addTokens(permits);
+                }
+                tokens[i] = buckets[i].getTokens();
+                return false;
+            }
+        }
+        for (int i = 0; i < buckets.length; i++) {
+            tokens[i] -= permits;
+        }
+        return true;
+    }
+
+    /**
+     * Reserves {@code permits} in every window when all of them are due within {@code maxWaitNanos}, otherwise in
+     * none; returns the nanoseconds until the last window covers them, or -1.
+     */
+    long reserve(int permits, long maxWaitNanos) {
+        if (lockFree) {
+            return reserveUnlocked(permits, maxWaitNanos);
+        }
+        synchronized (this) {
+            return reserveUnlocked(permits, maxWaitNanos);
+        }
+    }
+
+    // under the group monitor the waits still hold when the permits are taken; lock-free, a request racing in
+    // between can only make the actual wait a little longer than the one checked
+    private long reserveUnlocked(int permits, long maxWaitNanos) {
+        long wait = 0L;
+        for (Bucket bucket : buckets) {
+            wait = Math.max(wait, bucket.waitNanos(permits));
+        }
+        if (wait > maxWaitNanos) {
+            return -1L;
+        }
+        wait = 0L;
+        for (Bucket bucket : buckets) {
+            wait = Math.max(wait, bucket.reserve(permits));
+        }
+        return wait;
+    }
+
+    @Override
+    public long lastAccessEpochMilli() {
+        return buckets.length == 0 ? 0L : buckets[0].lastAccessEpochMilli();
+    }
+
+    @Override
+    public boolean isIdle(long nowEpochMilli, long idleMillis) {
+        for (Bucket bucket : buckets) {
+            if (!bucket.isIdle(nowEpochMilli, idleMillis)) return false;
+        }
+        return true;
+    }
+}
@@ -1,5 +1,8 @@
 package com.example.ratelimitdemo;
 
+import com.example.ratelimitdemo.config.IpRateLimitFilter;
+import com.example.ratelimitdemo.config.PreAuthFilter;
+import com.example.ratelimitdemo.service.FailedLoginService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -7,6 +10,12 @@ import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.web.FilterChainProxy;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
+
+import jakarta.servlet.Filter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -19,10 +28,40 @@ public class RateLimitIntegrationTest {
     @Autowired
     private TestRestTemplate restTemplate;
 
+    @Autowired
+    private FilterChainProxy filterChainProxy;
+
+    @Autowired
+    private FailedLoginService failedLoginService;
+
     private String url(String path) {
         return "http://localhost:" + port + path;
     }
 
+    @Test
+    void testAddressLimitRunsBeforeCredentialsAreParsed() {
+        List<Filter> filters = filterChainProxy.getFilterChains().get(0).getFilters();
+        int ipLimit = -1, preAuth = -1, basic = -1;
+        for (int i = 0; i < filters.size(); i++) {
+            if (filters.get(i) instanceof IpRateLimitFilter) ipLimit = i;
+            if (filters.get(i) instanceof PreAuthFilter) preAuth = i;
+            if (filters.get(i) instanceof BasicAuthenticationFilter) basic = i;
+        }
+        assertTrue(ipLimit >= 0 && ipLimit < preAuth && preAuth < basic, "filter order " + filters);
+    }
+
+    @Test
+    void testBadPasswordIsCountedByTheLockouts() throws InterruptedException {
+        ResponseEntity<String> resp = restTemplate.withBasicAuth("nobody", "wrong").getForEntity(url("/api/test2"), String.class);
+        assertEquals(HttpStatus.UNAUTHORIZED, resp.getStatusCode());
+        // the failure event is applied by the auth event processor within a few milliseconds
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (failedLoginService.remainingAttemptsForUser("nobody") == 5 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(4, failedLoginService.remainingAttemptsForUser("nobody"));
+    }
+
     @Test
     void testNoRateLimitEndpoint() {
         ResponseEntity<String> resp = restTemplate.withBasicAuth("user", "password").getForEntity(url("/api/test2"), String.class);
@@ -0,0 +1,48 @@
+package com.example.ratelimitdemo.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BasicAuthUsernameTest {
+
+    @Test
+    void testMatchesFullDecodingForAnyUsernameLength() {
+        Random random = new Random(42);
+        String alphabet = "abcXYZ019._-@ éü漢";
+        for (int length = 0; length < 300; length++) {
+            StringBuilder user = new StringBuilder();
+            for (int i = 0; i < length; i++) {
+                user.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String password = "p@ss:word" + length;
+            for (Base64.Encoder encoder : new Base64.Encoder[]{Base64.getEncoder(), Base64.getEncoder().withoutPadding()}) {
+                String withColon = encoder.encodeToString((user + ":" + password).getBytes(StandardCharsets.UTF_8));
+                assertEquals(user.toString(), BasicAuthUsername.extract("Basic " + withColon));
+                String noColon = encoder.encodeToString(user.toString().getBytes(StandardCharsets.UTF_8));
+                assertEquals(user.toString(), BasicAuthUsername.extract("Basic " + noColon));
+            }
+        }
+    }
+
+    @Test
+    void testRejectsWhatTheDecoderRejectsBeforeTheColon() {
+        assertNull(BasicAuthUsername.extract(null));
+        assertNull(BasicAuthUsername.extract("Bearer abc"));
+        assertNull(BasicAuthUsername.extract("Basic not base64!"));
+        assertNull(BasicAuthUsername.extract("Basic YWxpY2UxM")); // a last group of one character
+        assertEquals("alice", BasicAuthUsername.extract("Basic YWxpY2U")); // padding is optional
+        assertNull(BasicAuthUsername.extract("Basic YWxpYw=")); // wrong padding for "alic"
+        assertNull(BasicAuthUsername.extract("Basic YWxpYw==x"));
+        assertEquals("alic", BasicAuthUsername.extract("Basic YWxpYw=="));
+        assertEquals("", BasicAuthUsername.extract("Basic "));
+
+        // decoding stops at the colon: whatever follows is never looked at
+        String encoded = Base64.getEncoder().encodeToString("bob:".getBytes(StandardCharsets.UTF_8));
+        assertEquals("bob", BasicAuthUsername.extract("Basic " + encoded + "!!not base64"));
+    }
+}
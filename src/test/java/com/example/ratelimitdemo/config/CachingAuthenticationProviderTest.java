@@ -0,0 +1,75 @@
+package com.example.ratelimitdemo.config;
+
+import com.example.ratelimitdemo.service.FailedLoginService;
+import com.example.ratelimitdemo.service.MonotonicClock;
+import com.example.ratelimitdemo.service.VerifiedCredentialCache;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingAuthenticationProviderTest {
+
+    /**
+     * Plain-text encoder that counts the checks it is asked for.
+     */
+    private static final class CountingEncoder implements PasswordEncoder {
+        final AtomicInteger matches = new AtomicInteger();
+
+        @Override
+        public String encode(CharSequence rawPassword) {
+            return "plain:" + rawPassword;
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            matches.incrementAndGet();
+            return encode(rawPassword).equals(encodedPassword);
+        }
+    }
+
+    @Test
+    void testRepeatedLoginsSkipTheEncoderUntilPasswordChangeOrLock() {
+        CountingEncoder encoder = new CountingEncoder();
+        InMemoryUserDetailsManager users = new InMemoryUserDetailsManager();
+        users.createUser(User.withUsername("user").password(encoder.encode("password")).roles("USER").build());
+        FailedLoginService failedLoginService = new FailedLoginService(2, 15);
+        VerifiedCredentialCache cache = new VerifiedCredentialCache(true, 10, 60, MonotonicClock.system());
+        CachingAuthenticationProvider provider = new CachingAuthenticationProvider(users, encoder, cache, failedLoginService);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(provider.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("user", "password")).isAuthenticated());
+        }
+        assertEquals(1, encoder.matches.get());
+
+        // wrong passwords always reach the encoder and are never cached
+        for (int i = 0; i < 2; i++) {
+            assertThrows(BadCredentialsException.class,
+                    () -> provider.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("user", "guess")));
+        }
+        assertEquals(3, encoder.matches.get());
+
+        // a changed password changes the stored hash, so the old entry no longer matches
+        users.updateUser(User.withUsername("user").password(encoder.encode("secret")).roles("USER").build());
+        assertThrows(BadCredentialsException.class,
+                () -> provider.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("user", "password")));
+        assertTrue(provider.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("user", "secret")).isAuthenticated());
+        assertEquals(5, encoder.matches.get());
+
+        // a locked user is checked in full on every attempt and loses the cached entry
+        failedLoginService.recordFailed("user", "10.0.0.1");
+        failedLoginService.recordFailed("user", "10.0.0.1");
+        assertTrue(provider.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("user", "secret")).isAuthenticated());
+        assertEquals(6, encoder.matches.get());
+        assertEquals(1, cache.getSize());
+        failedLoginService.recordSuccess("user", "10.0.0.1");
+        assertTrue(provider.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("user", "secret")).isAuthenticated());
+        assertEquals(6, encoder.matches.get());
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.ratelimitdemo.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClientIpResolverTest {
+
+    private static MockHttpServletRequest request(String remoteAddr, String forwardedFor) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(remoteAddr);
+        if (forwardedFor != null) {
+            request.addHeader("X-Forwarded-For", forwardedFor);
+        }
+        return request;
+    }
+
+    @Test
+    void testBelievesOnlyTrustedHops() {
+        ClientIpResolver resolver = new ClientIpResolver("10.0.0.0/8, 2001:db8::/32");
+
+        // the client's own entries at the left are skipped once an untrusted hop is reached
+        assertEquals("203.0.113.5", resolver.resolve(request("10.0.0.1", "198.51.100.1, 203.0.113.5,10.1.1.1")));
+        // a connection from outside the trusted networks is the client, whatever the header says
+        assertEquals("192.0.2.7", resolver.resolve(request("192.0.2.7", "203.0.113.5")));
+        // only trusted hops: the leftmost is the client
+        assertEquals("10.2.2.2", resolver.resolve(request("2001:db8::1", " 10.2.2.2 ,, 10.3.3.3")));
+        // a hop a trusted proxy could not read is kept as written
+        assertEquals("unknown", resolver.resolve(request("10.0.0.1", "203.0.113.5, unknown")));
+        assertEquals("10.0.0.1", resolver.resolve(request("10.0.0.1", null)));
+
+        // addresses come out in one form, so they make one key
+        assertEquals("10.0.0.1", resolver.resolve(request("::ffff:10.0.0.1", null)));
+        assertEquals("2001:db8:0:0:0:0:0:2",
+                resolver.resolve(request("10.0.0.1", "2001:DB8::2%eth0")));
+        assertEquals("not-an-ip", resolver.resolve(request("not-an-ip", "203.0.113.5")));
+
+        ClientIpResolver none = new ClientIpResolver("");
+        assertEquals("127.0.0.1", none.resolve(request("127.0.0.1", "203.0.113.5")));
+
+        assertThrows(IllegalArgumentException.class, () -> new ClientIpResolver("10.0.0.0/33"));
+        assertThrows(IllegalArgumentException.class, () -> new ClientIpResolver("proxy.example.com"));
+    }
+
+    @Test
+    void testResolvesOncePerRequest() {
+        ClientIpResolver resolver = new ClientIpResolver();
+        MockHttpServletRequest request = request("127.0.0.1", "203.0.113.5");
+        assertEquals("203.0.113.5", resolver.resolve(request));
+
+        // later callers get the first answer even if the request changes under them
+        request.setRemoteAddr("192.0.2.1");
+        assertSame(request.getAttribute(ClientIpResolver.ATTRIBUTE), resolver.resolve(request));
+        assertEquals("203.0.113.5", resolver.resolve(request));
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.ratelimitdemo.config;
+
+import com.example.ratelimitdemo.service.RateLimiterService;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IpRateLimitFilterTest {
+
+    // only loopback proxies are trusted, so the 10.0.0.0/8 peers below are clients in their own right
+    private static final ClientIpResolver RESOLVER = new ClientIpResolver("127.0.0.0/8");
+
+    private static MockHttpServletResponse send(IpRateLimitFilter filter, String ip, MockFilterChain chain) throws Exception {
+        return send(filter, ip, "203.0.113.7", chain);
+    }
+
+    private static MockHttpServletResponse send(IpRateLimitFilter filter, String ip, String forwardedFor, MockFilterChain chain) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/test2");
+        request.setRemoteAddr(ip);
+        request.addHeader("X-Forwarded-For", forwardedFor);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    @Test
+    void testAddressAndSubnetLimitsRejectBeforeTheChain() throws Exception {
+        IpRateLimitFilter filter = new IpRateLimitFilter(new RateLimiterService(), RESOLVER, true, 2, 10, 3, 10);
+
+        MockFilterChain first = new MockFilterChain();
+        assertEquals(200, send(filter, "10.0.0.1", first).getStatus());
+        assertNotNull(first.getRequest());
+        assertEquals(200, send(filter, "10.0.0.1", new MockFilterChain()).getStatus());
+
+        MockFilterChain rejected = new MockFilterChain();
+        MockHttpServletResponse denied = send(filter, "10.0.0.1", rejected);
+        assertEquals(429, denied.getStatus());
+        assertEquals("5", denied.getHeader("Retry-After"));
+        // written in place, not through the container's error dispatch
+        assertTrue(denied.isCommitted());
+        assertNull(denied.getErrorMessage());
+        assertEquals("application/json", denied.getContentType());
+        assertEquals("{\"status\":429,\"error\":\"Too Many Requests\"}", denied.getContentAsString());
+        assertNull(rejected.getRequest());
+        assertEquals(1, filter.getDeniedByIpCount());
+
+        // requests rejected per address take no subnet tokens, so 10.0.0.0/24 has one left
+        assertEquals(200, send(filter, "10.0.0.2", new MockFilterChain()).getStatus());
+        assertEquals(429, send(filter, "10.0.0.2", new MockFilterChain()).getStatus());
+        assertEquals(1, filter.getDeniedBySubnetCount());
+        assertEquals(200, send(filter, "10.0.1.1", new MockFilterChain()).getStatus());
+
+        // a forged header from an untrusted peer is ignored: both requests above took 203.0.113.7 no tokens
+        assertEquals(200, send(filter, "10.0.2.1", "203.0.113.7", new MockFilterChain()).getStatus());
+        assertEquals(200, send(filter, "10.0.3.1", "203.0.113.7", new MockFilterChain()).getStatus());
+        // behind a trusted proxy the forwarded client is limited, not the proxy
+        assertEquals(200, send(filter, "127.0.0.1", "10.0.1.1", new MockFilterChain()).getStatus());
+        assertEquals(429, send(filter, "127.0.0.1", "10.0.1.1", new MockFilterChain()).getStatus());
+        assertEquals(2, filter.getDeniedByIpCount());
+        assertEquals(200, send(filter, "127.0.0.1", "198.51.100.1", new MockFilterChain()).getStatus());
+
+        IpRateLimitFilter disabled = new IpRateLimitFilter(new RateLimiterService(), false, 0, 10, 0, 10);
+        assertEquals(200, send(disabled, "10.0.0.1", new MockFilterChain()).getStatus());
+    }
+
+    @Test
+    void testSubnetsAreKeyedByNetwork() throws Exception {
+        IpRateLimitFilter filter = new IpRateLimitFilter(new RateLimiterService(), RESOLVER, true, 10, 10, 2, 10);
+
+        // two spellings of addresses in 2001:db8:0:1::/64, then a third address there
+        assertEquals(200, send(filter, "2001:db8:0:1::42", new MockFilterChain()).getStatus());
+        assertEquals(200, send(filter, "2001:0db8:0000:0001:ffff:0:0:1", new MockFilterChain()).getStatus());
+        assertEquals(429, send(filter, "2001:db8:0:1::7%eth0", new MockFilterChain()).getStatus());
+        assertEquals(200, send(filter, "2001:db8:0:2::1", new MockFilterChain()).getStatus());
+
+        // an IPv4-mapped address is in its IPv4 /24
+        assertEquals(200, send(filter, "::ffff:192.0.2.20", new MockFilterChain()).getStatus());
+        assertEquals(200, send(filter, "192.0.2.21", new MockFilterChain()).getStatus());
+        assertEquals(429, send(filter, "192.0.2.22", new MockFilterChain()).getStatus());
+        assertEquals(2, filter.getDeniedBySubnetCount());
+
+        // an address that is not an IP literal is limited on its own, without a subnet
+        for (int i = 0; i < 3; i++) {
+            assertEquals(200, send(filter, "localhost", new MockFilterChain()).getStatus());
+        }
+    }
+}
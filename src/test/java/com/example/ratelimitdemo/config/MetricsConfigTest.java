@@ -0,0 +1,32 @@
+package com.example.ratelimitdemo.config;
+
+import com.example.ratelimitdemo.service.FailedLoginService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsConfigTest {
+
+    @Test
+    void testBruteForceMetricsReadServiceCounters() {
+        FailedLoginService failedLoginService = new FailedLoginService(2, 15);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        new MetricsConfig().bruteForceMetrics(failedLoginService, new PreAuthFilter(failedLoginService)).bindTo(registry);
+
+        failedLoginService.recordFailed("mallory", "10.0.0.1");
+        failedLoginService.recordFailed("mallory", "10.0.0.2");
+        // a failure past the threshold extends the running lock, it is not a new one
+        failedLoginService.recordFailed("mallory", "10.0.0.2");
+
+        assertEquals(1.0, registry.get("bruteforce.tracked").tag("scope", "user").gauge().value());
+        assertEquals(2.0, registry.get("bruteforce.tracked").tag("scope", "ip").gauge().value());
+        assertEquals(1.0, registry.get("bruteforce.locks").tag("scope", "user").functionCounter().count());
+        assertEquals(1.0, registry.get("bruteforce.locks").tag("scope", "ip").functionCounter().count());
+
+        failedLoginService.recordSuccess("mallory", "10.0.0.1");
+        assertEquals(1.0, registry.get("bruteforce.unlocks").tag("scope", "user").functionCounter().count());
+        assertEquals(0.0, registry.get("bruteforce.unlocks").tag("scope", "ip").functionCounter().count());
+        assertEquals(0.0, registry.get("bruteforce.tracked").tag("scope", "user").gauge().value());
+    }
+}
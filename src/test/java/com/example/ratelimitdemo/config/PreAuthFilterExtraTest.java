@@ -46,7 +46,8 @@ public class PreAuthFilterExtraTest {
         String cred = username + ":pw";
         String encoded = Base64.getEncoder().encodeToString(cred.getBytes(StandardCharsets.UTF_8));
         req.addHeader("Authorization", "Basic " + encoded);
-        req.addHeader("X-Forwarded-For", ip + ", 1.2.3.4");
+        // 10.0.0.2 is a trusted proxy, so the address it forwards for is the client
+        req.addHeader("X-Forwarded-For", ip + ", 10.0.0.2");
 
         filter.doFilter(req, resp, chain);
 
@@ -1,13 +1,25 @@
 package com.example.ratelimitdemo.config;
 
+import com.example.ratelimitdemo.controller.DemoController;
+import com.example.ratelimitdemo.service.MonotonicClock;
 import com.example.ratelimitdemo.service.RateLimiterService;
+import com.example.ratelimitdemo.service.TrafficShaper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockAsyncContext;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.method.HandlerMethod;
 
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -59,5 +71,220 @@ public class RateLimitInterceptorTest {
         assertFalse(allowed);
         assertEquals(429, resp.getStatus());
     }
-}
 
+    @Test
+    void testRouteCostIsTakenFromEveryWindow() throws Exception {
+        RateLimiterService rls = new RateLimiterService();
+        RateLimitInterceptor interceptor = new RateLimitInterceptor(rls);
+        setField(interceptor, "cfgShortCapacity", 5);
+        setField(interceptor, "cfgShortWindowSeconds", 5);
+        setField(interceptor, "cfgMinuteCapacity", 10);
+        setField(interceptor, "cfgMinuteWindowSeconds", 60);
+        Field costs = RateLimitInterceptor.class.getDeclaredField("cfgCosts");
+        costs.setAccessible(true);
+        costs.set(interceptor, "/api/test3=3, /api/export=0");
+
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("carol", "x"));
+
+        MockHttpServletResponse first = new MockHttpServletResponse();
+        assertTrue(interceptor.preHandle(new MockHttpServletRequest("GET", "/api/test3"), first, new Object()));
+        assertEquals("2", first.getHeader("X-RateLimit-Short-Remaining"));
+        assertEquals("7", first.getHeader("X-RateLimit-Minute-Remaining"));
+
+        // 2 tokens left do not cover another call costing 3; other routes keep the default cost of 1
+        MockHttpServletResponse denied = new MockHttpServletResponse();
+        assertFalse(interceptor.preHandle(new MockHttpServletRequest("GET", "/api/test3"), denied, new Object()));
+        assertEquals(429, denied.getStatus());
+        assertEquals("2", denied.getHeader("X-RateLimit-Short-Remaining"));
+        MockHttpServletResponse other = new MockHttpServletResponse();
+        assertTrue(interceptor.preHandle(new MockHttpServletRequest("GET", "/api/test1"), other, new Object()));
+        assertEquals("4", other.getHeader("X-RateLimit-Short-Remaining"));
+
+        assertThrows(IllegalArgumentException.class, () -> RateLimitInterceptor.parseCosts("/api/test3=-1"));
+        assertThrows(IllegalArgumentException.class, () -> RateLimitInterceptor.parseCosts("/api/test3"));
+    }
+
+    @Test
+    void testConfiguredRoutesSetMethodsKeysCostsAndWindows() throws Exception {
+        RateLimiterService rls = new RateLimiterService();
+        RateLimitInterceptor interceptor = new RateLimitInterceptor(rls);
+        setField(interceptor, "cfgShortCapacity", 5);
+        setField(interceptor, "cfgShortWindowSeconds", 5);
+        setField(interceptor, "cfgMinuteCapacity", 10);
+        setField(interceptor, "cfgMinuteWindowSeconds", 60);
+        Field routes = RateLimitInterceptor.class.getDeclaredField("cfgRoutes");
+        routes.setAccessible(true);
+        routes.set(interceptor, "POST /api/orders/* id=orders key=ip cost=2 windows=Burst:4/10; /api/test1");
+
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("dave", "x"));
+
+        MockHttpServletRequest order = new MockHttpServletRequest("POST", "/api/orders/1");
+        order.setRemoteAddr("10.0.0.1");
+        MockHttpServletResponse first = new MockHttpServletResponse();
+        assertTrue(interceptor.preHandle(order, first, new Object()));
+        assertEquals("4", first.getHeader("X-RateLimit-Burst-Limit"));
+        assertEquals("2", first.getHeader("X-RateLimit-Burst-Remaining"));
+        assertNull(first.getHeader("X-RateLimit-Short-Remaining"));
+
+        // every order id and user from the same address shares the one bucket, also when it comes through a proxy
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("erin", "x"));
+        MockHttpServletRequest other = new MockHttpServletRequest("POST", "/api/orders/2");
+        other.setRemoteAddr("127.0.0.1");
+        other.addHeader("X-Forwarded-For", "10.0.0.1");
+        assertTrue(interceptor.preHandle(other, new MockHttpServletResponse(), new Object()));
+        MockHttpServletResponse denied = new MockHttpServletResponse();
+        assertFalse(interceptor.preHandle(other, denied, new Object()));
+        assertEquals(429, denied.getStatus());
+
+        // other methods and unlisted paths bypass the limiter; listed routes default to the short and minute windows
+        assertTrue(interceptor.preHandle(new MockHttpServletRequest("GET", "/api/orders/1"), new MockHttpServletResponse(), new Object()));
+        MockHttpServletResponse test3 = new MockHttpServletResponse();
+        assertTrue(interceptor.preHandle(new MockHttpServletRequest("GET", "/api/test3"), test3, new Object()));
+        assertNull(test3.getHeader("X-RateLimit-Short-Remaining"));
+        MockHttpServletResponse test1 = new MockHttpServletResponse();
+        assertTrue(interceptor.preHandle(new MockHttpServletRequest("GET", "/api/test1"), test1, new Object()));
+        assertEquals("4", test1.getHeader("X-RateLimit-Short-Remaining"));
+
+        RateLimitInterceptor invalid = new RateLimitInterceptor(rls);
+        routes.set(invalid, "/api/test1 key=host");
+        assertThrows(IllegalArgumentException.class,
+                () -> invalid.preHandle(new MockHttpServletRequest("GET", "/api/test1"), new MockHttpServletResponse(), new Object()));
+    }
+
+    @Test
+    void testAnnotatedHandlerMethodsAreLimitedWithoutPathRoutes() throws Exception {
+        RateLimiterService rls = new RateLimiterService();
+        RateLimitInterceptor interceptor = new RateLimitInterceptor(rls);
+        setField(interceptor, "cfgShortCapacity", 2);
+        setField(interceptor, "cfgShortWindowSeconds", 5);
+        setField(interceptor, "cfgMinuteCapacity", 10);
+        setField(interceptor, "cfgMinuteWindowSeconds", 60);
+        Field routes = RateLimitInterceptor.class.getDeclaredField("cfgRoutes");
+        routes.setAccessible(true);
+        routes.set(interceptor, "");
+
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("frank", "x"));
+        DemoController controller = new DemoController();
+
+        // the handler mapping creates a HandlerMethod per request; both share the cached policy and the bucket
+        for (int i = 0; i < 2; i++) {
+            HandlerMethod test1 = new HandlerMethod(controller, "test1", Authentication.class);
+            MockHttpServletResponse resp = new MockHttpServletResponse();
+            assertTrue(interceptor.preHandle(new MockHttpServletRequest("GET", "/api/test1"), resp, test1));
+            assertEquals(String.valueOf(1 - i), resp.getHeader("X-RateLimit-Short-Remaining"));
+        }
+        MockHttpServletResponse denied = new MockHttpServletResponse();
+        assertFalse(interceptor.preHandle(new MockHttpServletRequest("GET", "/api/test1"), denied,
+                new HandlerMethod(controller, "test1", Authentication.class)));
+        assertEquals(429, denied.getStatus());
+
+        // test3 has its own buckets; test2 is not annotated and no route lists it
+        MockHttpServletResponse test3 = new MockHttpServletResponse();
+        assertTrue(interceptor.preHandle(new MockHttpServletRequest("GET", "/api/test3"), test3,
+                new HandlerMethod(controller, "test3", Authentication.class)));
+        assertEquals("1", test3.getHeader("X-RateLimit-Short-Remaining"));
+        HandlerMethod test2 = new HandlerMethod(controller, "test2", Authentication.class);
+        MockHttpServletRequest bypassed = new MockHttpServletRequest("GET", "/api/test2");
+        MockHttpServletResponse resp = new MockHttpServletResponse();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(interceptor.preHandle(bypassed, resp, test2));
+        }
+        assertNull(resp.getHeader("X-RateLimit-Short-Remaining"));
+    }
+
+    @Test
+    void testShapedRequestWaitsInsteadOfRejection() throws Exception {
+        RateLimiterService rls = new RateLimiterService();
+        try (TrafficShaper shaper = new TrafficShaper(rls, MonotonicClock.system(), true, 1000, 5)) {
+            RateLimitInterceptor interceptor = new RateLimitInterceptor(rls, shaper);
+            // 20 per second: the 21st request waits about 50ms
+            setField(interceptor, "cfgShortCapacity", 20);
+            setField(interceptor, "cfgShortWindowSeconds", 1);
+            setField(interceptor, "cfgMinuteCapacity", 100);
+            setField(interceptor, "cfgMinuteWindowSeconds", 60);
+
+            SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("dave", "x"));
+            for (int i = 0; i < 20; i++) {
+                assertTrue(interceptor.preHandle(new MockHttpServletRequest("GET", "/api/test1"), new MockHttpServletResponse(), new Object()));
+            }
+
+            MockHttpServletRequest req = new MockHttpServletRequest("GET", "/api/test1");
+            req.setAsyncSupported(true);
+            MockHttpServletResponse resp = new MockHttpServletResponse();
+            assertFalse(interceptor.preHandle(req, resp, new Object()));
+            assertTrue(req.isAsyncStarted());
+            assertEquals(200, resp.getStatus());
+
+            CountDownLatch dispatched = new CountDownLatch(1);
+            ((MockAsyncContext) req.getAsyncContext()).addDispatchHandler(dispatched::countDown);
+            assertTrue(dispatched.await(5, TimeUnit.SECONDS));
+
+            // the async dispatch is answered with the decision taken on release
+            assertTrue(interceptor.preHandle(req, resp, new Object()));
+            assertEquals("0", resp.getHeader("X-RateLimit-Short-Remaining"));
+            assertNull(req.getAttribute(RateLimitInterceptor.SHAPED_DECISION_ATTRIBUTE));
+            assertEquals(1, shaper.getReleasedCount());
+        }
+    }
+
+    @Test
+    void testShapedRequestOfAGoneClientIsNotDispatched() throws Exception {
+        RateLimiterService rls = new RateLimiterService();
+        try (TrafficShaper shaper = new TrafficShaper(rls, MonotonicClock.system(), true, 1000, 5)) {
+            RateLimitInterceptor interceptor = new RateLimitInterceptor(rls, shaper);
+            setField(interceptor, "cfgShortCapacity", 20);
+            setField(interceptor, "cfgShortWindowSeconds", 1);
+            setField(interceptor, "cfgMinuteCapacity", 100);
+            setField(interceptor, "cfgMinuteWindowSeconds", 60);
+
+            SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("gina", "x"));
+            for (int i = 0; i < 20; i++) {
+                assertTrue(interceptor.preHandle(new MockHttpServletRequest("GET", "/api/test1"), new MockHttpServletResponse(), new Object()));
+            }
+
+            MockHttpServletRequest req = new MockHttpServletRequest("GET", "/api/test1");
+            req.setAsyncSupported(true);
+            assertFalse(interceptor.preHandle(req, new MockHttpServletResponse(), new Object()));
+            MockAsyncContext async = (MockAsyncContext) req.getAsyncContext();
+            CountDownLatch dispatched = new CountDownLatch(1);
+            async.addDispatchHandler(dispatched::countDown);
+
+            // the client disconnects while the request waits: the container reports an error and completes it
+            AsyncEvent event = new AsyncEvent(async, new IOException("Connection reset by peer"));
+            for (AsyncListener listener : async.getListeners()) {
+                listener.onError(event);
+            }
+            async.complete();
+
+            assertFalse(dispatched.await(500, TimeUnit.MILLISECONDS));
+            assertEquals(0, shaper.getQueuedCount());
+            assertEquals(1, shaper.getAbandonedCount());
+            assertEquals(0, shaper.getReleasedCount());
+            assertNull(req.getAttribute(RateLimitInterceptor.SHAPED_DECISION_ATTRIBUTE));
+        }
+    }
+
+    @Test
+    void testDecisionsAreCountedByEndpointAndWindow() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RateLimitInterceptor interceptor = new RateLimitInterceptor(new RateLimiterService(), null, registry);
+        setField(interceptor, "cfgShortCapacity", 2);
+        setField(interceptor, "cfgShortWindowSeconds", 5);
+        setField(interceptor, "cfgMinuteCapacity", 10);
+        setField(interceptor, "cfgMinuteWindowSeconds", 60);
+
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("erin", "x"));
+        for (int i = 0; i < 3; i++) {
+            interceptor.preHandle(new MockHttpServletRequest("GET", "/api/test1"), new MockHttpServletResponse(), new Object());
+        }
+        interceptor.preHandle(new MockHttpServletRequest("GET", "/api/test2"), new MockHttpServletResponse(), new Object());
+
+        assertEquals(2.0, registry.get("ratelimit.requests").tags("endpoint", "/api/test1", "outcome", "allowed").counter().count());
+        assertEquals(1.0, registry.get("ratelimit.requests").tags("endpoint", "/api/test1", "outcome", "denied").counter().count());
+        assertEquals(1.0, registry.get("ratelimit.window.denials").tags("endpoint", "/api/test1", "window", "Short").counter().count());
+        assertEquals(0.0, registry.get("ratelimit.window.denials").tags("endpoint", "/api/test1", "window", "Minute").counter().count());
+        assertEquals(3, registry.get("ratelimit.decision").tag("endpoint", "/api/test1").timer().count());
+        // unlimited routes have no meters
+        assertTrue(registry.find("ratelimit.requests").tag("endpoint", "/api/test2").meters().isEmpty());
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.ratelimitdemo.config;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RouteMatcherTest {
+
+    @Test
+    void testLiteralWildcardAndRestPrecedence() {
+        RouteMatcher<String> matcher = new RouteMatcher<>();
+        matcher.add("/api/test1", null, "test1");
+        matcher.add("/api/*", null, "any");
+        matcher.add("/api/orders/*/items", null, "items");
+        matcher.add("/api/**", null, "rest");
+
+        assertEquals("test1", matcher.match("GET", "/api/test1"));
+        assertEquals("any", matcher.match("GET", "/api/test2"));
+        assertEquals("items", matcher.match("GET", "/api/orders/42/items"));
+        // the literal branch matches nothing below orders/42, so matching backtracks to **
+        assertEquals("rest", matcher.match("GET", "/api/orders/42"));
+        assertEquals("rest", matcher.match("GET", "/api"));
+        assertEquals("rest", matcher.match("GET", "/api/test1/extra"));
+        assertNull(matcher.match("GET", "/other"));
+        assertNull(matcher.match("GET", "/"));
+        assertNull(matcher.match("GET", ""));
+    }
+
+    @Test
+    void testMethodSpecificRoutesFallBackToAnyMethod() {
+        RouteMatcher<String> matcher = new RouteMatcher<>();
+        matcher.add("/api/test1", new String[] {"POST", "PUT"}, "write");
+        matcher.add("/api/test1", null, "read");
+        matcher.add("/api/test3", new String[] {"GET"}, "get-only");
+
+        assertEquals("write", matcher.match("POST", "/api/test1"));
+        assertEquals("write", matcher.match("PUT", "/api/test1"));
+        assertEquals("read", matcher.match("GET", "/api/test1"));
+        assertEquals("read", matcher.match("PROPFIND", "/api/test1"));
+        assertEquals("get-only", matcher.match("GET", "/api/test3"));
+        assertNull(matcher.match("DELETE", "/api/test3"));
+        assertEquals(3, matcher.size());
+    }
+
+    @Test
+    void testManyRoutesGrowTheChildTables() {
+        RouteMatcher<Integer> matcher = new RouteMatcher<>();
+        for (int i = 0; i < 500; i++) {
+            matcher.add("/api/r" + i + "/items", null, i);
+        }
+        for (int i = 0; i < 500; i++) {
+            assertEquals(i, matcher.match("GET", "/api/r" + i + "/items"));
+        }
+        assertNull(matcher.match("GET", "/api/r500/items"));
+        assertNull(matcher.match("GET", "/api/r1"));
+    }
+
+    @Test
+    void testInvalidPatternsAreRejected() {
+        RouteMatcher<String> matcher = new RouteMatcher<>();
+        matcher.add("/api/test1", new String[] {"GET"}, "a");
+        assertThrows(IllegalArgumentException.class, () -> matcher.add("/api/test1", new String[] {"GET"}, "b"));
+        assertThrows(IllegalArgumentException.class, () -> matcher.add("api/test1", null, "b"));
+        assertThrows(IllegalArgumentException.class, () -> matcher.add("/api/**/x", null, "b"));
+        assertThrows(IllegalArgumentException.class, () -> matcher.add("/api/te*", null, "b"));
+        assertThrows(IllegalArgumentException.class, () -> matcher.add("/api/x", new String[] {"FETCH"}, "b"));
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.ratelimitdemo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AtomicTokenBucketTest {
+
+    @Test
+    void testConsumeRefillAndAddTokens() throws Exception {
+        AtomicTokenBucket bucket = new AtomicTokenBucket(2, 0.0, MonotonicClock.system());
+        assertTrue(bucket.tryConsume());
+        assertTrue(bucket.tryConsume());
+        assertFalse(bucket.tryConsume());
+        assertEquals(0.0, bucket.getTokens());
+
+        // rollback path never exceeds capacity
+        bucket.addTokens(5.0);
+        assertEquals(2.0, bucket.getTokens());
+
+        // 0.5 tokens/sec on a small bucket accumulates even when polled often
+        AtomicTokenBucket slow = new AtomicTokenBucket(1, 0.5, MonotonicClock.system());
+        assertTrue(slow.tryConsume());
+        for (int i = 0; i < 25; i++) {
+            slow.getTokens();
+            Thread.sleep(1);
+        }
+        double tokens = slow.getTokens();
+        assertTrue(tokens > 0.0 && tokens < 1.0, "expected fractional refill but was " + tokens);
+    }
+
+    @Test
+    void testZeroAndMaxCapacity() {
+        AtomicTokenBucket empty = new AtomicTokenBucket(0, 1.0, MonotonicClock.system());
+        assertFalse(empty.tryConsume());
+
+        AtomicTokenBucket large = new AtomicTokenBucket(AtomicTokenBucket.MAX_CAPACITY, 0.0, MonotonicClock.system());
+        assertEquals(AtomicTokenBucket.MAX_CAPACITY, large.getTokens());
+        assertTrue(large.tryConsume());
+        assertEquals(AtomicTokenBucket.MAX_CAPACITY - 1, large.getTokens());
+
+        assertFalse(AtomicTokenBucket.supports(AtomicTokenBucket.MAX_CAPACITY + 1));
+        assertThrows(IllegalArgumentException.class, () -> new AtomicTokenBucket(AtomicTokenBucket.MAX_CAPACITY + 1, 0.0, MonotonicClock.system()));
+    }
+
+    @Test
+    void testConcurrentConsumersNeverOvergrant() throws Exception {
+        int capacity = 1000;
+        AtomicTokenBucket bucket = new AtomicTokenBucket(capacity, 0.0, MonotonicClock.system());
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < 500; i++) {
+                    if (bucket.tryConsume()) granted.incrementAndGet();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(capacity, granted.get());
+        assertEquals(0.0, bucket.getTokens());
+    }
+
+    @Test
+    void testServiceUsesAtomicBuckets() {
+        RateLimiterService svc = new RateLimiterService(BucketType.ATOMIC);
+        String key = "atomic:test";
+        assertTrue(svc.tryConsume(key, 2, 0.0));
+        assertTrue(svc.tryConsume(key, 2, 0.0));
+        assertFalse(svc.tryConsume(key, 2, 0.0));
+        assertEquals(0, svc.getBucketInfo(key, 2, 0.0).getRemaining());
+
+        // composite rollback works the same with atomic buckets
+        assertFalse(svc.tryConsumeComposite("a:short", 1, 0.0, "a:minute", 0, 0.0));
+        assertEquals(1, svc.getBucketInfo("a:short", 1, 0.0).getRemaining());
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.ratelimitdemo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuthEventProcessorTest {
+
+    @Test
+    void testBatchesMergeFailuresAndKeepSuccessesInOrder() {
+        AtomicLong nanos = new AtomicLong(1_000_000_000_000L);
+        MonotonicClock clock = nanos::get;
+        FailedLoginService svc = new FailedLoginService(5, 1, clock);
+        AuthEventProcessor processor = new AuthEventProcessor(svc, true, 64, 5, clock, false);
+
+        processor.failed("alice", "10.0.0.1");
+        processor.failed("bob", "10.0.0.2");
+        processor.failed("alice", "10.0.0.1");
+        nanos.addAndGet(2_000_000L);
+        processor.failed("alice", "10.0.0.1");
+        // nothing is seen until the batch is applied
+        assertEquals(5, svc.remainingAttemptsForUser("alice"));
+
+        nanos.addAndGet(3_000_000L);
+        assertEquals(4, processor.drain());
+        assertEquals(2, svc.remainingAttemptsForUser("alice"));
+        assertEquals(4, svc.remainingAttemptsForUser("bob"));
+        assertEquals(4, processor.getAppliedCount());
+        assertEquals(2, processor.getCoalescedCount());
+        assertEquals(5_000_000L, processor.getMaxLagNanos());
+        assertEquals(3 * 5_000_000L + 3_000_000L, processor.getTotalLagNanos());
+
+        // failures before a success are applied before it, those after it count afresh
+        processor.failed("bob", null);
+        processor.succeeded("bob", null);
+        processor.failed("bob", null);
+        processor.failed("bob", null);
+        assertEquals(4, processor.drain());
+        assertEquals(3, svc.remainingAttemptsForUser("bob"));
+
+        // merged failures lock exactly as the same failures one by one
+        for (int i = 0; i < 3; i++) processor.failed("alice", "10.0.0.1");
+        processor.drain();
+        assertTrue(svc.isUserBlocked("alice"));
+        assertTrue(svc.isIpBlocked("10.0.0.1"));
+        assertEquals(1, svc.getUserLockCount());
+        assertEquals(0, processor.getInlineCount());
+
+        // a merged update takes one decision log slot per key, carrying the count
+        DecisionLog decisions = new DecisionLog(true, 16, 10, 10, clock, false);
+        AuthEventProcessor logged = new AuthEventProcessor(new FailedLoginService(5, 1, clock, decisions), true, 64, 5, clock, false);
+        for (int i = 0; i < 3; i++) logged.failed("dan", "10.0.0.3");
+        logged.drain();
+        assertEquals(2, decisions.drain());
+        assertTrue(decisions.flush().contains("login-failed-user total=3 keys=1 top=[dan=3] in last 1s"));
+    }
+
+    @Test
+    void testFullRingAndDirectProcessorApplyOnTheCaller() {
+        FailedLoginService svc = new FailedLoginService(5, 1);
+        AuthEventProcessor processor = new AuthEventProcessor(svc, true, 2, 5, MonotonicClock.system(), false);
+
+        processor.failed("carol", null);
+        processor.failed("carol", null);
+        processor.failed("carol", null);
+        // the third did not fit and was applied at once
+        assertEquals(4, svc.remainingAttemptsForUser("carol"));
+        assertEquals(1, processor.getInlineCount());
+        assertEquals(2, processor.drain());
+        assertEquals(2, svc.remainingAttemptsForUser("carol"));
+
+        AuthEventProcessor direct = AuthEventProcessor.direct(svc);
+        direct.failed("carol", null);
+        assertEquals(1, svc.remainingAttemptsForUser("carol"));
+        direct.succeeded("carol", null);
+        assertEquals(5, svc.remainingAttemptsForUser("carol"));
+        assertEquals(0, direct.getQueuedCount());
+
+        assertThrows(IllegalArgumentException.class, () -> svc.recordFailed("carol", null, 0));
+    }
+}
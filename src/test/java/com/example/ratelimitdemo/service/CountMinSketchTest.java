@@ -0,0 +1,51 @@
+package com.example.ratelimitdemo.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CountMinSketchTest {
+
+    @Test
+    void testEstimatesNeverUndercountAndStayWithinTheErrorBound() {
+        int depth = 4;
+        int width = 4096;
+        CountMinSketch sketch = new CountMinSketch(depth, width);
+        int keys = 20_000;
+        long total = 0;
+        for (int i = 0; i < keys; i++) {
+            // a few heavy hitters and a long tail of one-off addresses
+            int count = 1 + 500 / (i + 1);
+            for (int j = 0; j < count; j++) {
+                sketch.add("10." + (i >> 16) + "." + ((i >> 8) & 0xFF) + "." + (i & 0xFF));
+            }
+            total += count;
+        }
+
+        double bound = Math.E / width * total;
+        int outside = 0;
+        for (int i = 0; i < keys; i++) {
+            int count = 1 + 500 / (i + 1);
+            int estimate = sketch.estimate("10." + (i >> 16) + "." + ((i >> 8) & 0xFF) + "." + (i & 0xFF));
+            assertTrue(estimate >= count);
+            if (estimate - count > bound) outside++;
+        }
+        // the bound holds for all but about e^-depth of the keys
+        assertTrue(outside <= keys * Math.exp(-depth), "outside the bound: " + outside);
+        assertEquals(depth * width * 4L, sketch.getMemoryBytes());
+    }
+
+    @Test
+    void testDecayHalvesCounts() {
+        CountMinSketch sketch = new CountMinSketch(2, 64);
+        for (int i = 0; i < 10; i++) {
+            sketch.add("1.2.3.4");
+        }
+        assertEquals(10, sketch.estimate("1.2.3.4"));
+        sketch.decay();
+        assertEquals(5, sketch.estimate("1.2.3.4"));
+        assertEquals(6, sketch.add("1.2.3.4"));
+
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(4, 1000));
+    }
+}
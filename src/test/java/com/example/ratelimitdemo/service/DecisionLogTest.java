@@ -0,0 +1,94 @@
+package com.example.ratelimitdemo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DecisionLogTest {
+
+    private final AtomicLong nanos = new AtomicLong(1_000_000_000_000L);
+    private final MonotonicClock clock = nanos::get;
+
+    @Test
+    void testSummarizesEventsPerKey() {
+        DecisionLog decisions = new DecisionLog(true, 16, 10, 2, clock, false);
+        for (String key : new String[] {"a", "b", "a", "c", "a", "c"}) {
+            decisions.record(DecisionEvent.RATE_LIMIT_DENIED, key);
+        }
+        decisions.record(DecisionEvent.LOCKED_IP, "10.0.0.1");
+        for (int i = 0; i < 5; i++) {
+            decisions.recordAllowed();
+        }
+        assertEquals(7, decisions.drain());
+        nanos.addAndGet(10_000_000_000L);
+
+        List<String> lines = decisions.flush();
+        assertEquals(List.of(
+                "rate-limit-allowed total=5 dropped-events=0 in last 10s",
+                "rate-limit-denied total=6 keys=3 top=[a=3, c=2] in last 10s",
+                "locked-ip total=1 keys=1 top=[10.0.0.1=1] in last 10s"), lines);
+        // the next interval starts empty
+        assertTrue(decisions.flush().isEmpty());
+    }
+
+    @Test
+    void testFullRingDropsEvents() {
+        DecisionLog decisions = new DecisionLog(true, 4, 10, 10, clock, false);
+        for (int i = 0; i < 6; i++) {
+            decisions.record(DecisionEvent.LOGIN_FAILED_USER, "u" + i);
+        }
+        assertEquals(2, decisions.getDroppedCount());
+        assertEquals(4, decisions.drain());
+        // slots are reused once drained
+        for (int i = 0; i < 4; i++) {
+            decisions.record(DecisionEvent.LOGIN_FAILED_USER, "v" + i);
+        }
+        assertEquals(4, decisions.drain());
+        assertEquals("rate-limit-allowed total=0 dropped-events=2 in last 1s", decisions.flush().get(0));
+
+        // repeats share one slot and are dropped together
+        DecisionLog batched = new DecisionLog(true, 2, 10, 1, clock, false);
+        batched.record(DecisionEvent.LOGIN_FAILED_USER, "w", 3);
+        batched.record(DecisionEvent.LOGIN_FAILED_USER, "x");
+        batched.record(DecisionEvent.LOGIN_FAILED_USER, "y", 2);
+        assertEquals(2, batched.getDroppedCount());
+        assertEquals(2, batched.drain());
+        assertEquals(List.of(
+                "rate-limit-allowed total=0 dropped-events=2 in last 1s",
+                "login-failed-user total=4 keys=2 top=[w=3] in last 1s"), batched.flush());
+
+        DecisionLog.disabled().record(DecisionEvent.BLOCKED_IP, "10.0.0.1");
+        assertEquals(0, DecisionLog.disabled().drain());
+    }
+
+    @Test
+    void testConcurrentProducersLoseNothingButDrops() throws Exception {
+        DecisionLog decisions = new DecisionLog(true, 256, 10, 10, clock, false);
+        int threads = 4;
+        int perThread = 20_000;
+        Thread[] producers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            String key = "k" + t;
+            producers[t] = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    decisions.record(DecisionEvent.RATE_LIMIT_DENIED, key);
+                }
+            });
+            producers[t].start();
+        }
+        long drained = 0;
+        boolean alive = true;
+        while (alive) {
+            drained += decisions.drain();
+            alive = false;
+            for (Thread producer : producers) {
+                alive |= producer.isAlive();
+            }
+        }
+        drained += decisions.drain();
+        assertEquals((long) threads * perThread, drained + decisions.getDroppedCount());
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.ratelimitdemo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FailedLoginServiceConcurrencyTest {
+
+    @Test
+    void testBlockStatusSnapshot() {
+        AtomicLong nanos = new AtomicLong(1_000_000_000_000L);
+        MonotonicClock clock = nanos::get;
+        FailedLoginService svc = new FailedLoginService(3, 1, clock);
+
+        assertSame(BlockStatus.NOT_BLOCKED, svc.blockStatus("carol", "10.0.0.1"));
+        svc.recordFailed("carol", "10.0.0.1");
+        svc.recordFailed("dave", "10.0.0.1");
+        svc.recordFailed("dave", "10.0.0.1");
+
+        // the address is locked, carol still has two attempts left
+        BlockStatus status = svc.blockStatus("carol", "10.0.0.1");
+        assertTrue(status.isBlocked());
+        assertFalse(status.isUserBlocked());
+        assertTrue(status.isIpBlocked());
+        assertEquals(2, status.getRemainingAttempts());
+        assertEquals(60L, status.getLockRemainingSeconds());
+        assertEquals(clock.currentTimeMillis() + 60_000L, status.getUnlockEpochMillis());
+
+        nanos.addAndGet(30_000_000_000L);
+        svc.recordFailed("dave", null);
+        status = svc.blockStatus("dave", "10.0.0.1");
+        assertTrue(status.isUserBlocked());
+        assertEquals(0, status.getRemainingAttempts());
+        assertEquals(60L, status.getLockRemainingSeconds());
+    }
+
+    @Test
+    void testConcurrentFailuresNeverShowATornRecord() throws Exception {
+        AtomicLong nanos = new AtomicLong(1_000_000_000_000L);
+        MonotonicClock clock = nanos::get;
+        int threshold = 3;
+        FailedLoginService svc = new FailedLoginService(threshold, 1, clock);
+        String user = "mallory";
+        String ip = "10.9.8.7";
+
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<String> torn = new AtomicReference<>();
+        int writers = 2;
+        int readers = 2;
+        CountDownLatch done = new CountDownLatch(writers + readers);
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (!stop.get()) {
+                    svc.recordFailed(user, ip);
+                    int action = random.nextInt(16);
+                    if (action == 0) svc.recordSuccess(user, null);
+                    else if (action == 1) svc.recordSuccess(null, ip);
+                    // up to 20 s per step, so locks run out and windows roll while readers look on
+                    nanos.addAndGet(random.nextLong(20_000_000_000L));
+                }
+                done.countDown();
+            }));
+        }
+        for (int r = 0; r < readers; r++) {
+            threads.add(new Thread(() -> {
+                while (!stop.get()) {
+                    BlockStatus status = svc.blockStatus(user, ip);
+                    String problem = check(status, threshold);
+                    if (problem != null) torn.compareAndSet(null, problem + ": " + status);
+                    int remaining = svc.remainingAttemptsForUser(user);
+                    if (remaining < 0 || remaining > threshold) torn.compareAndSet(null, "remaining " + remaining);
+                }
+                done.countDown();
+            }));
+        }
+        threads.forEach(Thread::start);
+        Thread.sleep(1_000L);
+        stop.set(true);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        assertNull(torn.get());
+        assertTrue(svc.getUserLockCount() > 0);
+    }
+
+    // a lock carries no count and a count stays below the threshold, so every snapshot must agree with itself
+    private static String check(BlockStatus status, int threshold) {
+        if (!status.isBlocked()) {
+            return status == BlockStatus.NOT_BLOCKED ? null : "unblocked status with details";
+        }
+        if (status.isUserBlocked() && status.getRemainingAttempts() != 0) {
+            return "locked user with attempts left";
+        }
+        if (!status.isUserBlocked() && (status.getRemainingAttempts() < 1 || status.getRemainingAttempts() > threshold)) {
+            return "unlocked user without attempts left";
+        }
+        // no upper bound: writers move the clock on between a reader's clock read and its record reads
+        if (status.getLockRemainingSeconds() < 1 || status.getUnlockEpochMillis() <= 0) {
+            return "lock without a running end";
+        }
+        return null;
+    }
+}
@@ -20,10 +20,10 @@ public class FailedLoginServiceReflectionLockTest {
         java.util.Map<String, Object> map = (java.util.Map<String, Object>) field.get(svc);
         Object attempt = map.get(user);
         assertNotNull(attempt);
-        Field lockUntil = attempt.getClass().getDeclaredField("lockUntil");
-        lockUntil.setAccessible(true);
+        Field state = attempt.getClass().getDeclaredField("state");
+        state.setAccessible(true);
         long future = System.currentTimeMillis() + 60_000L;
-        lockUntil.setLong(attempt, future);
+        state.setLong(attempt, FailedLoginService.Attempt.locked(future));
 
         assertTrue(svc.isUserBlocked(user));
     }
@@ -0,0 +1,42 @@
+package com.example.ratelimitdemo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FailedLoginServiceSketchTest {
+
+    @Test
+    void testOneOffAddressesStayInTheSketch() {
+        AtomicLong nanos = new AtomicLong(1_000_000_000_000L);
+        MonotonicClock clock = nanos::get;
+        FailedLoginService svc = new FailedLoginService(5, 15, 15, clock, DecisionLog.disabled(), true, 4, 1 << 16, 3);
+
+        for (int i = 0; i < 50_000; i++) {
+            svc.recordFailed(null, "10." + (i >> 16) + "." + ((i >> 8) & 0xFF) + "." + (i & 0xFF));
+        }
+        // a record is only kept for an address the sketch overestimates, whatever the number of addresses
+        assertTrue(svc.getTrackedIpCount() < 50, "tracked: " + svc.getTrackedIpCount());
+        assertEquals(4L * (1 << 16) * 4, svc.getIpSketchMemoryBytes());
+
+        String attacker = "203.0.113.7";
+        for (int i = 1; i < 5; i++) {
+            svc.recordFailed(null, attacker);
+            assertFalse(svc.isIpBlocked(attacker));
+        }
+        svc.recordFailed(null, attacker);
+        assertTrue(svc.isIpBlocked(attacker));
+        assertTrue(svc.getIpSketchPromotionCount() >= 1);
+    }
+
+    @Test
+    void testPromoteAtMustBeBelowTheThreshold() {
+        MonotonicClock clock = MonotonicClock.system();
+        assertThrows(IllegalArgumentException.class,
+                () -> new FailedLoginService(3, 15, 15, clock, DecisionLog.disabled(), true, 4, 1024, 3));
+        assertThrows(IllegalArgumentException.class,
+                () -> new FailedLoginService(3, 15, 15, clock, DecisionLog.disabled(), true, 4, 1000, 2));
+    }
+}
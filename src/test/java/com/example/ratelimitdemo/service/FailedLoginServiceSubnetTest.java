@@ -0,0 +1,45 @@
+package com.example.ratelimitdemo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FailedLoginServiceSubnetTest {
+
+    @Test
+    void testRotatingThroughANetworkLocksTheNetwork() {
+        AtomicLong nanos = new AtomicLong(1_000_000_000_000L);
+        MonotonicClock clock = nanos::get;
+        // 5 failures per address or 10 per network within 15 minutes lock for 15 minutes
+        FailedLoginService svc = new FailedLoginService(5, 15, 15, clock, DecisionLog.disabled(),
+                false, 0, 0, 0, true, 10, 24, 64);
+
+        for (int i = 1; i < 10; i++) {
+            svc.recordFailed(null, "198.51.100." + i);
+        }
+        assertFalse(svc.isIpBlocked("198.51.100.200"));
+        svc.recordFailed(null, "198.51.100.10");
+
+        assertTrue(svc.isIpBlocked("198.51.100.200"));
+        assertTrue(svc.isIpBlocked("::ffff:198.51.100.1"));
+        assertFalse(svc.isIpBlocked("198.51.101.1"));
+        assertEquals(900L, svc.getIpLockRemainingSeconds("198.51.100.200"));
+        assertEquals(1L, svc.getSubnetLockCount());
+        assertEquals(0L, svc.getIpLockCount());
+
+        for (int i = 0; i < 10; i++) {
+            svc.recordFailed(null, "2001:db8:0:7::" + Integer.toHexString(i + 1));
+        }
+        assertTrue(svc.isIpBlocked("2001:db8:0:7:ffff::1"));
+        assertFalse(svc.isIpBlocked("2001:db8:0:8::1"));
+        assertEquals(2, svc.getTrackedSubnetCount());
+
+        // locks run out and the networks are pruned once nothing is left in the window
+        nanos.addAndGet(30 * 60_000_000_000L);
+        assertFalse(svc.isIpBlocked("198.51.100.200"));
+        svc.sweepExpired();
+        assertEquals(0, svc.getTrackedSubnetCount());
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.ratelimitdemo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FailedLoginServiceWindowTest {
+
+    private static final long MINUTE_NANOS = 60_000_000_000L;
+
+    @Test
+    void testFailuresAgeOutAndExpiredLockStartsAfresh() {
+        AtomicLong nanos = new AtomicLong(1_000_000_000_000L);
+        MonotonicClock clock = nanos::get;
+        // threshold 3, lock 1 minute, window 10 minutes
+        FailedLoginService svc = new FailedLoginService(3, 1, 10, clock, DecisionLog.disabled());
+
+        svc.recordFailed("bob", null);
+        svc.recordFailed("bob", null);
+        assertEquals(1, svc.remainingAttemptsForUser("bob"));
+
+        // halfway through the next window half of the old failures still count
+        nanos.addAndGet(15 * MINUTE_NANOS);
+        assertEquals(2, svc.remainingAttemptsForUser("bob"));
+        nanos.addAndGet(5 * MINUTE_NANOS);
+        assertEquals(3, svc.remainingAttemptsForUser("bob"));
+        svc.recordFailed("bob", null);
+        svc.recordFailed("bob", null);
+        assertFalse(svc.isUserBlocked("bob"));
+
+        svc.recordFailed("bob", null);
+        assertTrue(svc.isUserBlocked("bob"));
+        assertEquals(0, svc.remainingAttemptsForUser("bob"));
+
+        // once the lock runs out a single failure does not relock
+        nanos.addAndGet(MINUTE_NANOS);
+        assertFalse(svc.isUserBlocked("bob"));
+        assertEquals(3, svc.remainingAttemptsForUser("bob"));
+        svc.recordFailed("bob", null);
+        assertFalse(svc.isUserBlocked("bob"));
+        assertEquals(1L, svc.getUserLockCount());
+    }
+
+    @Test
+    void testStaleRecordsAreSwept() {
+        AtomicLong nanos = new AtomicLong(1_000_000_000_000L);
+        MonotonicClock clock = nanos::get;
+        FailedLoginService svc = new FailedLoginService(2, 15, 5, clock, DecisionLog.disabled());
+
+        for (int i = 0; i < 200; i++) {
+            svc.recordFailed("user" + i, "10.0.0." + i);
+        }
+        svc.recordFailed("locked", null);
+        svc.recordFailed("locked", null);
+        assertEquals(201, svc.getTrackedUserCount());
+
+        nanos.addAndGet(3 * MINUTE_NANOS);
+        assertEquals(0, svc.sweepExpired());
+
+        // the one remaining lock keeps its record until it runs out
+        nanos.addAndGet(7 * MINUTE_NANOS);
+        svc.recordFailed("locked", null);
+        while (svc.sweepExpired() > 0) {
+            // a batch at a time
+        }
+        assertEquals(1, svc.getTrackedUserCount());
+        assertEquals(0, svc.getTrackedIpCount());
+        assertTrue(svc.isUserBlocked("locked"));
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.ratelimitdemo.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IpAddressTest {
+
+    @Test
+    void testParsesIpv4AndIpv6Literals() {
+        IpAddress v4 = IpAddress.parse("192.168.1.20");
+        assertTrue(v4.isIpv4());
+        assertEquals(0xC0A80114L << 32, v4.getHigh());
+        assertEquals("192.168.1.20", v4.toString());
+        assertEquals("192.168.1.0/24", v4.toPrefixString(24));
+
+        IpAddress v6 = IpAddress.parse("2001:db8::1%eth0");
+        assertFalse(v6.isIpv4());
+        assertEquals(0x20010db800000000L, v6.getHigh());
+        assertEquals(1L, v6.getLow());
+        assertEquals("2001:db8:0:0:0:0:0:0/64", v6.toPrefixString(64));
+        assertEquals(v6, IpAddress.parse("2001:0db8:0:0:0:0:0:1"));
+        assertEquals(IpAddress.parse("::1"), IpAddress.parse("0:0:0:0:0:0:0:1"));
+        assertEquals(IpAddress.parse("64:ff9b::c000:221"), IpAddress.parse("64:ff9b::192.0.2.33"));
+
+        // IPv4-mapped addresses are the IPv4 address
+        assertEquals(v4, IpAddress.parse("::ffff:192.168.1.20"));
+
+        // a literal inside a longer string, without the text around it
+        assertEquals(v4, IpAddress.parse("x, 192.168.1.20, y", 3, 15));
+        assertEquals(v6, IpAddress.parse("[2001:db8::1]:443", 1, 12));
+        assertNull(IpAddress.parse("1.2.3.4", 2, 2));
+
+        assertTrue(v4.isInNetwork(IpAddress.parse("192.168.0.0"), 16));
+        assertFalse(v4.isInNetwork(IpAddress.parse("192.168.0.0"), 24));
+        assertTrue(v6.isInNetwork(IpAddress.parse("2001:db8::"), 32));
+        assertFalse(v4.isInNetwork(IpAddress.parse("::"), 0));
+    }
+
+    @Test
+    void testRejectsAnythingElse() {
+        String[] invalid = {null, "", "localhost", "1.2.3", "1.2.3.4.5", "256.1.1.1", "1..2.3", "1.2.3.4 ",
+                "1::2::3", ":1:2", "1:2:3:4:5:6:7:8:9", "1:2:3:4:5:6:7", "12345::", "1:", "::g", "1:2:3:4:5:6:7:1.2.3.4"};
+        for (String literal : invalid) {
+            assertNull(IpAddress.parse(literal), literal);
+        }
+    }
+}
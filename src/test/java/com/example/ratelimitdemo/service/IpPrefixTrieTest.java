@@ -0,0 +1,58 @@
+package com.example.ratelimitdemo.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IpPrefixTrieTest {
+
+    @Test
+    void testLongestMatchAcrossNestedAndDisjointPrefixes() {
+        IpPrefixTrie<String> trie = new IpPrefixTrie<>();
+        put(trie, "10.0.0.0", 8, "10/8");
+        put(trie, "10.1.2.0", 24, "10.1.2/24");
+        put(trie, "10.1.3.0", 24, "10.1.3/24");
+        put(trie, "192.168.0.0", 16, "192.168/16");
+        assertEquals(4, trie.size());
+
+        assertEquals("10.1.2/24", match(trie, "10.1.2.77"));
+        assertEquals("10.1.3/24", match(trie, "10.1.3.1"));
+        assertEquals("10/8", match(trie, "10.1.4.1"));
+        assertEquals("192.168/16", match(trie, "192.168.200.1"));
+        assertNull(match(trie, "172.16.0.1"));
+
+        // the value for an existing prefix is updated in place
+        IpAddress a = IpAddress.parse("10.1.2.99");
+        assertEquals("10.1.2/24!", trie.compute(a.getHigh(), a.getLow(), 24, v -> v + "!"));
+        assertEquals(4, trie.size());
+    }
+
+    @Test
+    void testRemoveIfPrunesEmptyNodes() {
+        IpPrefixTrie<String> trie = new IpPrefixTrie<>();
+        put(trie, "10.1.2.0", 24, "a");
+        put(trie, "10.1.3.0", 24, "b");
+        put(trie, "2001:db8::", 64, "c");
+        assertEquals(1, trie.removeIf("a"::equals));
+        assertEquals(2, trie.size());
+        assertNull(match(trie, "10.1.2.1"));
+        assertEquals("b", match(trie, "10.1.3.1"));
+        assertEquals("c", match(trie, "2001:db8::42"));
+
+        assertEquals(2, trie.removeIf(v -> true));
+        assertEquals(0, trie.size());
+        assertNull(match(trie, "10.1.3.1"));
+        put(trie, "10.1.2.0", 24, "a");
+        assertEquals("a", match(trie, "10.1.2.1"));
+    }
+
+    private static void put(IpPrefixTrie<String> trie, String ip, int length, String value) {
+        IpAddress address = IpAddress.parse(ip);
+        trie.compute(address.getHigh(), address.getLow(), length, v -> value);
+    }
+
+    private static String match(IpPrefixTrie<String> trie, String ip) {
+        IpAddress address = IpAddress.parse(ip);
+        return trie.longestMatch(address.getHigh(), address.getLow());
+    }
+}
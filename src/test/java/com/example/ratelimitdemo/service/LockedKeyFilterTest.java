@@ -0,0 +1,47 @@
+package com.example.ratelimitdemo.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LockedKeyFilterTest {
+
+    @Test
+    void testNoFalseNegativesAndFalsePositiveRateNearTheory() {
+        int bits = 1 << 16;
+        int keys = 5_000;
+        LockedKeyFilter filter = new LockedKeyFilter(bits, 60_000L, 0L);
+        for (int i = 0; i < keys; i++) {
+            filter.add("user" + i, 0, 0L);
+        }
+        for (int i = 0; i < keys; i++) {
+            assertTrue(filter.mightContain("user" + i, 0, 0L));
+        }
+
+        int probes = 100_000;
+        int falsePositives = 0;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain("other" + i, 0, 0L)) falsePositives++;
+        }
+        // (1 - e^(-kn/m))^k with k = 4: about 0.5% here
+        double expected = Math.pow(1 - Math.exp(-4.0 * keys / bits), 4);
+        double rate = (double) falsePositives / probes;
+        assertTrue(rate < 2 * expected, "false positive rate " + rate + " expected about " + expected);
+        assertEquals(2L * bits / 8, filter.getMemoryBytes());
+    }
+
+    @Test
+    void testKeysAreForgottenAfterTwoPeriods() {
+        LockedKeyFilter filter = new LockedKeyFilter(1024, 60_000L, 0L);
+        filter.add("10.0.0.1", 0, 59_000L);
+        assertTrue(filter.mightContain("10.0.0.1", 0, 60_000L));
+        // still there a full period after it was added
+        assertTrue(filter.mightContain("10.0.0.1", 0, 119_000L));
+        assertFalse(filter.mightContain("10.0.0.1", 0, 120_000L));
+
+        filter.add("10.0.0.2", 0, 120_000L);
+        // after an idle period both generations are dropped at once
+        assertFalse(filter.mightContain("10.0.0.2", 0, 300_000L));
+        assertThrows(IllegalArgumentException.class, () -> new LockedKeyFilter(1000, 60_000L, 0L));
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.ratelimitdemo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MonotonicClockTest {
+
+    @Test
+    void testPreciseClockIsMonotonicAndEpochAnchored() {
+        PreciseClock clock = new PreciseClock();
+        long wall = System.currentTimeMillis();
+        assertTrue(Math.abs(clock.currentTimeMillis() - wall) < 1_000L);
+
+        long previous = clock.currentTimeNanos();
+        for (int i = 0; i < 10_000; i++) {
+            long next = clock.currentTimeNanos();
+            assertTrue(next >= previous);
+            previous = next;
+        }
+    }
+
+    @Test
+    void testTickerClockAdvancesWithinOneTick() throws Exception {
+        PreciseClock precise = new PreciseClock();
+        try (TickerClock ticker = new TickerClock(1)) {
+            long first = ticker.currentTimeNanos();
+            Thread.sleep(50);
+            long second = ticker.currentTimeNanos();
+            assertTrue(second > first);
+            // lag is about one tick; allow generous scheduling slack
+            assertTrue(precise.currentTimeMillis() - ticker.currentTimeMillis() < 100L);
+        }
+        assertThrows(IllegalArgumentException.class, () -> new TickerClock(0));
+    }
+
+    @Test
+    void testBucketsRefillFromInjectedClock() {
+        AtomicLong nanos = new AtomicLong(1_000_000_000_000L);
+        MonotonicClock clock = nanos::get;
+
+        // 1000 tokens/sec: 1.5ms yields 1.5 tokens with no wall clock involved
+        TokenBucket bucket = new TokenBucket(2, 1000.0, clock);
+        assertTrue(bucket.tryConsume());
+        assertTrue(bucket.tryConsume());
+        assertFalse(bucket.tryConsume());
+        nanos.addAndGet(1_500_000L);
+        assertEquals(1.5, bucket.getTokens(), 1e-9);
+
+        FailedLoginService fls = new FailedLoginService(1, 1, clock);
+        fls.recordFailed("eve", "10.0.0.9");
+        assertTrue(fls.isUserBlocked("eve"));
+        assertEquals(60L, fls.getUserLockRemainingSeconds("eve"));
+        nanos.addAndGet(60_000_000_000L);
+        assertFalse(fls.isUserBlocked("eve"));
+        assertFalse(fls.isIpBlocked("10.0.0.9"));
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.ratelimitdemo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrimitiveBucketStoreTest {
+
+    private final AtomicLong nanos = new AtomicLong(1_000_000_000_000L);
+    private final MonotonicClock clock = nanos::get;
+
+    @Test
+    void testConsumeRefillAndRollback() {
+        PrimitiveBucketStore store = new PrimitiveBucketStore(0, EvictionPolicy.LEAST_RECENTLY_USED, 60_000L, 128, clock);
+        long key = PrimitiveBucketStore.hash("alice:test2");
+
+        // absent keys read as full and cost nothing
+        assertEquals(2.0, store.getTokens(key, 2, 1000.0));
+        assertEquals(0, store.size());
+
+        assertTrue(store.tryConsume(key, 2, 1000.0, 1));
+        assertTrue(store.tryConsume(key, 2, 1000.0, 1));
+        assertFalse(store.tryConsume(key, 2, 1000.0, 1));
+        assertEquals(1, store.size());
+
+        nanos.addAndGet(1_500_000L);
+        assertEquals(1.5, store.getTokens(key, 2, 1000.0), 1e-9);
+
+        store.addTokens(key, 1000.0, 5.0);
+        assertEquals(2.0, store.getTokens(key, 2, 1000.0));
+
+        long empty = PrimitiveBucketStore.hash("nobody");
+        assertFalse(store.tryConsume(empty, 0, 1.0, 1));
+    }
+
+    @Test
+    void testFullBucketGrantsCapacityAtAnyRate() {
+        PrimitiveBucketStore store = new PrimitiveBucketStore(0, EvictionPolicy.LEAST_RECENTLY_USED, 60_000L, 128, clock);
+        // 1e9 / 7 is not whole, so a burst and a cost rounded apart once left a full bucket one nanosecond short
+        assertTrue(store.tryConsume(PrimitiveBucketStore.hash("seven:1"), 1, 7.0, 1));
+        assertTrue(store.tryConsume(PrimitiveBucketStore.hash("seven:all"), 3, 7.0, 3));
+
+        long key = PrimitiveBucketStore.hash("seven:3");
+        for (int i = 0; i < 3; i++) {
+            assertTrue(store.tryConsume(key, 3, 7.0, 1), "request " + i);
+        }
+        assertFalse(store.tryConsume(key, 3, 7.0, 1));
+        nanos.addAndGet(1_000_000_000L / 7 + 1);
+        assertTrue(store.tryConsume(key, 3, 7.0, 1));
+    }
+
+    @Test
+    void testBatchGrantsCapacityAtAnyRate() {
+        PrimitiveBucketStore store = new PrimitiveBucketStore(0, EvictionPolicy.LEAST_RECENTLY_USED, 60_000L, 128, clock);
+        // large enough to be grouped by segment; every key asks twice for its whole capacity
+        long[] keys = new long[16];
+        int[] permits = new int[16];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = PrimitiveBucketStore.hash("batch:" + (i % 8));
+            permits[i] = 3;
+        }
+        long[] admitted = new long[1];
+        assertEquals(8, store.tryConsumeBatch(keys, permits, keys.length, 3, 7.0, admitted));
+        assertEquals(0xFFL, admitted[0]);
+    }
+
+    @Test
+    void testGrowthAndRemovalKeepEveryKeyReachable() {
+        PrimitiveBucketStore store = new PrimitiveBucketStore(0, EvictionPolicy.LEAST_RECENTLY_USED, 10L, 1_000_000, clock);
+        for (int i = 0; i < 20_000; i++) {
+            // slow buckets stay drained; even keys refill within the idle time
+            assertTrue(store.tryConsume(PrimitiveBucketStore.hash("k" + i), 1, i % 2 == 0 ? 1000.0 : 0.001, 1));
+        }
+        assertEquals(20_000, store.size());
+
+        nanos.addAndGet(20_000_000L);
+        for (int i = 0; i < PrimitiveBucketStore.SEGMENTS; i++) {
+            store.sweep();
+        }
+        assertEquals(10_000, store.size());
+        assertEquals(10_000, store.getIdleEvictionCount());
+        for (int i = 1; i < 20_000; i += 2) {
+            assertFalse(store.tryConsume(PrimitiveBucketStore.hash("k" + i), 1, 0.001, 1), "lost k" + i);
+        }
+    }
+
+    @Test
+    void testWindowsAreAllOrNothing() {
+        PrimitiveBucketStore store = new PrimitiveBucketStore(0, EvictionPolicy.LEAST_RECENTLY_USED, 60_000L, 128, clock);
+        List<RateLimitWindow> windows = List.of(
+                RateLimitWindow.perWindow("Short", 5, 5),
+                RateLimitWindow.perWindow("Minute", 2, 60));
+        long key = PrimitiveBucketStore.hash("bob:test2");
+        double[] tokens = new double[2];
+
+        assertTrue(store.tryConsume(key, windows, 1, tokens));
+        assertArrayEquals(new double[] {4.0, 1.0}, tokens, 1e-9);
+        assertTrue(store.tryConsume(key, windows, 1, tokens));
+        assertFalse(store.tryConsume(key, windows, 1, tokens));
+        // the denial took nothing from the short window
+        assertEquals(3.0, tokens[0], 1e-9);
+        assertEquals(0.0, tokens[1], 1e-9);
+    }
+
+    @Test
+    void testReservationsMoveFullAtPastTheBurst() {
+        PrimitiveBucketStore store = new PrimitiveBucketStore(0, EvictionPolicy.LEAST_RECENTLY_USED, 60_000L, 128, clock);
+        List<RateLimitWindow> windows = List.of(new RateLimitWindow("Short", 2, 10.0), new RateLimitWindow("Long", 5, 1.0));
+        long key = PrimitiveBucketStore.hash("carol:test2");
+        double[] tokens = new double[2];
+        assertTrue(store.tryConsume(key, windows, 2, tokens));
+
+        assertEquals(100_000_000L, store.reserve(key, windows, 1, 1_000_000_000L));
+        assertEquals(200_000_000L, store.reserve(key, windows, 1, 1_000_000_000L));
+        // not due in time: nothing is taken
+        assertEquals(-1L, store.reserve(key, windows, 1, 250_000_000L));
+        assertEquals(-1L, store.reserve(key, windows, 3, 10_000_000_000L));
+
+        nanos.addAndGet(200_000_000L);
+        assertFalse(store.tryConsume(key, windows, 1, tokens));
+        nanos.addAndGet(100_000_000L);
+        assertTrue(store.tryConsume(key, windows, 1, tokens));
+    }
+
+    @Test
+    void testMaxEntriesPolicies() {
+        PrimitiveBucketStore lru = new PrimitiveBucketStore(3, EvictionPolicy.LEAST_RECENTLY_USED, 60_000L, 128, clock);
+        for (int i = 0; i < 1000; i++) {
+            lru.tryConsume(PrimitiveBucketStore.hash("lru:" + i), 1, 1.0, 1);
+        }
+        assertTrue(lru.size() <= 3, "size " + lru.size());
+        assertTrue(lru.getCapacityEvictionCount() > 0);
+
+        // the cap is taken by one segment; a key of another segment, which has nothing to evict, is not stored
+        PrimitiveBucketStore full = new PrimitiveBucketStore(4, EvictionPolicy.LEAST_RECENTLY_USED, 60_000L, 128, clock);
+        int filled = 0;
+        int other = -1;
+        for (int i = 0; filled < 4 || other < 0; i++) {
+            long key = PrimitiveBucketStore.hash("seg:" + i);
+            if (PrimitiveBucketStore.segmentIndex(key) == 0) {
+                if (filled < 4) {
+                    assertTrue(full.tryConsume(key, 1, 1.0, 1));
+                    filled++;
+                }
+            } else if (other < 0) {
+                other = i;
+            }
+        }
+        assertEquals(4, full.size());
+        long outsider = PrimitiveBucketStore.hash("seg:" + other);
+        assertTrue(full.tryConsume(outsider, 1, 1.0, 1));
+        assertTrue(full.tryConsume(outsider, 1, 1.0, 1));
+        assertEquals(4, full.size());
+        assertEquals(2, full.getUntrackedKeyCount());
+        assertEquals(0, full.getCapacityEvictionCount());
+
+        PrimitiveBucketStore reject = new PrimitiveBucketStore(1, EvictionPolicy.REJECT, 60_000L, 128, clock);
+        assertTrue(reject.tryConsume(PrimitiveBucketStore.hash("r:1"), 5, 1.0, 1));
+        assertFalse(reject.tryConsume(PrimitiveBucketStore.hash("r:2"), 5, 1.0, 1));
+        assertEquals(1, reject.getUntrackedKeyCount());
+
+        PrimitiveBucketStore allow = new PrimitiveBucketStore(1, EvictionPolicy.ALLOW, 60_000L, 128, clock);
+        assertTrue(allow.tryConsume(PrimitiveBucketStore.hash("a:1"), 1, 1.0, 1));
+        assertTrue(allow.tryConsume(PrimitiveBucketStore.hash("a:2"), 1, 1.0, 1));
+        assertTrue(allow.tryConsume(PrimitiveBucketStore.hash("a:2"), 1, 1.0, 1));
+        assertEquals(1, allow.size());
+    }
+
+    @Test
+    void testServiceRoutesToPrimitiveStore() {
+        RateLimiterService svc = new RateLimiterService(BucketType.SYNCHRONIZED, StoreType.PRIMITIVE, 0,
+                EvictionPolicy.LEAST_RECENTLY_USED, 3600, clock);
+        assertTrue(svc.tryConsume("p:key", 1, 1.0));
+        assertFalse(svc.tryConsume("p:key", 1, 1.0));
+        assertEquals(1, svc.getBucketInfo("p:key", 1, 1.0).getRetryAfterSeconds());
+
+        // refill 0 cannot be expressed as a full-at time and stays in the map store
+        assertTrue(svc.tryConsume("p:zero", 1, 0.0));
+        assertFalse(svc.tryConsume("p:zero", 1, 0.0));
+        assertEquals(2, svc.getBucketCount());
+
+        assertFalse(svc.tryConsumeComposite("c:short", 2, 1.0, "c:minute", 0, 1.0));
+        assertEquals(2, svc.getBucketInfo("c:short", 2, 1.0).getRemaining());
+
+        RateLimitDecision decision = svc.tryConsume("p:windows", List.of(RateLimitWindow.perWindow("Short", 1, 1)));
+        assertTrue(decision.isAllowed());
+        assertEquals(0, decision.getRemaining(0));
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.ratelimitdemo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimitAlgorithmTest {
+
+    private final AtomicLong nanos = new AtomicLong(1_000_000_000_000L);
+    private final MonotonicClock clock = nanos::get;
+
+    @Test
+    void testGcraMatchesTokenBucket() {
+        Bucket gcra = new GcraBucket(3, 10.0, clock);
+        Bucket tokens = new TokenBucket(3, 10.0, clock);
+        // 7ms steps against a 100ms emission interval cover drained, partial and full states
+        for (int i = 0; i < 400; i++) {
+            assertEquals(tokens.tryConsume(), gcra.tryConsume(), "step " + i);
+            assertEquals(tokens.getTokens(), gcra.getTokens(), 1e-6, "step " + i);
+            nanos.addAndGet(7_000_000L);
+        }
+
+        assertTrue(gcra.tryConsume());
+        gcra.addTokens(10.0);
+        assertEquals(3.0, gcra.getTokens());
+
+        assertFalse(new GcraBucket(0, 1.0, clock).tryConsume());
+        assertFalse(GcraBucket.supports(5, 0.0));
+        assertThrows(IllegalArgumentException.class, () -> new GcraBucket(5, 0.0, clock));
+    }
+
+    @Test
+    void testSlidingWindowWeighsPreviousWindow() {
+        // 5 per 5 seconds
+        SlidingWindowBucket bucket = new SlidingWindowBucket(5, 1.0, clock);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.tryConsume());
+        }
+        assertFalse(bucket.tryConsume());
+        assertEquals(0.0, bucket.getTokens());
+
+        // next window has just started, so the previous one still counts in full
+        nanos.addAndGet(5_000_000_000L);
+        assertFalse(bucket.tryConsume());
+
+        // a fifth of the way in, a fifth of the previous window has slid out
+        nanos.addAndGet(1_000_000_000L);
+        assertEquals(1.0, bucket.getTokens(), 1e-9);
+        assertTrue(bucket.tryConsume());
+        assertFalse(bucket.tryConsume());
+
+        // rollback hands the request back to the current window
+        bucket.addTokens(1.0);
+        assertEquals(1.0, bucket.getTokens(), 1e-9);
+
+        // two windows later nothing is left and the bucket is idle
+        nanos.addAndGet(10_000_000_000L);
+        assertEquals(5.0, bucket.getTokens());
+        assertTrue(bucket.isIdle(clock.currentTimeMillis() + 1_000L, 1_000L));
+    }
+
+    @Test
+    void testUnsupportedLimitsFallBackToTokenBucket() {
+        assertTrue(RateLimitAlgorithm.GCRA.newBucket(5, 0.0, BucketType.SYNCHRONIZED, clock) instanceof TokenBucket);
+        assertTrue(RateLimitAlgorithm.SLIDING_WINDOW.newBucket(SlidingWindowBucket.MAX_CAPACITY + 1, 1.0, BucketType.SYNCHRONIZED, clock)
+                instanceof TokenBucket);
+        assertTrue(RateLimitAlgorithm.GCRA.newBucket(5, 1.0, BucketType.SYNCHRONIZED, clock) instanceof GcraBucket);
+        assertTrue(RateLimitAlgorithm.SLIDING_WINDOW.newBucket(5, 1.0, BucketType.SYNCHRONIZED, clock) instanceof SlidingWindowBucket);
+    }
+
+    @Test
+    void testServiceAppliesAlgorithmPerWindow() {
+        RateLimiterService svc = new RateLimiterService(BucketType.SYNCHRONIZED, 0, EvictionPolicy.LEAST_RECENTLY_USED, 60, clock);
+        List<RateLimitWindow> windows = List.of(
+                RateLimitWindow.perWindow("Short", 2, 2, RateLimitAlgorithm.GCRA),
+                RateLimitWindow.perWindow("Minute", 3, 60, RateLimitAlgorithm.SLIDING_WINDOW));
+
+        assertTrue(svc.tryConsume("mixed", windows).isAllowed());
+        assertTrue(svc.tryConsume("mixed", windows).isAllowed());
+        RateLimitDecision denied = svc.tryConsume("mixed", windows);
+        assertFalse(denied.isAllowed());
+        assertEquals(0, denied.getRemaining(0));
+        assertEquals(1, denied.getRemaining(1));
+
+        // the short window refills, the sliding minute window lets exactly one more through
+        nanos.addAndGet(2_000_000_000L);
+        assertTrue(svc.tryConsume("mixed", windows).isAllowed());
+        RateLimitDecision minuteDenied = svc.tryConsume("mixed", windows);
+        assertFalse(minuteDenied.isAllowed());
+        assertEquals(1, minuteDenied.getRemaining(0));
+        assertEquals(0, minuteDenied.getRemaining(1));
+    }
+
+    @Test
+    void testReservationsPutBucketsIntoDebt() {
+        Bucket[] buckets = {
+                new TokenBucket(2, 10.0, clock),
+                new AtomicTokenBucket(2, 10.0, clock),
+                new GcraBucket(2, 10.0, clock)};
+        for (Bucket bucket : buckets) {
+            String name = bucket.getClass().getSimpleName();
+            assertTrue(bucket.tryConsume(2), name);
+            // each reservation waits behind the one before it
+            assertEquals(100_000_000L, bucket.waitNanos(1), name);
+            assertEquals(100_000_000L, bucket.reserve(1), name);
+            assertEquals(200_000_000L, bucket.reserve(1), name);
+            assertEquals(300_000_000L, bucket.waitNanos(1), name);
+            assertEquals(0.0, bucket.getTokens(), name);
+
+            // the refill pays the reservations off before anyone else gets a token
+            nanos.addAndGet(200_000_000L);
+            assertFalse(bucket.tryConsume(), name);
+            nanos.addAndGet(100_000_000L);
+            assertTrue(bucket.tryConsume(), name);
+            assertEquals(Long.MAX_VALUE, bucket.reserve(3), name);
+            nanos.addAndGet(1_000_000_000L);
+        }
+
+        // 5 per 5 seconds: a reservation counts now and waits until the estimate would have let it in
+        SlidingWindowBucket sliding = new SlidingWindowBucket(5, 1.0, clock);
+        assertTrue(sliding.tryConsume(5));
+        assertEquals(6_000_000_000L, sliding.reserve(1));
+        assertTrue(sliding.reserve(1) > 6_000_000_000L);
+        nanos.addAndGet(6_000_000_000L);
+        assertFalse(sliding.tryConsume());
+        // both reserved requests still count, so a newcomer waits longer than they did
+        long wait = sliding.waitNanos(1);
+        assertTrue(wait > 1_000_000_000L, "wait " + wait);
+        nanos.addAndGet(wait);
+        assertTrue(sliding.tryConsume());
+    }
+
+    @Test
+    void testServiceReservesEveryWindowOrNone() {
+        RateLimiterService svc = new RateLimiterService(BucketType.SYNCHRONIZED, 0, EvictionPolicy.LEAST_RECENTLY_USED, 60, clock);
+        List<RateLimitWindow> windows = List.of(
+                new RateLimitWindow("Short", 1, 10.0, RateLimitAlgorithm.GCRA),
+                new RateLimitWindow("Long", 2, 1.0));
+        assertTrue(svc.tryConsume("r", windows).isAllowed());
+        // the short window is due in 100ms, the long one still has a token
+        assertEquals(100_000_000L, svc.reserve("r", windows, 1, 150_000_000L));
+        // now the long window is a second away: too long, and the short window is left alone
+        assertEquals(-1L, svc.reserve("r", windows, 1, 150_000_000L));
+        assertEquals(-1L, svc.reserve("r", windows, 2, 10_000_000_000L));
+        nanos.addAndGet(200_000_000L);
+        RateLimitDecision denied = svc.tryConsume("r", windows);
+        assertFalse(denied.isAllowed());
+        assertEquals(1, denied.getRemaining(0));
+    }
+}
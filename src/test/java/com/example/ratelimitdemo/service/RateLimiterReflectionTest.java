@@ -25,13 +25,13 @@ public class RateLimiterReflectionTest {
         Object tokenBucket = buckets.get(key);
         assertNotNull(tokenBucket);
 
-        // set lastRefillEpochMilli to future so deltaMillis <= 0 in refill()
-        Field lastRefill = tokenBucket.getClass().getDeclaredField("lastRefillEpochMilli");
+        // set lastRefillNanos to future so deltaNanos <= 0 in refill()
+        Field lastRefill = tokenBucket.getClass().getDeclaredField("lastRefillNanos");
         lastRefill.setAccessible(true);
-        long future = System.currentTimeMillis() + 10_000L;
+        long future = (System.currentTimeMillis() + 10_000L) * 1_000_000L;
         lastRefill.setLong(tokenBucket, future);
 
-        // calling getBucketInfo should invoke getTokens which calls refill() and take the deltaMillis <=0 branch
+        // calling getBucketInfo should invoke getTokens which calls refill() and take the deltaNanos <=0 branch
         RateLimiterService.BucketInfo info = svc.getBucketInfo(key, 3, 1.0);
         assertNotNull(info);
         // remaining should be >=0 and <= capacity
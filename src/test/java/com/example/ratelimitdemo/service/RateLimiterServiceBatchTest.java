@@ -0,0 +1,53 @@
+package com.example.ratelimitdemo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimiterServiceBatchTest {
+
+    private final AtomicLong nanos = new AtomicLong(1_000_000_000_000L);
+    private final MonotonicClock clock = nanos::get;
+
+    @Test
+    void testBatchMatchesOneByOneDecisions() {
+        for (StoreType store : StoreType.values()) {
+            RateLimiterService batched = new RateLimiterService(BucketType.SYNCHRONIZED, store, 0,
+                    EvictionPolicy.LEAST_RECENTLY_USED, 60, clock);
+            RateLimiterService single = new RateLimiterService(BucketType.SYNCHRONIZED, store, 0,
+                    EvictionPolicy.LEAST_RECENTLY_USED, 60, clock);
+
+            // 200 requests over 50 keys, repeated keys and mixed costs, against a capacity of 4
+            String[] keys = new String[200];
+            int[] permits = new int[200];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = "user" + (i * 7 % 50);
+                permits[i] = i % 3;
+            }
+            BitSet admitted = batched.tryConsumeBatch(keys, permits, 4, 1.0);
+
+            BitSet expected = new BitSet();
+            for (int i = 0; i < keys.length; i++) {
+                if (single.tryConsume(keys[i], 4, 1.0, permits[i])) expected.set(i);
+            }
+            assertEquals(expected, admitted, store.name());
+            assertTrue(admitted.cardinality() < keys.length, store.name());
+        }
+    }
+
+    @Test
+    void testBatchIntoCallerWords() {
+        RateLimiterService svc = new RateLimiterService(BucketType.ATOMIC, StoreType.PRIMITIVE, 0,
+                EvictionPolicy.LEAST_RECENTLY_USED, 60, clock);
+        String[] keys = {"a", "a", "b", "unused"};
+        long[] admitted = new long[1];
+        // only the first three entries count; permits default to one each
+        assertEquals(2, svc.tryConsumeBatch(keys, null, 3, 1, 1.0, admitted));
+        assertEquals(0b101L, admitted[0]);
+
+        assertThrows(IllegalArgumentException.class, () -> svc.tryConsumeBatch(keys, new int[] {1, -1, 1, 1}, 1, 1.0));
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.ratelimitdemo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimiterServiceEvictionTest {
+
+    @Test
+    void testIdleFullBucketsAreSwept() throws Exception {
+        RateLimiterService svc = new RateLimiterService(BucketType.SYNCHRONIZED, 0, EvictionPolicy.LEAST_RECENTLY_USED, 0, MonotonicClock.system());
+        // refills within 10ms
+        assertTrue(svc.tryConsume("idle:a", 1, 100.0));
+        // never refills, so it always carries state
+        assertTrue(svc.tryConsume("idle:b", 1, 0.0));
+        assertEquals(2, svc.getBucketCount());
+
+        Thread.sleep(50);
+        svc.sweepIdleBuckets();
+
+        assertEquals(1, svc.getBucketCount());
+        assertEquals(1, svc.getIdleEvictionCount());
+        // the drained bucket survived the sweep
+        assertFalse(svc.tryConsume("idle:b", 1, 0.0));
+    }
+
+    @Test
+    void testAtomicBucketsAreSwept() throws Exception {
+        RateLimiterService svc = new RateLimiterService(BucketType.ATOMIC, 0, EvictionPolicy.LEAST_RECENTLY_USED, 0, MonotonicClock.system());
+        assertTrue(svc.tryConsume("idle:a", 1, 100.0));
+        Thread.sleep(50);
+        svc.sweepIdleBuckets();
+        assertEquals(0, svc.getBucketCount());
+    }
+
+    @Test
+    void testMaxEntriesWithLruEviction() {
+        RateLimiterService svc = new RateLimiterService(BucketType.SYNCHRONIZED, 3, EvictionPolicy.LEAST_RECENTLY_USED, 3600, MonotonicClock.system());
+        for (int i = 0; i < 10; i++) {
+            assertTrue(svc.tryConsume("lru:" + i, 1, 0.0));
+        }
+        assertTrue(svc.getBucketCount() <= 3);
+        assertEquals(7, svc.getCapacityEvictionCount());
+    }
+
+    @Test
+    void testMaxEntriesIsSharedBySingleAndMultiWindowKeys() throws Exception {
+        RateLimiterService svc = new RateLimiterService(BucketType.SYNCHRONIZED, 3, EvictionPolicy.LEAST_RECENTLY_USED, 3600, MonotonicClock.system());
+        List<RateLimitWindow> windows = List.of(RateLimitWindow.perWindow("Short", 5, 5), RateLimitWindow.perWindow("Minute", 10, 60));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(svc.tryConsume("group:" + i, windows).isAllowed());
+        }
+        Thread.sleep(5);
+        // single-window keys make room by evicting the older multi-window groups
+        for (int i = 0; i < 5; i++) {
+            assertTrue(svc.tryConsume("single:" + i, 1, 0.0));
+            assertTrue(svc.getBucketCount() <= 3);
+        }
+        assertEquals(5, svc.getCapacityEvictionCount());
+        assertTrue(svc.tryConsume("group:3", windows).isAllowed());
+        assertEquals(3, svc.getBucketCount());
+        assertEquals(6, svc.getCapacityEvictionCount());
+
+        // with the primitive store holding every entry, a key for the maps has nothing to evict and is rejected
+        RateLimiterService primitive = new RateLimiterService(BucketType.SYNCHRONIZED, StoreType.PRIMITIVE, 2,
+                EvictionPolicy.LEAST_RECENTLY_USED, 3600, MonotonicClock.system());
+        assertTrue(primitive.tryConsume("p:1", 5, 1.0));
+        assertTrue(primitive.tryConsume("p:2", 5, 1.0));
+        assertFalse(primitive.tryConsume("zero-refill", 5, 0.0));
+        assertEquals(2, primitive.getBucketCount());
+        assertEquals(1, primitive.getUntrackedKeyCount());
+    }
+
+    @Test
+    void testMaxEntriesRejectAndAllowPolicies() {
+        RateLimiterService reject = new RateLimiterService(BucketType.SYNCHRONIZED, 1, EvictionPolicy.REJECT, 3600, MonotonicClock.system());
+        assertTrue(reject.tryConsume("r:1", 5, 0.0));
+        assertFalse(reject.tryConsume("r:2", 5, 0.0));
+        assertEquals(0, reject.getBucketInfo("r:2", 5, 0.0).getRemaining());
+        assertEquals(1, reject.getBucketCount());
+        assertTrue(reject.getUntrackedKeyCount() >= 2);
+
+        RateLimiterService allow = new RateLimiterService(BucketType.SYNCHRONIZED, 1, EvictionPolicy.ALLOW, 3600, MonotonicClock.system());
+        assertTrue(allow.tryConsume("a:1", 1, 0.0));
+        assertTrue(allow.tryConsume("a:2", 1, 0.0));
+        assertTrue(allow.tryConsume("a:2", 1, 0.0));
+        assertEquals(1, allow.getBucketCount());
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.ratelimitdemo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimiterServicePermitsTest {
+
+    private final AtomicLong nanos = new AtomicLong(1_000_000_000_000L);
+    private final MonotonicClock clock = nanos::get;
+
+    @Test
+    void testWeightedConsumptionForEveryEngine() {
+        for (BucketType type : BucketType.values()) {
+            for (RateLimitAlgorithm algorithm : RateLimitAlgorithm.values()) {
+                Bucket bucket = algorithm.newBucket(10, 1.0, type, clock);
+                String label = type + "/" + algorithm;
+                assertTrue(bucket.tryConsume(4), label);
+                assertTrue(bucket.tryConsume(6), label);
+                assertFalse(bucket.tryConsume(1), label);
+                assertTrue(bucket.tryConsume(0), label);
+                assertFalse(algorithm.newBucket(10, 1.0, type, clock).tryConsume(11), label);
+            }
+        }
+    }
+
+    @Test
+    void testServicePermitsAcrossStoresAndPaths() {
+        for (StoreType store : StoreType.values()) {
+            RateLimiterService svc = new RateLimiterService(BucketType.SYNCHRONIZED, store, 0,
+                    EvictionPolicy.LEAST_RECENTLY_USED, 60, clock);
+            assertTrue(svc.tryConsume("export", 5, 1.0, 3), store.name());
+            assertFalse(svc.tryConsume("export", 5, 1.0, 3), store.name());
+            assertEquals(2, svc.getBucketInfo("export", 5, 1.0).getRemaining(), store.name());
+
+            // composite rollback returns every permit to the short bucket
+            assertFalse(svc.tryConsumeComposite("c:short", 5, 1.0, "c:minute", 2, 1.0, 3), store.name());
+            assertEquals(5, svc.getBucketInfo("c:short", 5, 1.0).getRemaining(), store.name());
+
+            List<RateLimitWindow> windows = List.of(
+                    RateLimitWindow.perWindow("Short", 5, 5),
+                    RateLimitWindow.perWindow("Minute", 10, 60));
+            RateLimitDecision first = svc.tryConsume("w", windows, 4);
+            assertTrue(first.isAllowed(), store.name());
+            assertEquals(1, first.getRemaining(0), store.name());
+            assertEquals(6, first.getRemaining(1), store.name());
+
+            // 3 more tokens are 3 seconds of short-window refill away
+            RateLimitDecision denied = svc.tryConsume("w", windows, 4);
+            assertFalse(denied.isAllowed(), store.name());
+            assertEquals(3, denied.getRetryAfterSeconds(0), store.name());
+            assertEquals(0, denied.getRetryAfterSeconds(1), store.name());
+
+            assertEquals(Integer.MAX_VALUE, svc.tryConsume("too-big", windows, 6).getRetryAfterSeconds(), store.name());
+            assertThrows(IllegalArgumentException.class, () -> svc.tryConsume("w", windows, -1));
+        }
+    }
+}
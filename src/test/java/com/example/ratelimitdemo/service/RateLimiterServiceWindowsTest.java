@@ -0,0 +1,74 @@
+package com.example.ratelimitdemo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimiterServiceWindowsTest {
+
+    @Test
+    void testDecisionCarriesEveryWindow() {
+        RateLimiterService svc = new RateLimiterService();
+        List<RateLimitWindow> windows = List.of(
+                new RateLimitWindow("Second", 3, 0.0),
+                new RateLimitWindow("Minute", 5, 0.0),
+                new RateLimitWindow("Hour", 10, 0.5));
+
+        RateLimitDecision first = svc.tryConsume("bob:test1", windows);
+        assertTrue(first.isAllowed());
+        assertEquals(3, first.getWindowCount());
+        assertEquals(2, first.getRemaining(0));
+        assertEquals(4, first.getRemaining(1));
+        assertEquals(9, first.getRemaining(2));
+        assertEquals(0, first.getRetryAfterSeconds());
+        assertEquals("Hour", first.getWindow(2).getName());
+        assertEquals(10, first.getBucketInfo(2).getCapacity());
+
+        svc.tryConsume("bob:test1", windows);
+        svc.tryConsume("bob:test1", windows);
+        RateLimitDecision denied = svc.tryConsume("bob:test1", windows);
+        assertFalse(denied.isAllowed());
+        assertEquals(0, denied.getRemaining(0));
+        assertEquals(Integer.MAX_VALUE, denied.getRetryAfterSeconds(0));
+        // nothing was taken from the other windows by the denied request
+        assertEquals(2, denied.getRemaining(1));
+        assertEquals(7, denied.getRemaining(2));
+    }
+
+    @Test
+    void testAllOrNothingWhenLaterWindowIsEmpty() {
+        for (BucketType type : BucketType.values()) {
+            RateLimiterService svc = new RateLimiterService(type);
+            List<RateLimitWindow> windows = List.of(
+                    new RateLimitWindow("Short", 1, 0.0),
+                    new RateLimitWindow("Minute", 0, 0.0));
+
+            RateLimitDecision decision = svc.tryConsume("alice:test3", windows);
+            assertFalse(decision.isAllowed(), type.name());
+            assertEquals(1, decision.getRemaining(0), type.name());
+            assertEquals(0, decision.getRemaining(1), type.name());
+            assertEquals(1, svc.getBucketCount(), type.name());
+        }
+    }
+
+    @Test
+    void testPerWindowRefillAndRetryAfter() {
+        RateLimitWindow window = RateLimitWindow.perWindow("Short", 5, 5);
+        assertEquals(1.0, window.getRefillTokensPerSecond());
+        assertEquals(10.0 / 60, RateLimitWindow.perWindow("Minute", 10, 60).getRefillTokensPerSecond());
+        assertEquals(1.0, RateLimitWindow.perWindow("Zero", 1, 0).getRefillTokensPerSecond());
+
+        RateLimiterService svc = new RateLimiterService(BucketType.ATOMIC);
+        List<RateLimitWindow> windows = List.of(new RateLimitWindow("Short", 1, 0.5));
+        assertTrue(svc.tryConsume("k", windows).isAllowed());
+        RateLimitDecision denied = svc.tryConsume("k", windows);
+        assertFalse(denied.isAllowed());
+        assertEquals(2, denied.getRetryAfterSeconds());
+
+        // changing the number of windows starts the key over
+        RateLimitDecision restarted = svc.tryConsume("k", List.of(new RateLimitWindow("Short", 1, 0.5), new RateLimitWindow("Minute", 1, 0.0)));
+        assertTrue(restarted.isAllowed());
+    }
+}
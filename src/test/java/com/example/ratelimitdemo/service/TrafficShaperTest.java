@@ -0,0 +1,99 @@
+package com.example.ratelimitdemo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TrafficShaperTest {
+
+    // one token, back after 50ms
+    private final List<RateLimitWindow> windows = List.of(new RateLimitWindow("Short", 1, 20.0, RateLimitAlgorithm.TOKEN_BUCKET));
+
+    @Test
+    void testParkedRequestIsReleasedWhenPermitsAreDue() throws Exception {
+        RateLimiterService svc = new RateLimiterService();
+        try (TrafficShaper shaper = new TrafficShaper(svc, MonotonicClock.system(), true, 1000, 2)) {
+            assertTrue(svc.tryConsume("k", windows).isAllowed());
+            RateLimitDecision denied = svc.tryConsume("k", windows);
+            assertFalse(denied.isAllowed());
+            assertTrue(denied.getWaitNanos() > 0 && denied.getWaitNanos() <= 50_000_000L, "wait " + denied.getWaitNanos());
+
+            TrafficShaper.Slot slot = shaper.acquire("k", windows, 1, denied);
+            assertNotNull(slot);
+            CompletableFuture<RateLimitDecision> released = new CompletableFuture<>();
+            slot.park(released::complete);
+            assertEquals(1, shaper.getQueuedCount());
+
+            assertTrue(released.get(5, TimeUnit.SECONDS).isAllowed());
+            assertEquals(0, shaper.getQueuedCount());
+            assertEquals(1, shaper.getParkedCount());
+            assertEquals(1, shaper.getReleasedCount());
+            assertTrue(shaper.getMaxWaitNanos() > 0);
+            assertEquals(shaper.getMaxWaitNanos(), shaper.getTotalWaitNanos());
+        }
+    }
+
+    @Test
+    void testParkedRequestsHoldTheirPermitsAndLeaveInOrder() throws Exception {
+        RateLimiterService svc = new RateLimiterService();
+        try (TrafficShaper shaper = new TrafficShaper(svc, MonotonicClock.system(), true, 1000, 3)) {
+            assertTrue(svc.tryConsume("k", windows).isAllowed());
+            List<Integer> order = new CopyOnWriteArrayList<>();
+            CountDownLatch done = new CountDownLatch(3);
+            for (int i = 0; i < 3; i++) {
+                int n = i;
+                TrafficShaper.Slot slot = shaper.acquire("k", windows, 1, svc.tryConsume("k", windows));
+                assertNotNull(slot, "slot " + i);
+                slot.park(decision -> {
+                    order.add(decision.isAllowed() ? n : -1);
+                    done.countDown();
+                });
+            }
+            // the refilled tokens belong to the queue: a newcomer is denied and asked to wait behind all three
+            RateLimitDecision late = svc.tryConsume("k", windows);
+            assertFalse(late.isAllowed());
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(List.of(0, 1, 2), order);
+            assertEquals(3, shaper.getReleasedCount());
+        }
+    }
+
+    @Test
+    void testRequestsBeyondQueueDepthOrMaxWaitAreRejected() throws Exception {
+        RateLimiterService svc = new RateLimiterService();
+        try (TrafficShaper shaper = new TrafficShaper(svc, MonotonicClock.system(), true, 1000, 2)) {
+            svc.tryConsume("k", windows);
+            RateLimitDecision denied = svc.tryConsume("k", windows);
+
+            TrafficShaper.Slot first = shaper.acquire("k", windows, 1, denied);
+            assertNotNull(first);
+            assertNotNull(shaper.acquire("k", windows, 1, denied));
+            assertNull(shaper.acquire("k", windows, 1, denied));
+            assertEquals(1, shaper.getQueueFullCount());
+            // other keys have their own queue, and a cancelled slot frees its place
+            assertNotNull(shaper.acquire("other", windows, 1, denied));
+            first.cancel();
+            assertNotNull(shaper.acquire("k", windows, 1, denied));
+
+            // 10 seconds away
+            List<RateLimitWindow> slow = List.of(new RateLimitWindow("Short", 1, 0.1, RateLimitAlgorithm.TOKEN_BUCKET));
+            svc.tryConsume("slow", slow);
+            assertNull(shaper.acquire("slow", slow, 1, svc.tryConsume("slow", slow)));
+            assertEquals(1, shaper.getWaitTooLongCount());
+
+            // 2 permits never fit a capacity of 1, so nothing is reserved
+            assertNull(shaper.acquire("other2", windows, 2, denied));
+            assertEquals(2, shaper.getWaitTooLongCount());
+            assertEquals(3, shaper.getQueuedCount());
+        }
+
+        assertNull(new TrafficShaper(svc, MonotonicClock.system(), false, 1000, 2).acquire("k", windows, 1, svc.tryConsume("k", windows)));
+    }
+}
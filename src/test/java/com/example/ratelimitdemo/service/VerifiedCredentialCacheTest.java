@@ -0,0 +1,63 @@
+package com.example.ratelimitdemo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VerifiedCredentialCacheTest {
+
+    @Test
+    void testVerifiedCredentialsHitUntilTheyExpire() {
+        AtomicLong nanos = new AtomicLong(1_000_000_000_000L);
+        MonotonicClock clock = nanos::get;
+        VerifiedCredentialCache cache = new VerifiedCredentialCache(true, 10, 60, clock);
+
+        assertFalse(cache.isVerified("user", "password", "{bcrypt}hash1"));
+        cache.put("user", "password", "{bcrypt}hash1");
+        assertTrue(cache.isVerified("user", "password", "{bcrypt}hash1"));
+        // another password, another user or a changed stored hash is not verified
+        assertFalse(cache.isVerified("user", "passw0rd", "{bcrypt}hash1"));
+        assertFalse(cache.isVerified("admin", "password", "{bcrypt}hash1"));
+        assertFalse(cache.isVerified("user", "password", "{bcrypt}hash2"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(4, cache.getMissCount());
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(60));
+        assertFalse(cache.isVerified("user", "password", "{bcrypt}hash1"));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    void testCacheIsBoundedAndInvalidatedPerUser() {
+        AtomicLong nanos = new AtomicLong(1_000_000_000_000L);
+        MonotonicClock clock = nanos::get;
+        VerifiedCredentialCache cache = new VerifiedCredentialCache(true, 2, 60, clock);
+
+        cache.put("a", "pa", "ha");
+        cache.put("b", "pb", "hb");
+        cache.put("c", "pc", "hc");
+        assertEquals(2, cache.getSize());
+        assertFalse(cache.isVerified("c", "pc", "hc"));
+        // a cached user can still refresh its entry when the cache is full
+        cache.put("a", "pa2", "ha2");
+        assertTrue(cache.isVerified("a", "pa2", "ha2"));
+
+        cache.invalidate("a");
+        assertFalse(cache.isVerified("a", "pa2", "ha2"));
+        cache.put("c", "pc", "hc");
+        assertTrue(cache.isVerified("c", "pc", "hc"));
+
+        // expired entries make room again
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        cache.put("d", "pd", "hd");
+        assertTrue(cache.isVerified("d", "pd", "hd"));
+
+        VerifiedCredentialCache disabled = new VerifiedCredentialCache(false, 2, 60, clock);
+        disabled.put("a", "pa", "ha");
+        assertFalse(disabled.isVerified("a", "pa", "ha"));
+        assertThrows(IllegalArgumentException.class, () -> new VerifiedCredentialCache(true, 0, 60, clock));
+    }
+}